@@ -0,0 +1,675 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Activation Index
+ *
+ * Finds the vectors nearest to a query among many activation vectors, such as the embeddings of a set of images taken
+ * from one layer of a network, so that similar images can be found quickly. Distance is squared Euclidean distance.
+ *
+ * Every vector is kept in one flat block of floats, one vector after another, and the distance loop reads it in order
+ * with four sums at once, so a search is a single pass over memory that the JIT can keep in registers. The block is in
+ * native memory, or mapped straight from an index file, so a large index is never on the Java heap.
+ *
+ * An exact search compares the query with every vector. An approximate search uses an inverted file: when the index
+ * is built, the vectors are clustered with k-means into lists, and stored list by list so each list is contiguous. A
+ * query is compared with the centroid of every list, and then only with the vectors in the few nearest lists, the
+ * number of probes. With about as many lists as the square root of the number of vectors, a few probes look at a few
+ * percent of the vectors and still find almost all of the true nearest neighbours.
+ *
+ * Batches of queries are split between the threads of a set of parallel kernels.
+ *
+ * The index file is a binary file with the following structure, with every value little-endian:
+ *
+ * magic number (int), number of vectors (int), size of each vector (int), number of lists (int)
+ * the centroid of each list (float each), the first position of each list and one past the last list (int each)
+ * the id of the vector at each position (int each)
+ * padding up to the next multiple of 64 bytes
+ * the vector at each position (float each)
+ *
+ * The vectors are held in one buffer and an index file is mapped as one buffer, so neither can be larger than 2 GB.
+ *
+ * Methods in this class:
+ * ActivationIndex build(float[][] vectors, int lists, long seed)
+ * ActivationIndex build(NeuralNet nn, double[][] inputs, int layer, int lists, long seed)
+ * float[][]       cluster(float[][] vectors, int lists, SplittableRandom random)
+ * int             nearestCentroid(float[][] centroids, float[] vector)
+ * int             size()
+ * int             getDimensions()
+ * int             getLists()
+ * Neighbors       search(float[] query, int k)
+ * Neighbors       search(float[] query, int k, int probes)
+ * Neighbors[]     search(float[][] queries, int k, int probes, ParallelKernels kernels)
+ * float           distance(float[] query, int position)
+ * float           distance(float[] a, float[] b)
+ * void            write(String filename)
+ * ActivationIndex open(String filename)
+ * void            main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class ActivationIndex
+{
+   /**
+    * The nearest vectors found by a search, nearest first.
+    */
+   public static class Neighbors
+   {
+      public final int[] ids;              // the id of each vector, which is its index in the vectors it was built from
+      public final float[] distances;      // the squared distance from the query to each vector
+
+      private Neighbors(int[] ids, float[] distances)
+      {
+         this.ids = ids;
+         this.distances = distances;
+      }
+   } // public static class Neighbors
+
+   private static final int MAGIC = 0x4E4E4931;   // "NNI1", marks the start of an index file
+   private static final int ALIGNMENT = 64;       // the vectors in an index file start on a cache line
+   private static final int SAMPLES_PER_LIST = 32; // the number of vectors k-means is run on for each list
+   private static final int KMEANS_ITERATIONS = 8;
+   private static final long MAX_BYTES = Integer.MAX_VALUE; // the most bytes one buffer can hold
+
+   private final int count;                       // the number of vectors
+   private final int dimensions;                  // the size of each vector
+   private final float[][] centroids;             // the centroid of each list
+   private final int[] listStarts;                // list l is at positions listStarts[l] up to listStarts[l + 1]
+   private final int[] ids;                       // the id of the vector at each position
+   private final FloatBuffer vectors;             // the vector at each position p, from p * dimensions on
+
+   /**
+    * Creates an index over vectors that are already stored list by list.
+    *
+    * @param dimensions the size of each vector
+    * @param centroids  the centroid of each list
+    * @param listStarts the first position of each list, and one past the last list
+    * @param ids        the id of the vector at each position
+    * @param vectors    the vectors, one after another
+    */
+   private ActivationIndex(int dimensions, float[][] centroids, int[] listStarts, int[] ids, FloatBuffer vectors)
+   {
+      this.count = ids.length;
+      this.dimensions = dimensions;
+      this.centroids = centroids;
+      this.listStarts = listStarts;
+      this.ids = ids;
+      this.vectors = vectors;
+   }
+
+   /**
+    * Builds an index over the given vectors. With more than one list, the vectors are clustered into lists for
+    * approximate search; with one list, the index only does exact search.
+    *
+    * @param vectors the vectors, which all have the same size, and whose ids are their indices in this array
+    * @param lists   the number of lists, such as the square root of the number of vectors, or 1
+    * @param seed    the seed for picking the starting centroids, so an index can be built again exactly
+    * @return the index
+    */
+   public static ActivationIndex build(float[][] vectors, int lists, long seed)
+   {
+      int dimensions = vectors[0].length;
+      lists = Math.max(1, Math.min(lists, vectors.length));
+      float[][] centroids = lists == 1 ? new float[][] {new float[dimensions]} :
+                            cluster(vectors, lists, new SplittableRandom(seed));
+
+      // Find the list of each vector, then the first position of each list
+      int[] listOf = new int[vectors.length];
+      int[] listStarts = new int[lists + 1];
+      for (int v = 0; v < vectors.length; v++)
+      {
+         listOf[v] = lists == 1 ? 0 : nearestCentroid(centroids, vectors[v]);
+         listStarts[listOf[v] + 1]++;
+      }
+      for (int l = 0; l < lists; l++)
+      {
+         listStarts[l + 1] += listStarts[l];
+      }
+
+      // Store the vectors list by list
+      long bytes = (long) vectors.length * dimensions * Float.BYTES;
+      if (bytes > MAX_BYTES)
+      {
+         throw new IllegalArgumentException(vectors.length + " vectors of " + dimensions + " values take " + bytes +
+                                            " bytes, more than the " + MAX_BYTES + " an index can hold");
+      }
+      FloatBuffer stored = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+      int[] ids = new int[vectors.length];
+      int[] next = Arrays.copyOf(listStarts, lists);
+      for (int v = 0; v < vectors.length; v++)
+      {
+         int position = next[listOf[v]]++;
+         ids[position] = v;
+         stored.put(position * dimensions, vectors[v]);
+      }
+
+      return new ActivationIndex(dimensions, centroids, listStarts, ids, stored);
+   } // public static ActivationIndex build(float[][] vectors, int lists, long seed)
+
+   /**
+    * Builds an index over the activations of one layer of a network for each of the given inputs.
+    *
+    * @param nn     the network
+    * @param inputs the inputs, whose ids are their indices in this array
+    * @param layer  the activation layer to take the activations from
+    * @param lists  the number of lists, or 1 for exact search only
+    * @param seed   the seed for picking the starting centroids
+    * @return the index
+    */
+   public static ActivationIndex build(NeuralNet nn, double[][] inputs, int layer, int lists, long seed)
+   {
+      double[][] activations = nn.propagateTo(inputs, layer);
+      float[][] vectors = new float[activations.length][];
+      for (int v = 0; v < activations.length; v++)
+      {
+         vectors[v] = new float[activations[v].length];
+         for (int d = 0; d < activations[v].length; d++)
+         {
+            vectors[v][d] = (float) activations[v][d];
+         }
+      }
+      return build(vectors, lists, seed);
+   } // public static ActivationIndex build(NeuralNet nn, double[][] inputs, int layer, int lists, long seed)
+
+   /**
+    * Clusters a sample of the vectors with k-means, starting from centroids picked at random from the sample.
+    *
+    * @param vectors the vectors
+    * @param lists   the number of clusters
+    * @param random  picks the sample and the starting centroids
+    * @return the centroid of each cluster
+    */
+   private static float[][] cluster(float[][] vectors, int lists, SplittableRandom random)
+   {
+      // Take a random sample, shuffling only as much of the order as is needed
+      int[] order = new int[vectors.length];
+      for (int v = 0; v < order.length; v++)
+      {
+         order[v] = v;
+      }
+      int samples = Math.min(vectors.length, lists * SAMPLES_PER_LIST);
+      for (int s = 0; s < samples; s++)
+      {
+         int swap = s + random.nextInt(order.length - s);
+         int temp = order[s];
+         order[s] = order[swap];
+         order[swap] = temp;
+      }
+
+      float[][] centroids = new float[lists][];
+      for (int l = 0; l < lists; l++)
+      {
+         centroids[l] = vectors[order[l]].clone();
+      }
+
+      int dimensions = vectors[0].length;
+      for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++)
+      {
+         float[][] sums = new float[lists][dimensions];
+         int[] sizes = new int[lists];
+         for (int s = 0; s < samples; s++)
+         {
+            float[] vector = vectors[order[s]];
+            int l = nearestCentroid(centroids, vector);
+            sizes[l]++;
+            for (int d = 0; d < dimensions; d++)
+            {
+               sums[l][d] += vector[d];
+            }
+         }
+
+         // A cluster that lost every vector keeps its old centroid
+         for (int l = 0; l < lists; l++)
+         {
+            for (int d = 0; d < dimensions && sizes[l] > 0; d++)
+            {
+               centroids[l][d] = sums[l][d] / sizes[l];
+            }
+         }
+      } // for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++)
+
+      return centroids;
+   } // private static float[][] cluster(float[][] vectors, int lists, SplittableRandom random)
+
+   /**
+    * Finds the centroid nearest to a vector.
+    *
+    * @param centroids the centroids
+    * @param vector    the vector
+    * @return the index of the nearest centroid
+    */
+   private static int nearestCentroid(float[][] centroids, float[] vector)
+   {
+      int nearest = 0;
+      float nearestDistance = Float.MAX_VALUE;
+      for (int l = 0; l < centroids.length; l++)
+      {
+         float distance = distance(centroids[l], vector);
+         if (distance < nearestDistance)
+         {
+            nearest = l;
+            nearestDistance = distance;
+         }
+      }
+      return nearest;
+   }
+
+   /**
+    * Gets the number of vectors in the index.
+    *
+    * @return the number of vectors
+    */
+   public int size()
+   {
+      return count;
+   }
+
+   /**
+    * Gets the size of each vector in the index.
+    *
+    * @return the size of each vector
+    */
+   public int getDimensions()
+   {
+      return dimensions;
+   }
+
+   /**
+    * Gets the number of lists the vectors are clustered into.
+    *
+    * @return the number of lists, which is 1 for an index that only does exact search
+    */
+   public int getLists()
+   {
+      return centroids.length;
+   }
+
+   /**
+    * Finds the k vectors nearest to a query exactly, by comparing it with every vector.
+    *
+    * @param query the query, the same size as the vectors
+    * @param k     the number of neighbours to find
+    * @return the neighbours, nearest first
+    */
+   public Neighbors search(float[] query, int k)
+   {
+      return search(query, k, 0);
+   }
+
+   /**
+    * Finds the k vectors nearest to a query, only comparing it with the vectors in the lists with the nearest
+    * centroids. With no probes, or as many probes as lists, the search is exact.
+    *
+    * @param query  the query, the same size as the vectors
+    * @param k      the number of neighbours to find
+    * @param probes the number of lists to search, or 0 to search every vector
+    * @return the neighbours, nearest first
+    */
+   public Neighbors search(float[] query, int k, int probes)
+   {
+      if (query.length != dimensions)
+      {
+         throw new IllegalArgumentException("The query has " + query.length + " values, not " + dimensions);
+      }
+      TopK top = new TopK(Math.min(k, count));
+
+      if (probes <= 0 || probes >= centroids.length)
+      {
+         for (int p = 0; p < count; p++)
+         {
+            top.offer(p, distance(query, p));
+         }
+      }
+      else
+      {
+         // Find the nearest lists, then search each of them
+         TopK lists = new TopK(probes);
+         for (int l = 0; l < centroids.length; l++)
+         {
+            lists.offer(l, distance(centroids[l], query));
+         }
+         for (int probe = 0; probe < lists.size; probe++)
+         {
+            int l = lists.positions[probe];
+            for (int p = listStarts[l]; p < listStarts[l + 1]; p++)
+            {
+               top.offer(p, distance(query, p));
+            }
+         }
+      } // else
+
+      return top.toNeighbors(ids);
+   } // public Neighbors search(float[] query, int k, int probes)
+
+   /**
+    * Finds the k vectors nearest to each of many queries, with the queries split between the threads of the given
+    * kernels.
+    *
+    * @param queries the queries
+    * @param k       the number of neighbours to find for each query
+    * @param probes  the number of lists to search, or 0 to search every vector
+    * @param kernels the kernels to run the queries on
+    * @return the neighbours of each query, nearest first
+    */
+   public Neighbors[] search(float[][] queries, int k, int probes, ParallelKernels kernels)
+   {
+      Neighbors[] results = new Neighbors[queries.length];
+      long scanned = probes <= 0 || probes >= centroids.length ? count :
+                     centroids.length + (long) count * probes / centroids.length;
+      kernels.forBlocks(queries.length, 1, scanned * dimensions * queries.length, (from, to) ->
+      {
+         for (int q = from; q < to; q++)
+         {
+            results[q] = search(queries[q], k, probes);
+         }
+      });
+      return results;
+   } // public Neighbors[] search(float[][] queries, int k, int probes, ParallelKernels kernels)
+
+   /**
+    * Finds the squared distance from a query to the vector at a position, with four sums at once so that the adds
+    * do not wait on each other.
+    *
+    * @param query    the query
+    * @param position the position of the vector
+    * @return the squared distance
+    */
+   private float distance(float[] query, int position)
+   {
+      int base = position * dimensions;
+      float sum0 = 0.0f;
+      float sum1 = 0.0f;
+      float sum2 = 0.0f;
+      float sum3 = 0.0f;
+      int d = 0;
+      for (; d + 3 < dimensions; d += 4)
+      {
+         float difference0 = query[d] - vectors.get(base + d);
+         float difference1 = query[d + 1] - vectors.get(base + d + 1);
+         float difference2 = query[d + 2] - vectors.get(base + d + 2);
+         float difference3 = query[d + 3] - vectors.get(base + d + 3);
+         sum0 += difference0 * difference0;
+         sum1 += difference1 * difference1;
+         sum2 += difference2 * difference2;
+         sum3 += difference3 * difference3;
+      }
+      for (; d < dimensions; d++)
+      {
+         float difference = query[d] - vectors.get(base + d);
+         sum0 += difference * difference;
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   } // private float distance(float[] query, int position)
+
+   /**
+    * Finds the squared distance between two vectors.
+    *
+    * @param a the first vector
+    * @param b the second vector
+    * @return the squared distance
+    */
+   private static float distance(float[] a, float[] b)
+   {
+      float sum = 0.0f;
+      for (int d = 0; d < a.length; d++)
+      {
+         float difference = a[d] - b[d];
+         sum += difference * difference;
+      }
+      return sum;
+   }
+
+   /**
+    * Writes the index to a file that can be mapped with open. The index is written to a temporary file next to the
+    * given file, which is then renamed over the given file.
+    *
+    * @param filename the name of the index file
+    */
+   public void write(String filename) throws IOException
+   {
+      Path target = Paths.get(filename).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      int lists = centroids.length;
+      long headerSize = 4L * Integer.BYTES + (long) lists * dimensions * Float.BYTES +
+                        (lists + 1L) * Integer.BYTES + (long) count * Integer.BYTES;
+      long vectorsStart = (headerSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+      long fileSize = vectorsStart + (long) count * dimensions * Float.BYTES;
+      if (fileSize > MAX_BYTES)
+      {
+         throw new IOException("The index file would take " + fileSize + " bytes, more than the " + MAX_BYTES +
+                               " that can be mapped at once");
+      }
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+         out.order(ByteOrder.LITTLE_ENDIAN);
+         out.putInt(MAGIC).putInt(count).putInt(dimensions).putInt(lists);
+         for (float[] centroid : centroids)
+         {
+            out.asFloatBuffer().put(centroid);
+            out.position(out.position() + dimensions * Float.BYTES);
+         }
+         out.asIntBuffer().put(listStarts);
+         out.position(out.position() + listStarts.length * Integer.BYTES);
+         out.asIntBuffer().put(ids);
+
+         out.position(Math.toIntExact(vectorsStart)); // fits, as the whole file does
+         FloatBuffer stored = out.asFloatBuffer();
+         for (int i = 0; i < count * dimensions; i++)
+         {
+            stored.put(i, vectors.get(i));
+         }
+         out.force();
+      } // try (FileChannel channel = ...)
+
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   } // public void write(String filename)
+
+   /**
+    * Maps an index file into memory as read-only. The centroids, lists and ids are read onto the heap, and the
+    * vectors are searched straight from the mapped file.
+    *
+    * @param filename the name of the index file
+    * @return the index
+    */
+   public static ActivationIndex open(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         if (channel.size() > MAX_BYTES)
+         {
+            throw new IOException(filename + " takes " + channel.size() + " bytes, more than the " + MAX_BYTES +
+                                  " that can be mapped at once");
+         }
+         ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+         if (in.getInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not an index file");
+         }
+         int count = in.getInt();
+         int dimensions = in.getInt();
+         int lists = in.getInt();
+
+         float[][] centroids = new float[lists][dimensions];
+         for (float[] centroid : centroids)
+         {
+            in.asFloatBuffer().get(centroid);
+            in.position(in.position() + dimensions * Float.BYTES);
+         }
+         int[] listStarts = new int[lists + 1];
+         in.asIntBuffer().get(listStarts);
+         in.position(in.position() + listStarts.length * Integer.BYTES);
+         int[] ids = new int[count];
+         in.asIntBuffer().get(ids);
+         in.position(in.position() + count * Integer.BYTES);
+
+         in.position((in.position() + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+         return new ActivationIndex(dimensions, centroids, listStarts, ids, in.slice().order(ByteOrder.LITTLE_ENDIAN)
+                                                                              .asFloatBuffer());
+      } // try (FileChannel channel = ...)
+   } // public static ActivationIndex open(String filename)
+
+   /**
+    * The k nearest positions offered so far, kept as a max-heap on distance so the farthest one is replaced first.
+    */
+   private static class TopK
+   {
+      private final int[] positions;
+      private final float[] distances;
+      private int size;
+
+      private TopK(int k)
+      {
+         positions = new int[k];
+         distances = new float[k];
+      }
+
+      /**
+       * Keeps a position if it is nearer than the farthest one kept, or if fewer than k are kept.
+       *
+       * @param position the position
+       * @param distance its distance from the query
+       */
+      private void offer(int position, float distance)
+      {
+         if (size < positions.length)
+         {
+            // Add it at the bottom of the heap and move it up
+            int child = size++;
+            while (child > 0 && distances[(child - 1) / 2] < distance)
+            {
+               positions[child] = positions[(child - 1) / 2];
+               distances[child] = distances[(child - 1) / 2];
+               child = (child - 1) / 2;
+            }
+            positions[child] = position;
+            distances[child] = distance;
+         }
+         else if (size > 0 && distance < distances[0])
+         {
+            // Replace the farthest one at the top of the heap and move it down
+            int parent = 0;
+            while (2 * parent + 1 < size)
+            {
+               int child = 2 * parent + 1;
+               if (child + 1 < size && distances[child + 1] > distances[child])
+               {
+                  child++;
+               }
+               if (distances[child] <= distance)
+               {
+                  break;
+               }
+               positions[parent] = positions[child];
+               distances[parent] = distances[child];
+               parent = child;
+            }
+            positions[parent] = position;
+            distances[parent] = distance;
+         } // else if (size > 0 && distance < distances[0])
+      } // private void offer(int position, float distance)
+
+      /**
+       * Sorts the positions kept from nearest to farthest and turns them into ids.
+       *
+       * @param ids the id of the vector at each position
+       * @return the neighbours
+       */
+      private Neighbors toNeighbors(int[] ids)
+      {
+         Integer[] order = new Integer[size];
+         for (int i = 0; i < size; i++)
+         {
+            order[i] = i;
+         }
+         Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+
+         int[] neighbourIds = new int[size];
+         float[] neighbourDistances = new float[size];
+         for (int i = 0; i < size; i++)
+         {
+            neighbourIds[i] = ids[positions[order[i]]];
+            neighbourDistances[i] = distances[order[i]];
+         }
+         return new Neighbors(neighbourIds, neighbourDistances);
+      } // private Neighbors toNeighbors(int[] ids)
+   } // private static class TopK
+
+   /**
+    * Builds an index over an embeddings file written by EmbeddingEncoder, writes it to an index file, maps it back,
+    * and times exact and approximate searches for a sample of the embeddings, along with how many of the true
+    * nearest neighbours the approximate searches find. The arguments are the embeddings file, the index file, and
+    * optionally the number of lists (the square root of the number of embeddings by default), the number of probes
+    * (8 by default) and k (10 by default).
+    */
+   public static void main(String[] args) throws IOException
+   {
+      float[][] vectors = EmbeddingEncoder.read(args[0]);
+      int lists = args.length > 2 ? Integer.parseInt(args[2]) : (int) Math.sqrt(vectors.length);
+      int probes = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+      int k = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+      long start = System.nanoTime();
+      build(vectors, lists, 1).write(args[1]);
+      System.out.println("Built " + lists + " lists over " + vectors.length + " vectors of " + vectors[0].length +
+                         " values in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+      ActivationIndex index = open(args[1]);
+
+      SplittableRandom random = new SplittableRandom(2);
+      float[][] queries = new float[Math.min(1000, vectors.length)][];
+      for (int q = 0; q < queries.length; q++)
+      {
+         queries[q] = vectors[random.nextInt(vectors.length)];
+      }
+
+      for (int round = 0; round < 3; round++)
+      {
+         long exactNanos = 0;
+         long approximateNanos = 0;
+         long found = 0;
+         for (float[] query : queries)
+         {
+            start = System.nanoTime();
+            Neighbors exact = index.search(query, k);
+            exactNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Neighbors approximate = index.search(query, k, probes);
+            approximateNanos += System.nanoTime() - start;
+
+            for (int id : approximate.ids)
+            {
+               for (int exactId : exact.ids)
+               {
+                  found += id == exactId ? 1 : 0;
+               }
+            }
+         } // for (float[] query : queries)
+
+         System.out.println("Exact: " + exactNanos / 1000 / queries.length + " us per query, " + probes +
+                            " probes: " + approximateNanos / 1000 / queries.length + " us per query, recall@" + k +
+                            ": " + (double) found / ((long) k * queries.length));
+      } // for (int round = 0; round < 3; round++)
+
+      int threads = Runtime.getRuntime().availableProcessors();
+      start = System.nanoTime();
+      index.search(queries, k, probes, ParallelKernels.get(threads));
+      System.out.println("Batch of " + queries.length + " on " + threads + " threads: " +
+                         (System.nanoTime() - start) / 1000 / queries.length + " us per query");
+   } // public static void main(String[] args)
+
+} // public class ActivationIndex
@@ -0,0 +1,67 @@
+/**
+ * Adam Optimizer
+ *
+ * Adaptive moment estimation. For each weight, this optimizer keeps a running average of the descent direction (the
+ * first moment) and of its square (the second moment). Each weight is changed by the first moment divided by the
+ * square root of the second moment, so every weight gets its own effective learning rate. Both averages start at
+ * zero, so the step size is corrected for this bias during the first steps.
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class AdamOptimizer implements Optimizer
+{
+   private static final double BETA1 = 0.9;     // decay rate of the first moment
+   private static final double BETA2 = 0.999;   // decay rate of the second moment
+   private static final double EPSILON = 1e-8;  // keeps the step finite when the second moment is zero
+
+   private double[][][] firstMoment;            // running average of the descent direction for each weight
+   private double[][][] secondMoment;           // running average of the squared descent direction for each weight
+
+   private double beta1Power;                   // BETA1 to the power of the number of steps taken
+   private double beta2Power;                   // BETA2 to the power of the number of steps taken
+   private double biasCorrection;               // corrects the step size for the moments starting at zero
+
+   public void initialize(double[][][] weights)
+   {
+      firstMoment = new double[weights.length][][];
+      secondMoment = new double[weights.length][][];
+      for (int n = 0; n < weights.length; n++)
+      {
+         firstMoment[n] = new double[weights[n].length][weights[n][0].length];
+         secondMoment[n] = new double[weights[n].length][weights[n][0].length];
+      }
+
+      beta1Power = 1.0;
+      beta2Power = 1.0;
+   }
+
+   public void startStep()
+   {
+      beta1Power *= BETA1;
+      beta2Power *= BETA2;
+      biasCorrection = Math.sqrt(1.0 - beta2Power) / (1.0 - beta1Power);
+   }
+
+   public void updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate)
+   {
+      double[] firstRow = firstMoment[n][j];
+      double[] secondRow = secondMoment[n][j];
+      double stepSize = learningRate * biasCorrection;
+      for (int i = 0; i < weightRow.length; i++)
+      {
+         double descent = activation * psi[i];
+         firstRow[i] = BETA1 * firstRow[i] + (1.0 - BETA1) * descent;
+         secondRow[i] = BETA2 * secondRow[i] + (1.0 - BETA2) * descent * descent;
+         weightRow[i] += stepSize * firstRow[i] / (Math.sqrt(secondRow[i]) + EPSILON);
+      }
+   }
+
+   public double delta(int n, int j, int i, double descent, double learningRate)
+   {
+      firstMoment[n][j][i] = BETA1 * firstMoment[n][j][i] + (1.0 - BETA1) * descent;
+      secondMoment[n][j][i] = BETA2 * secondMoment[n][j][i] + (1.0 - BETA2) * descent * descent;
+      return learningRate * biasCorrection * firstMoment[n][j][i] / (Math.sqrt(secondMoment[n][j][i]) + EPSILON);
+   }
+
+} // public class AdamOptimizer
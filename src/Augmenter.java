@@ -0,0 +1,246 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Augmenter
+ *
+ * Makes new training cases on the fly from a few images by shifting, flipping, adding noise to and changing the
+ * brightness of them, on worker threads that run while the network trains. This gives training many more cases than
+ * there are images without writing any of them to disk.
+ *
+ * The variants are made in a fixed number of slots that are all allocated up front, so no memory is allocated while
+ * training. Each worker owns its own share of the slots and passes them to the training thread through a pair of
+ * lock-free handoff queues: one of slots it has filled, and one of slots the training thread is done with. The training
+ * thread never waits for a worker. If no variant is ready when it asks for one, it trains on the original case instead.
+ *
+ * Shifts and flips move the whole image, and are done to the expected output as well when it is an image of the same
+ * size, so the network still learns to give back the moved image. Noise and brightness only change the input.
+ * Shifting fills the edge it uncovers with copies of the nearest pels, and every pel is kept between 0 and 1.
+ *
+ * Methods in this class:
+ * int        poll()
+ * double[][] getCase(int slot)
+ * void       release(int slot)
+ * String     getReport()
+ * void       close()
+ * void       work(int worker)
+ * void       fill(int slot, SplittableRandom random)
+ * double     gaussian(SplittableRandom random)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class Augmenter
+{
+   private static final long IDLE_NANOS = 100_000;    // how long a worker waits when all of its slots are in use
+   private static final double MAX_PEL = 1.0 - 1.0 / (1 << 24); // the largest pel an image can hold
+
+   private final double[][][] sourceCases;            // the cases the variants are made from
+   private final int height;                          // the height of each image
+   private final int width;                           // the width of each image
+   private final TrainingConfig config;               // how far to shift, and how much noise and brightness to add
+
+   private final double[][][] slots;                  // the variants, as slots[slot][0] input and [1] expected output
+   private final int slotsPerWorker;                  // worker w owns the slots from w * slotsPerWorker on
+   private final HandoffQueue[] ready;                // the slots each worker has filled, for the training thread
+   private final HandoffQueue[] free;                 // the slots the training thread is done with, for each worker
+   private final Thread[] workers;
+
+   private volatile boolean running = true;           // false once the augmenter is closed
+   private int nextWorker;                            // the worker the training thread asks first next time
+   private long augmentedCases;                       // the number of variants trained on
+   private long originalCases;                        // the number of times no variant was ready
+
+   /**
+    * Creates an augmenter for the given images and starts its workers.
+    *
+    * @param sourceCases the cases to make variants of, whose inputs are images
+    * @param height      the height of each image
+    * @param width       the width of each image
+    * @param config      the configuration with the number of workers and slots and the size of each change
+    */
+   public Augmenter(double[][][] sourceCases, int height, int width, TrainingConfig config)
+   {
+      this.sourceCases = sourceCases;
+      this.height = height;
+      this.width = width;
+      this.config = config;
+
+      int threads = config.augmentThreads;
+      slotsPerWorker = Math.max(1, config.augmentBuffer / threads);
+      slots = new double[threads * slotsPerWorker][2][];
+      for (double[][] slot : slots)
+      {
+         slot[0] = new double[sourceCases[0][0].length];
+         slot[1] = new double[sourceCases[0][1].length];
+      }
+
+      ready = new HandoffQueue[threads];
+      free = new HandoffQueue[threads];
+      workers = new Thread[threads];
+      for (int w = 0; w < threads; w++)
+      {
+         ready[w] = new HandoffQueue(slotsPerWorker);
+         free[w] = new HandoffQueue(slotsPerWorker);
+         for (int s = w * slotsPerWorker; s < (w + 1) * slotsPerWorker; s++)
+         {
+            free[w].offer(s);
+         }
+
+         int worker = w;
+         workers[w] = new Thread(() -> work(worker), "augment-" + w);
+         workers[w].setDaemon(true);
+         workers[w].start();
+      }
+   } // public Augmenter(double[][][] sourceCases, int height, int width, TrainingConfig config)
+
+   /**
+    * Takes a variant that is ready, asking each worker in turn. Must only be called by the training thread, which has
+    * to release the slot once it is done with it.
+    *
+    * @return the slot holding the variant, or -1 if no variant is ready
+    */
+   public int poll()
+   {
+      for (int k = 0; k < ready.length; k++)
+      {
+         int w = (nextWorker + k) % ready.length;
+         int slot = ready[w].poll();
+         if (slot >= 0)
+         {
+            nextWorker = w + 1;
+            augmentedCases++;
+            return slot;
+         }
+      }
+      originalCases++;
+      return -1;
+   } // public int poll()
+
+   /**
+    * Gets the variant in a slot taken by poll.
+    *
+    * @param slot the slot
+    * @return the input and expected output of the variant
+    */
+   public double[][] getCase(int slot)
+   {
+      return slots[slot];
+   }
+
+   /**
+    * Gives a slot back to its worker to be filled again. Must only be called by the training thread.
+    *
+    * @param slot the slot, which must not be used after this
+    */
+   public void release(int slot)
+   {
+      free[slot / slotsPerWorker].offer(slot);
+   }
+
+   /**
+    * Gets the number of workers and how many cases were variants and how many were originals because no variant was
+    * ready.
+    *
+    * @return the report, one value per line
+    */
+   public String getReport()
+   {
+      String report = "";
+      report += "Augment Threads: " + workers.length + "\n";
+      report += "Augmented Cases: " + augmentedCases + "\n";
+      report += "Original Cases (no variant ready): " + originalCases + "\n";
+      return report;
+   }
+
+   /**
+    * Stops the workers.
+    */
+   public void close()
+   {
+      running = false;
+   }
+
+   /**
+    * Runs on each worker thread: fills every free slot with a new variant and hands it to the training thread, until
+    * the augmenter is closed.
+    *
+    * @param worker the index of the worker
+    */
+   private void work(int worker)
+   {
+      SplittableRandom random = new SplittableRandom(config.seed + worker);
+      while (running)
+      {
+         int slot = free[worker].poll();
+         if (slot < 0)
+         {
+            LockSupport.parkNanos(IDLE_NANOS);
+            continue;
+         }
+         fill(slot, random);
+         ready[worker].offer(slot);
+      }
+   } // private void work(int worker)
+
+   /**
+    * Fills a slot with a variant of a source case picked at random. The image is shifted by up to the configured
+    * number of pels each way and, if flips are on, flipped left to right half of the time. Then the brightness of
+    * the input is scaled by up to the configured fraction and noise with the configured standard deviation is added.
+    *
+    * @param slot   the slot to fill
+    * @param random the random number generator of the worker
+    */
+   private void fill(int slot, SplittableRandom random)
+   {
+      double[][] source = sourceCases[random.nextInt(sourceCases.length)];
+      double[] input = slots[slot][0];
+      double[] expected = slots[slot][1];
+      boolean imageOutput = source[1].length == source[0].length;
+
+      int shift = config.augmentShift;
+      int dx = shift == 0 ? 0 : random.nextInt(-shift, shift + 1);
+      int dy = shift == 0 ? 0 : random.nextInt(-shift, shift + 1);
+      boolean flip = config.augmentFlip && random.nextBoolean();
+      double brightness = 1.0 + config.augmentBrightness * (2.0 * random.nextDouble() - 1.0);
+
+      for (int r = 0; r < height; r++)
+      {
+         int fromRow = Math.min(height - 1, Math.max(0, r - dy));
+         for (int c = 0; c < width; c++)
+         {
+            int fromColumn = Math.min(width - 1, Math.max(0, (flip ? width - 1 - c : c) - dx));
+            int from = fromRow * width + fromColumn;
+
+            double pel = source[0][from] * brightness;
+            if (config.augmentNoise > 0.0)
+            {
+               pel += config.augmentNoise * gaussian(random);
+            }
+            input[r * width + c] = Math.min(MAX_PEL, Math.max(0.0, pel));
+
+            if (imageOutput)
+            {
+               expected[r * width + c] = source[1][from];
+            }
+         } // for (int c = 0; c < width; c++)
+      } // for (int r = 0; r < height; r++)
+
+      if (!imageOutput)
+      {
+         System.arraycopy(source[1], 0, expected, 0, expected.length);
+      }
+   } // private void fill(int slot, SplittableRandom random)
+
+   /**
+    * Picks a number from the standard normal distribution with the Box-Muller transform.
+    *
+    * @param random the random number generator to use
+    * @return the number
+    */
+   private static double gaussian(SplittableRandom random)
+   {
+      return Math.sqrt(-2.0 * Math.log(1.0 - random.nextDouble())) * Math.cos(2.0 * Math.PI * random.nextDouble());
+   }
+
+} // public class Augmenter
@@ -0,0 +1,236 @@
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Batch Runner
+ *
+ * Runs a list of jobs from a manifest file without asking the user anything, all in one JVM, so that every job after
+ * the first runs on already warmed-up code. The jobs can run one after another or several at a time. As each job
+ * finishes, one line describing it is added to a report file in JSON Lines format, with its timing and result.
+ *
+ * The format of the manifest file is as follows: on the first line, the number of jobs and the number of jobs to run
+ * at the same time are given. Then, each line has the mode of a job, followed by its config file, its data file and
+ * its weights file. The modes are:
+ *
+ * MANUAL - trains a network on a file in the training data format and stores its weights
+ * BMP    - loads the bitmaps listed in a file in the image training format, then trains like MANUAL
+ * RUN    - loads the weights from the weights file and finds the error on a dataset streamed by EvaluationRunner, in
+ *          the training data, binary dataset or image training format, writing its statistics to the weights file
+ *          with .eval added to the end, so the log of a job that trained the same weights is kept
+ * ENCODE - loads the weights from the weights file and writes the embedding of each case in a file in the training
+ *          data format to the weights file with .emb added to the end, using the layer set by EMBEDDING_LAYER
+ *
+ * An example of a manifest file is:
+ *
+ * 3 2
+ * MANUAL config.txt trainingData.txt weights1.txt
+ * BMP    config.txt trainingImageFiles.txt weights2.txt
+ * RUN    config.txt trainingData.txt weights1.txt
+ *
+ * The output of each MANUAL and BMP job goes to its weights file with .log added to the end.
+ *
+ * Methods in this class:
+ * void     run(String manifestFile, String reportFile)
+ * Callable createJob(String mode, String configFile, String dataFile, String weightsFile)
+ * void     report(PrintWriter pw, int index, String[] entry, String status, long start, double error, String message)
+ * String   quote(String value)
+ * void     main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class BatchRunner
+{
+   /**
+    * Runs every job in the manifest file and writes a line to the report file as each job finishes. A job that fails
+    * is reported as failed, and the other jobs still run.
+    *
+    * @param manifestFile the file listing the jobs to run
+    * @param reportFile   the file to write the report to
+    */
+   public static void run(String manifestFile, String reportFile) throws IOException
+   {
+      // Read the manifest
+      Scanner sc = new Scanner(new FileReader(manifestFile));
+      int numOfJobs = sc.nextInt();
+      int threads = sc.nextInt();
+      List<String[]> entries = new ArrayList<>();
+      for (int i = 0; i < numOfJobs; i++)
+      {
+         entries.add(new String[] {sc.next(), sc.next(), sc.next(), sc.next()});
+      }
+      sc.close();
+
+      PrintWriter pw = new PrintWriter(new FileWriter(reportFile));
+      JobRunner runner = new JobRunner(threads);
+
+      // Submit each job, wrapped so that its timing and result are reported as soon as it finishes
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < numOfJobs; i++)
+      {
+         int index = i;
+         String[] entry = entries.get(i);
+         results.add(runner.submit(() ->
+         {
+            long start = System.nanoTime();
+            try
+            {
+               Callable<Double> job = createJob(entry[0], entry[1], entry[2], entry[3]);
+               double error = job.call();
+               report(pw, index, entry, "OK", start, error, "");
+            }
+            catch (Exception e)
+            {
+               report(pw, index, entry, "FAILED", start, Double.NaN, e.toString());
+            }
+            return entry[3];
+         }));
+      } // for (int i = 0; i < numOfJobs; i++)
+      runner.shutdown();
+
+      // Wait for every job to finish
+      for (Future<String> result : results)
+      {
+         try
+         {
+            result.get();
+         }
+         catch (Exception e)
+         {
+            throw new IOException("A job could not be run", e);
+         }
+      }
+      pw.close();
+   } // public static void run(String manifestFile, String reportFile)
+
+   /**
+    * Creates a job for one line of the manifest. The job returns the error of the network once it is done, or NaN if
+    * it does not find an error.
+    *
+    * @param mode        the mode of the job: MANUAL, BMP, RUN or ENCODE
+    * @param configFile  the config file of the job
+    * @param dataFile    the training data file, or the image training file for BMP jobs
+    * @param weightsFile the weights file to store to, or to load from for RUN and ENCODE jobs
+    * @return the job, which returns the error of its network
+    */
+   private static Callable<Double> createJob(String mode, String configFile, String dataFile, String weightsFile)
+           throws FileNotFoundException
+   {
+      TrainingConfig config = new TrainingConfig(configFile);
+      switch (mode)
+      {
+         case "MANUAL":
+         {
+            TrainingJob job = new TrainingJob(weightsFile, config, dataFile, weightsFile, weightsFile + ".log");
+            return () ->
+            {
+               job.call();
+               return job.getError();
+            };
+         }
+         case "BMP":
+         {
+            String rawDataFile = weightsFile + ".data";
+            TrainingJob job = new TrainingJob(weightsFile, config, rawDataFile, weightsFile, weightsFile + ".log");
+            return () ->
+            {
+               Main.loadImages(dataFile, rawDataFile);
+               job.call();
+               return job.getError();
+            };
+         }
+         case "RUN":
+            return () ->
+            {
+               NeuralNet nn = Main.loadNetwork(config, weightsFile);
+               EvaluationRunner runner = new EvaluationRunner(nn, config.intraOpThreads);
+               try (PrintWriter report = new PrintWriter(weightsFile + ".eval"))
+               {
+                  report.print(runner.evaluate(dataFile, null));
+               }
+               nn.close();
+               return runner.getError();
+            };
+         case "ENCODE":
+            return () ->
+            {
+               NeuralNet nn = Main.loadNetwork(config, weightsFile);
+               int layer = config.embeddingLayer > 0 ? config.embeddingLayer :
+                           EmbeddingEncoder.findBottleneck(nn.getWeightStore().getSizeOfLayers());
+               EmbeddingEncoder.encode(nn, Main.getTrainingData(dataFile), layer, weightsFile + ".emb");
+               nn.close();
+               return Double.NaN;
+            };
+         default:
+            throw new IllegalArgumentException("Unknown job mode: " + mode);
+      }
+   } // private static Callable<Double> createJob(String mode, String configFile, String dataFile, String weightsFile)
+
+   /**
+    * Writes one line of the report for a finished job, and flushes it so the report can be read while other jobs are
+    * still running.
+    *
+    * @param pw      the writer for the report file
+    * @param index   the index of the job in the manifest
+    * @param entry   the mode, config file, data file and weights file of the job
+    * @param status  OK if the job finished, FAILED if it threw an exception
+    * @param start   the time the job started, from System.nanoTime
+    * @param error   the error of the job's network, or NaN if it failed or does not find one
+    * @param message the reason the job failed, or an empty string
+    */
+   private static synchronized void report(PrintWriter pw, int index, String[] entry, String status, long start,
+                                           double error, String message)
+   {
+      double seconds = (System.nanoTime() - start) / 1e9;
+      pw.println("{\"job\": " + index + ", \"mode\": " + quote(entry[0]) + ", \"config\": " + quote(entry[1]) +
+                 ", \"data\": " + quote(entry[2]) + ", \"weights\": " + quote(entry[3]) + ", \"status\": " +
+                 quote(status) + ", \"seconds\": " + seconds + ", \"error\": " +
+                 (Double.isNaN(error) ? "null" : Double.toString(error)) + ", \"message\": " + quote(message) + "}");
+      pw.flush();
+   }
+
+   /**
+    * Puts a string in quotes for JSON, escaping any characters that need it.
+    *
+    * @param value the string to quote
+    * @return the quoted string
+    */
+   private static String quote(String value)
+   {
+      StringBuilder quoted = new StringBuilder("\"");
+      for (char c : value.toCharArray())
+      {
+         if (c == '"' || c == '\\')
+         {
+            quoted.append('\\').append(c);
+         }
+         else if (c < ' ')
+         {
+            quoted.append(String.format("\\u%04x", (int) c));
+         }
+         else
+         {
+            quoted.append(c);
+         }
+      }
+      return quoted.append('"').toString();
+   }
+
+   /**
+    * Runs the jobs in the manifest file given as the first argument, and writes the report to the file given as the
+    * second argument, or to report.jsonl if there is no second argument.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      run(args[0], args.length > 1 ? args[1] : "report.jsonl");
+   }
+
+} // public class BatchRunner
@@ -0,0 +1,671 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoint Archive
+ *
+ * Keeps a long history of checkpoints of a network in a directory, in a compact binary format, so that any earlier
+ * version can be restored. The text weights file of a 1600-1600 network takes tens of megabytes, so keeping every
+ * checkpoint in that format quickly takes gigabytes.
+ *
+ * Each weight is stored in 16 bits, as either a half precision float (FLOAT16), which keeps 11 bits of precision for
+ * weights up to 65504, or a bfloat16 (BFLOAT16), which keeps only 8 bits of precision but the full range of a float.
+ * The two bytes of each value can be shuffled, so that all of the high bytes of a block come before all of the low
+ * bytes, which lets Deflater find far more repeats, since the high bytes hold the sign and exponent.
+ *
+ * Most checkpoints are stored as deltas: the change in each weight since the previous checkpoint, which is small and
+ * compresses well. The change is taken from the previous checkpoint as it will be restored, not from the exact weights
+ * it was made from, so the rounding errors of a chain of deltas never add up. Every keyframe interval a checkpoint is
+ * stored in full, so restoring any version reads at most that many files.
+ *
+ * Each layer is split into blocks of rows that are encoded and decoded on a pool of threads at once. The blocks are
+ * written out in order as soon as each one is ready, and read in order while the blocks before them are still being
+ * decoded, so a checkpoint is never held in memory more than a few blocks at a time.
+ *
+ * An archive file is a binary file with the following structure, with every value big-endian:
+ *
+ * magic number (int), precision (byte), flags (byte), name of the previous checkpoint or an empty name (UTF)
+ * number of activation layers (int), size of each activation layer (int each)
+ * for each block of each connectivity layer, in order: length (int), then the encoded values of the block
+ *
+ * Methods in this class:
+ * CheckpointArchive get(TrainingConfig config)
+ * Path              append(WeightStore source)
+ * void              writeBlock(DataOutputStream out, Future<byte[]> block)
+ * double[][][]      read(String filename)
+ * int               rowsPerBlock(int columns)
+ * byte[]            encodeBlock(WeightStore source, int n, int from, int to, boolean delta)
+ * void              decodeBlock(byte[] block, double[][] layer, int from, int to, int precision, int flags)
+ * short             encodeValue(double value, int precision)
+ * double            decodeValue(int bits, int precision)
+ * short             toFloat16(float value)
+ * float             fromFloat16(int bits)
+ * short             toBfloat16(float value)
+ * float             fromBfloat16(int bits)
+ * int[]             getSizeOfLayers(double[][][] weights)
+ * T                 await(Future<T> task)
+ * int               findLastNumber(Path directory)
+ * void              main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class CheckpointArchive
+{
+   static final int FLOAT16 = 0;                  // the precision of values stored as half precision floats
+   static final int BFLOAT16 = 1;                 // the precision of values stored as bfloat16s
+   static final int SHUFFLED = 1;                 // the flag for blocks whose high bytes come before their low bytes
+   static final int DEFLATED = 2;                 // the flag for blocks compressed with Deflater
+
+   private static final int MAGIC = 0x4E4E5A31;   // "NNZ1", marks the start of an archive file
+   private static final int BLOCK_VALUES = 1 << 18; // about how many values are in each block
+   private static final int THREADS = Runtime.getRuntime().availableProcessors();
+   private static final String PREFIX = "checkpoint-";
+   private static final String SUFFIX = ".nnz";
+
+   private static final Map<Path, CheckpointArchive> ARCHIVES = new HashMap<>(); // the archive for each directory
+   private static final ExecutorService CODEC = Executors.newFixedThreadPool(THREADS, r ->
+   {
+      Thread thread = new Thread(r, "archive-codec");
+      thread.setDaemon(true);
+      return thread;
+   });
+
+   private final Path directory;                  // where the checkpoints are kept
+   private final int precision;                   // FLOAT16 or BFLOAT16
+   private final int flags;                       // SHUFFLED and DEFLATED, for every block written
+   private final int level;                       // the Deflater compression level
+   private final int keyframeInterval;            // every this many checkpoints is stored in full
+
+   private int number;                            // the number of the last checkpoint in the directory
+   private int written;                           // the number of checkpoints written by this archive
+   private Path previous;                         // the last checkpoint written, or null if there is none yet
+   private double[][][] restored;                 // the weights of the last checkpoint, exactly as it will be restored
+
+   /**
+    * Creates an archive that adds checkpoints to the given directory after the ones already in it.
+    *
+    * @param directory the directory to keep the checkpoints in
+    * @param config    the configuration with the precision, shuffling, compression level and keyframe interval
+    */
+   private CheckpointArchive(Path directory, TrainingConfig config) throws IOException
+   {
+      this.directory = directory;
+      precision = config.archivePrecision.equals("BFLOAT16") ? BFLOAT16 : FLOAT16;
+      flags = (config.archiveShuffle ? SHUFFLED : 0) | (config.archiveCompression > 0 ? DEFLATED : 0);
+      level = config.archiveCompression;
+      keyframeInterval = Math.max(1, config.archiveKeyframeInterval);
+
+      Files.createDirectories(directory);
+      number = findLastNumber(directory);
+   }
+
+   /**
+    * Gets the archive for the directory in the configuration, opening it the first time it is asked for. Every
+    * network stored to the same directory in the JVM shares one archive, so the checkpoints are numbered in order.
+    *
+    * @param config the configuration with the archive directory
+    * @return the archive
+    */
+   public static synchronized CheckpointArchive get(TrainingConfig config) throws IOException
+   {
+      Path directory = Paths.get(config.archiveDirectory).toAbsolutePath().normalize();
+      CheckpointArchive archive = ARCHIVES.get(directory);
+      if (archive == null)
+      {
+         archive = new CheckpointArchive(directory, config);
+         ARCHIVES.put(directory, archive);
+      }
+      return archive;
+   }
+
+   /**
+    * Adds a checkpoint of the given weights to the archive, as a delta from the previous checkpoint unless it is time
+    * for a keyframe or the layer sizes have changed. The checkpoint is written to a temporary file that is then
+    * renamed, so a checkpoint in the directory is always complete.
+    *
+    * @param source the weights to store
+    * @return the file the checkpoint was written to
+    */
+   public synchronized Path append(WeightStore source) throws IOException
+   {
+      TrainingEvents.Checkpoint event = new TrainingEvents.Checkpoint();
+      event.begin();
+
+      int[] sizeOfLayers = source.getSizeOfLayers();
+      boolean delta = previous != null && written % keyframeInterval != 0 &&
+                      Arrays.equals(sizeOfLayers, getSizeOfLayers(restored));
+      if (!delta)
+      {
+         restored = new double[sizeOfLayers.length - 1][][];
+         for (int n = 0; n < restored.length; n++)
+         {
+            restored[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+         }
+      }
+
+      Path target = directory.resolve(String.format("%s%06d%s", PREFIX, number + 1, SUFFIX));
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      long count = 0;
+
+      try
+      {
+         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+         {
+            out.writeInt(MAGIC);
+            out.writeByte(precision);
+            out.writeByte(flags);
+            out.writeUTF(delta ? previous.getFileName().toString() : "");
+            out.writeInt(sizeOfLayers.length);
+            for (int size : sizeOfLayers)
+            {
+               out.writeInt(size);
+            }
+
+            // Encode the blocks on the pool, writing each one out in order once it is done
+            ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (int n = 0; n < sizeOfLayers.length - 1; n++)
+            {
+               int rows = rowsPerBlock(sizeOfLayers[n + 1]);
+               for (int from = 0; from < sizeOfLayers[n]; from += rows)
+               {
+                  int layer = n;
+                  int first = from;
+                  int last = Math.min(sizeOfLayers[n], from + rows);
+                  pending.add(CODEC.submit(() -> encodeBlock(source, layer, first, last, delta)));
+                  if (pending.size() >= 2 * THREADS)
+                  {
+                     writeBlock(out, pending.remove());
+                  }
+               }
+               count += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+            } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+
+            while (!pending.isEmpty())
+            {
+               writeBlock(out, pending.remove());
+            }
+         } // try (DataOutputStream out = ...)
+         Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } // try
+      catch (IOException | RuntimeException e)
+      {
+         // The restored weights may be partly updated, so the next checkpoint has to be a keyframe
+         previous = null;
+         throw e;
+      }
+      finally
+      {
+         // Gone after the move, and otherwise only a half-written checkpoint
+         Files.deleteIfExists(temporary);
+      }
+
+      number++;
+      written++;
+      previous = target;
+
+      if (event.shouldCommit())
+      {
+         event.kind = delta ? "archive delta" : "archive";
+         event.file = target.toString();
+         event.weights = count;
+         event.commit();
+      }
+      return target;
+   } // public synchronized Path append(WeightStore source)
+
+   /**
+    * Waits for a block to be encoded and writes its length and values.
+    *
+    * @param out   the archive file being written
+    * @param block the block being encoded
+    */
+   private static void writeBlock(DataOutputStream out, Future<byte[]> block) throws IOException
+   {
+      byte[] bytes = await(block);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   /**
+    * Restores the weights of a checkpoint, first restoring the checkpoints before it if it is a delta.
+    *
+    * @param filename the archive file of the checkpoint
+    * @return the weights, indexed as weights[n][j][i]
+    */
+   public static double[][][] read(String filename) throws IOException
+   {
+      Path file = Paths.get(filename);
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+      {
+         if (in.readInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not a checkpoint archive file");
+         }
+         int precision = in.readByte();
+         int flags = in.readByte();
+         String base = in.readUTF();
+
+         int[] sizeOfLayers = new int[in.readInt()];
+         for (int n = 0; n < sizeOfLayers.length; n++)
+         {
+            sizeOfLayers[n] = in.readInt();
+         }
+
+         double[][][] weights;
+         if (base.isEmpty())
+         {
+            weights = new double[sizeOfLayers.length - 1][][];
+            for (int n = 0; n < weights.length; n++)
+            {
+               weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+            }
+         }
+         else
+         {
+            weights = read(file.resolveSibling(base).toString());
+            if (!Arrays.equals(sizeOfLayers, getSizeOfLayers(weights)))
+            {
+               throw new IOException(filename + " does not have the same layer sizes as " + base);
+            }
+         }
+
+         // Read the blocks in order, decoding each one on the pool while the next is read, with at most a few blocks
+         // read but not yet decoded at a time
+         ArrayDeque<Future<?>> decoded = new ArrayDeque<>();
+         for (int n = 0; n < sizeOfLayers.length - 1; n++)
+         {
+            int rows = rowsPerBlock(sizeOfLayers[n + 1]);
+            for (int from = 0; from < sizeOfLayers[n]; from += rows)
+            {
+               byte[] block = new byte[in.readInt()];
+               in.readFully(block);
+
+               double[][] layer = weights[n];
+               int first = from;
+               int last = Math.min(sizeOfLayers[n], from + rows);
+               decoded.add(CODEC.submit(() ->
+               {
+                  decodeBlock(block, layer, first, last, precision, flags);
+                  return null;
+               }));
+               if (decoded.size() >= 2 * THREADS)
+               {
+                  await(decoded.remove());
+               }
+            }
+         } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+
+         while (!decoded.isEmpty())
+         {
+            await(decoded.remove());
+         }
+         return weights;
+      } // try (DataInputStream in = ...)
+   } // public static double[][][] read(String filename)
+
+   /**
+    * Finds how many rows of a layer go in each block, so that each block holds about the same number of values.
+    *
+    * @param columns the number of units in the next activation layer, which is the length of each row
+    * @return the number of rows in each block
+    */
+   private static int rowsPerBlock(int columns)
+   {
+      return Math.max(1, BLOCK_VALUES / Math.max(1, columns));
+   }
+
+   /**
+    * Encodes the weights in some rows of a layer, as deltas from the last checkpoint if asked to, and updates the
+    * restored weights to what the new checkpoint will restore to.
+    *
+    * @param source the weights being stored
+    * @param n      the connectivity layer
+    * @param from   the first row of the block
+    * @param to     one past the last row of the block
+    * @param delta  true to encode the change since the last checkpoint, false to encode the weights themselves
+    * @return the encoded block
+    */
+   private byte[] encodeBlock(WeightStore source, int n, int from, int to, boolean delta)
+   {
+      int columns = restored[n][0].length;
+      int count = (to - from) * columns;
+      byte[] bytes = new byte[2 * count];
+
+      int k = 0;
+      for (int j = from; j < to; j++)
+      {
+         double[] row = restored[n][j];
+         for (int i = 0; i < columns; i++)
+         {
+            double base = delta ? row[i] : 0.0;
+            short bits = encodeValue(source.get(n, j, i) - base, precision);
+            row[i] = base + decodeValue(bits, precision);
+
+            if ((flags & SHUFFLED) != 0)
+            {
+               bytes[k] = (byte) (bits >> 8);
+               bytes[count + k] = (byte) bits;
+            }
+            else
+            {
+               bytes[2 * k] = (byte) (bits >> 8);
+               bytes[2 * k + 1] = (byte) bits;
+            }
+            k++;
+         } // for (int i = 0; i < columns; i++)
+      } // for (int j = from; j < to; j++)
+
+      if ((flags & DEFLATED) == 0)
+      {
+         return bytes;
+      }
+
+      Deflater deflater = new Deflater(level);
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+      byte[] buffer = new byte[1 << 16];
+      while (!deflater.finished())
+      {
+         compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+      deflater.end();
+      return compressed.toByteArray();
+   } // private byte[] encodeBlock(WeightStore source, int n, int from, int to, boolean delta)
+
+   /**
+    * Decodes a block and adds its values to some rows of a layer, which hold zeros for a full checkpoint, or the
+    * weights of the checkpoint before it for a delta.
+    *
+    * @param block     the encoded block
+    * @param layer     the weights of the layer, indexed as layer[j][i]
+    * @param from      the first row of the block
+    * @param to        one past the last row of the block
+    * @param precision FLOAT16 or BFLOAT16
+    * @param flags     SHUFFLED and DEFLATED, for how the block was written
+    */
+   private static void decodeBlock(byte[] block, double[][] layer, int from, int to, int precision, int flags)
+      throws IOException
+   {
+      int columns = layer[0].length;
+      int count = (to - from) * columns;
+      byte[] bytes = block;
+
+      if ((flags & DEFLATED) != 0)
+      {
+         bytes = new byte[2 * count];
+         Inflater inflater = new Inflater();
+         inflater.setInput(block);
+         try
+         {
+            int length = 0;
+            while (length < bytes.length && !inflater.finished())
+            {
+               int inflated = inflater.inflate(bytes, length, bytes.length - length);
+               if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+               {
+                  throw new IOException("A block of the archive ends too soon");
+               }
+               length += inflated;
+            }
+         } // try
+         catch (DataFormatException e)
+         {
+            throw new IOException("A block of the archive is corrupt", e);
+         }
+         finally
+         {
+            inflater.end();
+         }
+      } // if ((flags & DEFLATED) != 0)
+
+      int k = 0;
+      for (int j = from; j < to; j++)
+      {
+         double[] row = layer[j];
+         for (int i = 0; i < columns; i++)
+         {
+            int bits = (flags & SHUFFLED) != 0 ? (bytes[k] & 0xFF) << 8 | (bytes[count + k] & 0xFF)
+                                               : (bytes[2 * k] & 0xFF) << 8 | (bytes[2 * k + 1] & 0xFF);
+            row[i] += decodeValue(bits, precision);
+            k++;
+         }
+      }
+   } // private static void decodeBlock(byte[] block, double[][] layer, int from, int to, int precision, int flags)
+
+   /**
+    * Rounds a value to the nearest 16 bit value in the given precision.
+    *
+    * @param value     the value
+    * @param precision FLOAT16 or BFLOAT16
+    * @return the bits of the 16 bit value
+    */
+   static short encodeValue(double value, int precision)
+   {
+      return precision == BFLOAT16 ? toBfloat16((float) value) : toFloat16((float) value);
+   }
+
+   /**
+    * Finds the value of a 16 bit value in the given precision.
+    *
+    * @param bits      the bits of the 16 bit value, in the low 16 bits
+    * @param precision FLOAT16 or BFLOAT16
+    * @return the value
+    */
+   static double decodeValue(int bits, int precision)
+   {
+      return precision == BFLOAT16 ? fromBfloat16(bits) : fromFloat16(bits);
+   }
+
+   /**
+    * Rounds a float to the nearest half precision float, with ties going to the even value. Values too large for a
+    * half precision float become infinity, and values too small become zero.
+    *
+    * @param value the float
+    * @return the bits of the half precision float
+    */
+   static short toFloat16(float value)
+   {
+      int bits = Float.floatToRawIntBits(value);
+      int sign = (bits >>> 16) & 0x8000;
+      int floatExponent = (bits >>> 23) & 0xFF;
+      int mantissa = bits & 0x7FFFFF;
+
+      if (floatExponent == 0xFF)
+      {
+         return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));   // infinity or NaN
+      }
+
+      int exponent = floatExponent - 127 + 15;
+      if (exponent >= 0x1F)
+      {
+         return (short) (sign | 0x7C00);                                  // too large, so infinity
+      }
+
+      int half;
+      int shift;
+      if (exponent <= 0)
+      {
+         // A subnormal half precision float, which has no implicit leading bit
+         if (exponent < -10)
+         {
+            return (short) sign;                                          // too small, so zero
+         }
+         mantissa |= 0x800000;
+         shift = 14 - exponent;
+         half = mantissa >> shift;
+      }
+      else
+      {
+         shift = 13;
+         half = exponent << 10 | mantissa >> shift;
+      }
+
+      // Round to nearest even, which may carry into the exponent, even up to infinity
+      int remainder = mantissa & ((1 << shift) - 1);
+      int halfway = 1 << (shift - 1);
+      if (remainder > halfway || (remainder == halfway && (half & 1) != 0))
+      {
+         half++;
+      }
+      return (short) (sign | half);
+   } // static short toFloat16(float value)
+
+   /**
+    * Finds the value of a half precision float.
+    *
+    * @param bits the bits of the half precision float, in the low 16 bits
+    * @return the value as a float, which holds every half precision float exactly
+    */
+   static float fromFloat16(int bits)
+   {
+      int sign = (bits & 0x8000) << 16;
+      int exponent = (bits >>> 10) & 0x1F;
+      int mantissa = bits & 0x3FF;
+
+      if (exponent == 0)
+      {
+         float subnormal = mantissa * 0x1p-24f;
+         return sign != 0 ? -subnormal : subnormal;
+      }
+      if (exponent == 0x1F)
+      {
+         return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+      }
+      return Float.intBitsToFloat(sign | (exponent + 127 - 15) << 23 | mantissa << 13);
+   } // static float fromFloat16(int bits)
+
+   /**
+    * Rounds a float to the nearest bfloat16, which is the high 16 bits of a float, with ties going to the even value.
+    *
+    * @param value the float
+    * @return the bits of the bfloat16
+    */
+   static short toBfloat16(float value)
+   {
+      int bits = Float.floatToRawIntBits(value);
+      if (Float.isNaN(value))
+      {
+         return (short) (bits >>> 16 | 0x40);
+      }
+      return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+   }
+
+   /**
+    * Finds the value of a bfloat16.
+    *
+    * @param bits the bits of the bfloat16, in the low 16 bits
+    * @return the value as a float
+    */
+   static float fromBfloat16(int bits)
+   {
+      return Float.intBitsToFloat((bits & 0xFFFF) << 16);
+   }
+
+   /**
+    * Gets the number of units in each activation layer of some weights.
+    *
+    * @param weights the weights, indexed as weights[n][j][i]
+    * @return the size of each activation layer
+    */
+   private static int[] getSizeOfLayers(double[][][] weights)
+   {
+      int[] sizeOfLayers = new int[weights.length + 1];
+      for (int n = 0; n < weights.length; n++)
+      {
+         sizeOfLayers[n] = weights[n].length;
+      }
+      sizeOfLayers[weights.length] = weights[weights.length - 1][0].length;
+      return sizeOfLayers;
+   }
+
+   /**
+    * Waits for a task on the pool to finish.
+    *
+    * @param task the task
+    * @return the result of the task
+    */
+   private static <T> T await(Future<T> task) throws IOException
+   {
+      try
+      {
+         return task.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof IOException)
+         {
+            throw (IOException) e.getCause();
+         }
+         throw new IllegalStateException("An archive block failed", e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while encoding or decoding the archive", e);
+      }
+   } // private static <T> T await(Future<T> task)
+
+   /**
+    * Finds the number of the last checkpoint already in a directory.
+    *
+    * @param directory the directory of the archive
+    * @return the largest checkpoint number, or 0 if there are no checkpoints
+    */
+   private static int findLastNumber(Path directory) throws IOException
+   {
+      int last = 0;
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+      {
+         for (Path file : files)
+         {
+            String name = file.getFileName().toString();
+            try
+            {
+               last = Math.max(last, Integer.parseInt(name.substring(PREFIX.length(),
+                                                                     name.length() - SUFFIX.length())));
+            }
+            catch (NumberFormatException e)
+            {
+               // Not a checkpoint written by an archive
+            }
+         }
+      } // try (DirectoryStream<Path> files = ...)
+      return last;
+   } // private static int findLastNumber(Path directory)
+
+   /**
+    * Restores a checkpoint from an archive to a weights file in the text format. The arguments are the archive file
+    * of the checkpoint and the weights file to write.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      long start = System.nanoTime();
+      NeuralNet nn = new NeuralNet(read(args[0]));
+      long restoreNanos = System.nanoTime() - start;
+      nn.storeWeights(args[1]);
+      System.out.println("Restored " + args[0] + " to " + args[1] + " in " + restoreNanos / 1_000_000 + " ms");
+   }
+
+} // public class CheckpointArchive
@@ -0,0 +1,606 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Convolutional Stack
+ *
+ * A stack of convolutional and pooling layers that runs on an image before the dense layers of a neural network. The
+ * output of the last layer of the stack, flattened, is the input layer of the dense network. A few small kernels that
+ * are shared across the whole image learn what a dense layer would need a weight for every pel to learn, so the stack
+ * needs far fewer weights and multiply-adds than a dense first layer on the same image.
+ *
+ * The stack is given as a comma-separated list of layers, such as conv8x5,pool2,conv16x3,pool2:
+ *
+ * convCxK - a convolution with C output channels and a K by K kernel over every input channel, with no padding and a
+ *           stride of 1, followed by the output function
+ * poolP   - a max pool over P by P squares, with a stride of P, so any rows or columns left over are dropped
+ *
+ * Each layer's values are kept flat, indexed as [channel][row][column], and the input image has one channel.
+ *
+ * Convolutions use im2col: every K by K patch of the input is copied into a column of a matrix, so the convolution
+ * becomes one matrix multiplication whose inner loop runs over neighbouring output pels in order. The kernels of each
+ * convolution are kept like a dense weights matrix, as kernels[l][j][i], where j is the input channel, row and column
+ * of a kernel tap and i is the output channel. This lets the weight initializer and the optimizer treat them just like
+ * the dense weights.
+ *
+ * Methods in this class:
+ * ConvStack    create(TrainingConfig config, int inputSize)
+ * int          getOutputSize()
+ * double[][][] getKernels()
+ * String       getHeader()
+ * double[]     forward(double[] input)
+ * void         backPropagate(double[] omega, Optimizer optimizer, double learningRate)
+ * void         copyKernelsFrom(ConvStack source)
+ * long         countWeights()
+ * long         countMultiplyAdds()
+ * void         storeKernels(PrintWriter pw)
+ * void         readKernels(BufferedReader br)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class ConvStack
+{
+   /**
+    * One layer of the stack.
+    */
+   private interface Stage
+   {
+      /**
+       * Finds the output of the layer, keeping what the backward step needs.
+       *
+       * @param input the input of the layer
+       * @return the output of the layer, which is overwritten by the next call
+       */
+      double[] forward(double[] input);
+
+      /**
+       * Runs the backward step of backprop through the layer, changing its kernels if it has any.
+       *
+       * @param omegaOut     omega of each output of the layer
+       * @param omegaIn      where to put omega of each input of the layer, or null if it is not needed
+       * @param optimizer    the optimizer that changes the kernels
+       * @param learningRate the rate at which to change the kernels
+       */
+      void backPropagate(double[] omegaOut, double[] omegaIn, Optimizer optimizer, double learningRate);
+
+      /**
+       * Gets the number of values in the output of the layer.
+       *
+       * @return the output size
+       */
+      int getOutputSize();
+
+      /**
+       * Gets the number of multiply-adds the layer does going forward on one case.
+       *
+       * @return the multiply-adds of the forward step
+       */
+      long countMultiplyAdds();
+   } // private interface Stage
+
+   private final String spec;                 // the layers, as given in the configuration
+   private final int inputHeight;             // the height of the input image
+   private final int inputWidth;              // the width of the input image
+
+   private final Stage[] stages;              // every layer, in order from the input
+   private final double[][][] kernels;        // the kernels of each convolution, indexed as kernels[l][j][i]
+   private final double[][] omegas;           // omega of the input of each layer after the first
+
+   /**
+    * Creates a stack with the given layers for images of the given size. The kernels start at zero.
+    *
+    * @param spec        the comma-separated list of layers
+    * @param inputHeight the height of the input image
+    * @param inputWidth  the width of the input image
+    */
+   public ConvStack(String spec, int inputHeight, int inputWidth)
+   {
+      this.spec = spec;
+      this.inputHeight = inputHeight;
+      this.inputWidth = inputWidth;
+
+      List<Stage> stageList = new ArrayList<>();
+      List<double[][]> kernelList = new ArrayList<>();
+      int channels = 1;
+      int height = inputHeight;
+      int width = inputWidth;
+      for (String layer : spec.split(","))
+      {
+         if (layer.startsWith("conv"))
+         {
+            String[] sizes = layer.substring(4).split("x");
+            int outChannels = Integer.parseInt(sizes[0]);
+            int kernelSize = Integer.parseInt(sizes[1]);
+            if (outChannels < 1 || kernelSize < 1 || kernelSize > height || kernelSize > width)
+            {
+               throw new IllegalArgumentException("Layer " + layer + " does not fit a " + height + "x" + width +
+                                                  " input");
+            }
+
+            double[][] layerKernels = new double[channels * kernelSize * kernelSize][outChannels];
+            kernelList.add(layerKernels);
+            stageList.add(new ConvLayer(kernelList.size() - 1, layerKernels, channels, height, width, kernelSize));
+            channels = outChannels;
+            height -= kernelSize - 1;
+            width -= kernelSize - 1;
+         } // if (layer.startsWith("conv"))
+         else if (layer.startsWith("pool"))
+         {
+            int poolSize = Integer.parseInt(layer.substring(4));
+            if (poolSize < 1 || poolSize > height || poolSize > width)
+            {
+               throw new IllegalArgumentException("Layer " + layer + " does not fit a " + height + "x" + width +
+                                                  " input");
+            }
+
+            stageList.add(new PoolLayer(channels, height, width, poolSize));
+            height /= poolSize;
+            width /= poolSize;
+         }
+         else
+         {
+            throw new IllegalArgumentException("Unknown convolutional layer: " + layer);
+         }
+      } // for (String layer : spec.split(","))
+
+      stages = stageList.toArray(new Stage[0]);
+      kernels = kernelList.toArray(new double[0][][]);
+
+      omegas = new double[stages.length][];
+      int size = inputHeight * inputWidth;
+      for (int s = 0; s < stages.length; s++)
+      {
+         if (s > 0)
+         {
+            omegas[s] = new double[size];
+         }
+         size = stages[s].getOutputSize();
+      }
+   } // public ConvStack(String spec, int inputHeight, int inputWidth)
+
+   /**
+    * Creates the stack given in the configuration. The size of the input image is also taken from the configuration
+    * if it is given there, or else the image is taken to be square.
+    *
+    * @param config    the configuration with the layers and the size of the input image
+    * @param inputSize the number of pels in the input image
+    * @return the stack, or null if the configuration does not have convolutional layers
+    */
+   public static ConvStack create(TrainingConfig config, int inputSize)
+   {
+      if (config.convLayers == null)
+      {
+         return null;
+      }
+
+      int height = (int) Math.round(Math.sqrt(inputSize));
+      int width = height;
+      if (config.convInput != null)
+      {
+         String[] sizes = config.convInput.split("x");
+         height = Integer.parseInt(sizes[0]);
+         width = Integer.parseInt(sizes[1]);
+      }
+      if (height * width != inputSize)
+      {
+         throw new IllegalArgumentException("An input of " + inputSize + " pels is not a " + height + "x" + width +
+                                            " image; give its size with CONV_INPUT");
+      }
+      return new ConvStack(config.convLayers, height, width);
+   } // public static ConvStack create(TrainingConfig config, int inputSize)
+
+   /**
+    * Gets the number of values in the output of the last layer, which is the size of the input layer of the dense
+    * network.
+    *
+    * @return the output size
+    */
+   public int getOutputSize()
+   {
+      return stages[stages.length - 1].getOutputSize();
+   }
+
+   /**
+    * Gets the kernels of every convolution.
+    *
+    * @return the kernels, indexed as kernels[l][j][i]
+    */
+   public double[][][] getKernels()
+   {
+      return kernels;
+   }
+
+   /**
+    * Gets the line that starts a weights file with this stack, which gives the size of the input image and the
+    * layers.
+    *
+    * @return the header line
+    */
+   public String getHeader()
+   {
+      return "CONV " + inputHeight + "x" + inputWidth + " " + spec;
+   }
+
+   /**
+    * Runs an image through every layer of the stack.
+    *
+    * @param input the pels of the image
+    * @return the output of the last layer, which is overwritten by the next call
+    */
+   public double[] forward(double[] input)
+   {
+      double[] values = input;
+      for (Stage stage : stages)
+      {
+         values = stage.forward(values);
+      }
+      return values;
+   }
+
+   /**
+    * Runs the backward step of backprop through every layer, after a forward step on the same case, changing the
+    * kernels of each convolution.
+    *
+    * @param omega        omega of each output of the last layer, found by the dense network
+    * @param optimizer    the optimizer that changes the kernels
+    * @param learningRate the rate at which to change the kernels
+    */
+   public void backPropagate(double[] omega, Optimizer optimizer, double learningRate)
+   {
+      optimizer.startStep();
+      double[] omegaOut = omega;
+      for (int s = stages.length - 1; s >= 0; s--)
+      {
+         stages[s].backPropagate(omegaOut, omegas[s], optimizer, learningRate);
+         omegaOut = omegas[s];
+      }
+   }
+
+   /**
+    * Copies the kernels of another stack with the same layers and input size into this one.
+    *
+    * @param source the stack to copy from
+    */
+   public void copyKernelsFrom(ConvStack source)
+   {
+      if (!getHeader().equals(source.getHeader()))
+      {
+         throw new IllegalArgumentException("Convolutional layers " + source.getHeader() + " do not match " +
+                                            getHeader());
+      }
+      for (int l = 0; l < kernels.length; l++)
+      {
+         for (int j = 0; j < kernels[l].length; j++)
+         {
+            System.arraycopy(source.kernels[l][j], 0, kernels[l][j], 0, kernels[l][j].length);
+         }
+      }
+   }
+
+   /**
+    * Counts the weights in every kernel.
+    *
+    * @return the number of weights in the stack
+    */
+   public long countWeights()
+   {
+      long count = 0;
+      for (double[][] layerKernels : kernels)
+      {
+         count += (long) layerKernels.length * layerKernels[0].length;
+      }
+      return count;
+   }
+
+   /**
+    * Counts the multiply-adds of running one case forward through every layer.
+    *
+    * @return the number of multiply-adds
+    */
+   public long countMultiplyAdds()
+   {
+      long count = 0;
+      for (Stage stage : stages)
+      {
+         count += stage.countMultiplyAdds();
+      }
+      return count;
+   }
+
+   /**
+    * Writes the kernels of each convolution in the format of the weights file: one row per line with the values
+    * space separated, and a blank line after each convolution.
+    *
+    * @param pw where to write the kernels
+    */
+   public void storeKernels(PrintWriter pw)
+   {
+      for (double[][] layerKernels : kernels)
+      {
+         for (double[] row : layerKernels)
+         {
+            for (double weight : row)
+            {
+               pw.print(weight + " ");
+            }
+            pw.println();
+         }
+         pw.println();
+      }
+   }
+
+   /**
+    * Reads the kernels of each convolution, in the format they are stored in, after the blank line that follows the
+    * header.
+    *
+    * @param br where to read the kernels from
+    */
+   public void readKernels(BufferedReader br) throws IOException
+   {
+      br.readLine();
+      for (double[][] layerKernels : kernels)
+      {
+         for (double[] row : layerKernels)
+         {
+            StringTokenizer st = new StringTokenizer(br.readLine());
+            for (int i = 0; i < row.length; i++)
+            {
+               row[i] = Double.parseDouble(st.nextToken());
+            }
+         }
+         br.readLine();
+      }
+   }
+
+   /**
+    * A convolution over every input channel, followed by the output function.
+    */
+   private static class ConvLayer implements Stage
+   {
+      private final int index;             // which convolution this is, for the optimizer
+      private final double[][] kernels;    // the kernels, indexed as kernels[j][i]
+      private final int inChannels;
+      private final int inHeight;
+      private final int inWidth;
+      private final int kernelSize;
+      private final int outChannels;
+      private final int outHeight;
+      private final int outWidth;
+
+      private final double[][] columns;    // each K by K patch of the input, as columns[j][pel]
+      private final double[] theta;        // the output before the output function, as [channel][pel]
+      private final double[] output;       // the output, as [channel][pel]
+      private final double[] psi;          // psi of each output, as [channel][pel]
+      private final double[][] gradient;   // the descent direction of each kernel weight, as gradient[j][i]
+
+      private ConvLayer(int index, double[][] kernels, int inChannels, int inHeight, int inWidth, int kernelSize)
+      {
+         this.index = index;
+         this.kernels = kernels;
+         this.inChannels = inChannels;
+         this.inHeight = inHeight;
+         this.inWidth = inWidth;
+         this.kernelSize = kernelSize;
+         outChannels = kernels[0].length;
+         outHeight = inHeight - kernelSize + 1;
+         outWidth = inWidth - kernelSize + 1;
+
+         columns = new double[kernels.length][outHeight * outWidth];
+         theta = new double[outChannels * outHeight * outWidth];
+         output = new double[theta.length];
+         psi = new double[theta.length];
+         gradient = new double[kernels.length][outChannels];
+      }
+
+      public double[] forward(double[] input)
+      {
+         // Copy each patch of the input into the columns, one kernel tap at a time
+         for (int c = 0; c < inChannels; c++)
+         {
+            for (int ky = 0; ky < kernelSize; ky++)
+            {
+               for (int kx = 0; kx < kernelSize; kx++)
+               {
+                  double[] row = columns[(c * kernelSize + ky) * kernelSize + kx];
+                  for (int y = 0; y < outHeight; y++)
+                  {
+                     System.arraycopy(input, (c * inHeight + y + ky) * inWidth + kx, row, y * outWidth, outWidth);
+                  }
+               }
+            }
+         }
+
+         // theta_i = sum of (w_ji * column_j) for every output pel
+         int pels = outHeight * outWidth;
+         Arrays.fill(theta, 0.0);
+         for (int j = 0; j < kernels.length; j++)
+         {
+            double[] row = columns[j];
+            for (int i = 0; i < outChannels; i++)
+            {
+               double weight = kernels[j][i];
+               int base = i * pels;
+               for (int p = 0; p < pels; p++)
+               {
+                  theta[base + p] += weight * row[p];
+               }
+            }
+         }
+
+         for (int q = 0; q < theta.length; q++)
+         {
+            output[q] = NeuralNet.outputFunction(theta[q]);
+         }
+         return output;
+      } // public double[] forward(double[] input)
+
+      public void backPropagate(double[] omegaOut, double[] omegaIn, Optimizer optimizer, double learningRate)
+      {
+         // psi_i = omega_i * f'(theta_i)
+         for (int q = 0; q < theta.length; q++)
+         {
+            psi[q] = omegaOut[q] * NeuralNet.outputFunctionPrime(theta[q]);
+         }
+
+         // The descent direction of w_ji is the sum over every output pel of column_j * psi_i
+         int pels = outHeight * outWidth;
+         for (int j = 0; j < kernels.length; j++)
+         {
+            double[] row = columns[j];
+            for (int i = 0; i < outChannels; i++)
+            {
+               double sum = 0.0;
+               int base = i * pels;
+               for (int p = 0; p < pels; p++)
+               {
+                  sum += row[p] * psi[base + p];
+               }
+               gradient[j][i] = sum;
+            }
+         }
+
+         // omega of each input pel is the sum of (psi_i * w_ji) over every patch it is in, found with the old kernels
+         if (omegaIn != null)
+         {
+            for (int j = 0; j < kernels.length; j++)
+            {
+               double[] row = columns[j];
+               Arrays.fill(row, 0.0);
+               for (int i = 0; i < outChannels; i++)
+               {
+                  double weight = kernels[j][i];
+                  int base = i * pels;
+                  for (int p = 0; p < pels; p++)
+                  {
+                     row[p] += weight * psi[base + p];
+                  }
+               }
+            }
+
+            Arrays.fill(omegaIn, 0.0);
+            for (int c = 0; c < inChannels; c++)
+            {
+               for (int ky = 0; ky < kernelSize; ky++)
+               {
+                  for (int kx = 0; kx < kernelSize; kx++)
+                  {
+                     double[] row = columns[(c * kernelSize + ky) * kernelSize + kx];
+                     for (int y = 0; y < outHeight; y++)
+                     {
+                        int to = (c * inHeight + y + ky) * inWidth + kx;
+                        for (int x = 0; x < outWidth; x++)
+                        {
+                           omegaIn[to + x] += row[y * outWidth + x];
+                        }
+                     }
+                  }
+               }
+            } // for (int c = 0; c < inChannels; c++)
+         } // if (omegaIn != null)
+
+         for (int j = 0; j < kernels.length; j++)
+         {
+            optimizer.updateRow(index, j, kernels[j], 1.0, gradient[j], learningRate);
+         }
+      } // public void backPropagate(double[] omegaOut, double[] omegaIn, Optimizer optimizer, double learningRate)
+
+      public int getOutputSize()
+      {
+         return output.length;
+      }
+
+      public long countMultiplyAdds()
+      {
+         return (long) kernels.length * output.length;
+      }
+   } // private static class ConvLayer implements Stage
+
+   /**
+    * A max pool over squares of each channel.
+    */
+   private static class PoolLayer implements Stage
+   {
+      private final int channels;
+      private final int inHeight;
+      private final int inWidth;
+      private final int poolSize;
+      private final int outHeight;
+      private final int outWidth;
+
+      private final double[] output;       // the largest value in each square, as [channel][pel]
+      private final int[] largest;         // the index in the input of the largest value in each square
+
+      private PoolLayer(int channels, int inHeight, int inWidth, int poolSize)
+      {
+         this.channels = channels;
+         this.inHeight = inHeight;
+         this.inWidth = inWidth;
+         this.poolSize = poolSize;
+         outHeight = inHeight / poolSize;
+         outWidth = inWidth / poolSize;
+
+         output = new double[channels * outHeight * outWidth];
+         largest = new int[output.length];
+      }
+
+      public double[] forward(double[] input)
+      {
+         int q = 0;
+         for (int c = 0; c < channels; c++)
+         {
+            for (int y = 0; y < outHeight; y++)
+            {
+               for (int x = 0; x < outWidth; x++)
+               {
+                  int best = (c * inHeight + y * poolSize) * inWidth + x * poolSize;
+                  for (int py = 0; py < poolSize; py++)
+                  {
+                     int from = (c * inHeight + y * poolSize + py) * inWidth + x * poolSize;
+                     for (int px = 0; px < poolSize; px++)
+                     {
+                        if (input[from + px] > input[best])
+                        {
+                           best = from + px;
+                        }
+                     }
+                  }
+                  largest[q] = best;
+                  output[q] = input[best];
+                  q++;
+               } // for (int x = 0; x < outWidth; x++)
+            }
+         } // for (int c = 0; c < channels; c++)
+         return output;
+      } // public double[] forward(double[] input)
+
+      public void backPropagate(double[] omegaOut, double[] omegaIn, Optimizer optimizer, double learningRate)
+      {
+         // Only the largest value in each square changed the output, so it gets all of omega
+         if (omegaIn != null)
+         {
+            Arrays.fill(omegaIn, 0.0);
+            for (int q = 0; q < output.length; q++)
+            {
+               omegaIn[largest[q]] += omegaOut[q];
+            }
+         }
+      }
+
+      public int getOutputSize()
+      {
+         return output.length;
+      }
+
+      public long countMultiplyAdds()
+      {
+         return 0;
+      }
+   } // private static class PoolLayer implements Stage
+
+} // public class ConvStack
@@ -246,6 +246,9 @@ public class DibDump
       // The color table
       int[] colorPallet = new int[256];  // reserve space for the largest possible color table
 
+      TrainingEvents.BmpDecode event = new TrainingEvents.BmpDecode();
+      event.begin();
+
       try // lots of things can go wrong when doing file i/o
       {
          // Open the file that is the first command line parameter
@@ -761,6 +764,13 @@ public class DibDump
          System.err.println("File input error" + e);
       }
 
+      if (event.shouldCommit())
+      {
+         event.file = inFileName;
+         event.height = imageArray == null ? 0 : imageArray.length;
+         event.width = imageArray == null || imageArray.length == 0 ? 0 : imageArray[0].length;
+         event.commit();
+      }
       return imageArray;
    } // public double[] bmpToArray(String inFileName)
 
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Embedding Encoder
+ *
+ * Runs every case of a dataset through a network only as far as one hidden layer and writes the activations of that
+ * layer, the embedding of each case, to a binary file. For an autoencoder the layer is usually the bottleneck, the
+ * smallest hidden layer, so the decoder half of the network is never run.
+ *
+ * The cases are run in chunks with the batched forward pass of the network, and each chunk is written out as soon as it
+ * is done, so the embeddings of a large dataset are never all held in memory at once.
+ *
+ * The embeddings file is a binary file with the following structure, with every value little-endian, so it can be
+ * read straight into an array by most numeric libraries:
+ *
+ * magic number (int), number of cases (int), size of each embedding (int), activation layer it came from (int)
+ * the embedding of each case, in the order of the dataset (float each)
+ *
+ * Methods in this class:
+ * int       findBottleneck(int[] sizeOfLayers)
+ * int       encode(NeuralNet nn, double[][][] data, int layer, String filename)
+ * void      write(FileChannel channel, ByteBuffer buffer)
+ * float[][] read(String filename)
+ * void      main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class EmbeddingEncoder
+{
+   static final int MAGIC = 0x4E4E4531;           // "NNE1", marks the start of an embeddings file
+   private static final int HEADER_SIZE = 16;     // the number of bytes before the first embedding
+   private static final int CHUNK = 1024;         // the number of cases run and written at once
+
+   private EmbeddingEncoder()
+   {
+   }
+
+   /**
+    * Finds the smallest hidden layer of a network, which is the bottleneck of an autoencoder. If there are several of
+    * the same size, the first one is picked, and a network with no hidden layers gives its output layer.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @return the activation layer of the bottleneck
+    */
+   public static int findBottleneck(int[] sizeOfLayers)
+   {
+      int bottleneck = sizeOfLayers.length > 2 ? 1 : sizeOfLayers.length - 1;
+      for (int n = 2; n < sizeOfLayers.length - 1; n++)
+      {
+         if (sizeOfLayers[n] < sizeOfLayers[bottleneck])
+         {
+            bottleneck = n;
+         }
+      }
+      return bottleneck;
+   }
+
+   /**
+    * Writes the embedding of every case in a dataset to a file. The embeddings are written to a temporary file next
+    * to the given file, which is then renamed over the given file.
+    *
+    * @param nn       the network to run
+    * @param data     the cases, of which only the inputs are used
+    * @param layer    the activation layer whose activations are the embeddings
+    * @param filename the name of the embeddings file
+    * @return the size of each embedding
+    */
+   public static int encode(NeuralNet nn, double[][][] data, int layer, String filename) throws IOException
+   {
+      Path target = Paths.get(filename).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      int size = nn.getWeightStore().getSizeOfLayers()[layer];
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE, CHUNK * size * Float.BYTES))
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+         buffer.putInt(MAGIC).putInt(data.length).putInt(size).putInt(layer);
+
+         for (int from = 0; from < data.length; from += CHUNK)
+         {
+            int to = Math.min(data.length, from + CHUNK);
+            double[][] inputs = new double[to - from][];
+            for (int k = from; k < to; k++)
+            {
+               inputs[k - from] = data[k][0];
+            }
+
+            for (double[] embedding : nn.propagateTo(inputs, layer))
+            {
+               for (double activation : embedding)
+               {
+                  if (!buffer.hasRemaining())
+                  {
+                     write(channel, buffer);
+                  }
+                  buffer.putFloat((float) activation);
+               }
+            }
+         } // for (int from = 0; from < data.length; from += CHUNK)
+         write(channel, buffer);
+      } // try (FileChannel channel = ...)
+
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return size;
+   } // public static int encode(NeuralNet nn, double[][][] data, int layer, String filename)
+
+   /**
+    * Writes everything in a buffer to a channel and clears the buffer.
+    *
+    * @param channel the channel to write to
+    * @param buffer  the buffer, ready to be written to
+    */
+   private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+   {
+      buffer.flip();
+      while (buffer.hasRemaining())
+      {
+         channel.write(buffer);
+      }
+      buffer.clear();
+   }
+
+   /**
+    * Reads every embedding from an embeddings file.
+    *
+    * @param filename the name of the embeddings file
+    * @return the embedding of each case
+    */
+   public static float[][] read(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+         if (buffer.getInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not an embeddings file");
+         }
+
+         float[][] embeddings = new float[buffer.getInt()][buffer.getInt()];
+         buffer.getInt();
+         for (float[] embedding : embeddings)
+         {
+            buffer.asFloatBuffer().get(embedding);
+            buffer.position(buffer.position() + embedding.length * Float.BYTES);
+         }
+         return embeddings;
+      } // try (FileChannel channel = ...)
+   } // public static float[][] read(String filename)
+
+   /**
+    * Encodes a dataset. The arguments are the config file, the data file in the training data format, the weights
+    * file and the embeddings file to write. The layer comes from EMBEDDING_LAYER in the config file, or is the
+    * bottleneck if that is not given.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      TrainingConfig config = new TrainingConfig(args[0]);
+      double[][][] data = Main.getTrainingData(args[1]);
+      NeuralNet nn = Main.loadNetwork(config, args[2]);
+      int layer = config.embeddingLayer > 0 ? config.embeddingLayer :
+                  findBottleneck(nn.getWeightStore().getSizeOfLayers());
+
+      long start = System.nanoTime();
+      int size = encode(nn, data, layer, args[3]);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println("Encoded " + data.length + " cases to layer " + layer + " (" + size + " units) in " +
+                         seconds + " s, " + (long) (data.length / seconds) + " cases per second");
+      nn.close();
+   } // public static void main(String[] args)
+
+} // public class EmbeddingEncoder
@@ -0,0 +1,833 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation Runner
+ *
+ * Scores a trained network on a dataset that is streamed from disk instead of read into memory first. The work is
+ * split between three threads that run at the same time: a reader thread parses the dataset into batches of cases,
+ * the calling thread runs each batch through the network with the batched forward pass, split between the intra-op
+ * threads, and adds it to the statistics, and a writer thread turns the outputs into predictions and writes them. The
+ * threads hand batches to each other through small bounded queues, so a slow writer holds back the network instead of
+ * letting batches pile up in memory.
+ *
+ * The dataset can be a file in the training data format, a binary dataset file or a file in the image training format
+ * listing input and expected bitmaps, which is told apart by its contents. A binary dataset file has the following
+ * structure, with every value little-endian:
+ *
+ * magic number (int), number of cases (int), number of inputs (int), number of outputs (int)
+ * the inputs and then the expected outputs of each case, in order (float each)
+ *
+ * The predictions can be written as CSV, with one line for each case giving its index and outputs, or in the binary
+ * format of an embeddings file, where the outputs are the embeddings of the output layer. Any predictions file ending
+ * in .csv is written as CSV.
+ *
+ * The report gives the error, added up the same way as while training, the root mean square and mean absolute error
+ * of each output, the mean, standard deviation, smallest and largest value of each output, and the number of cases
+ * scored per second.
+ *
+ * Methods in this class:
+ * String      evaluate(String dataFile, String predictionsFile)
+ * void        accumulate(Batch batch)
+ * String      report(double seconds)
+ * double      getError()
+ * CaseReader  open(String dataFile)
+ * void        writeBinary(String textFile, String binaryFile)
+ * void        main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class EvaluationRunner
+{
+   static final int MAGIC = 0x4E4E4431;       // "NND1", marks the start of a binary dataset file
+   private static final int HEADER_SIZE = 16; // the number of bytes before the first case of a binary file
+   private static final int BATCH_SIZE = 256; // the number of cases read, run and written at once
+   private static final int QUEUE_DEPTH = 4;  // the number of batches that can wait between two threads
+   private static final int BUFFER_SIZE = 1 << 20;
+   private static final long HANDOFF_WAIT = 100; // milliseconds between checks that the writer thread is alive
+
+   private final NeuralNet nn;
+   private final int outputLayer;             // the activation layer of the outputs
+
+   // statistics of every case scored so far
+   private long cases;
+   private double error;                      // added up the same way as NeuralNet.calculateError
+   private double[] outputSums;
+   private double[] outputSquares;
+   private double[] outputMins;
+   private double[] outputMaxes;
+   private double[] squaredErrors;
+   private double[] absoluteErrors;
+   private boolean hasExpected;               // false if the dataset has no expected outputs
+
+   /**
+    * Creates a runner for a network, which runs each batch on the given number of intra-op threads.
+    *
+    * @param nn      the network to score
+    * @param threads the number of threads to split each batch between, usually INTRA_OP_THREADS, or 1 to run each
+    *                batch on the calling thread
+    */
+   public EvaluationRunner(NeuralNet nn, int threads)
+   {
+      this.nn = nn;
+      outputLayer = nn.getWeightStore().getSizeOfLayers().length - 1;
+      nn.setParallelism(threads);
+   }
+
+   /**
+    * Streams every case of a dataset through the network, adding it to the statistics and writing its outputs to the
+    * predictions file if one is given. The predictions are written to a temporary file next to the given file, which
+    * is then renamed over it.
+    *
+    * @param dataFile        the dataset, in the training data, binary dataset or image training format
+    * @param predictionsFile the file to write the predictions to, or null to only find the statistics
+    * @return the report of the statistics and throughput
+    */
+   public String evaluate(String dataFile, String predictionsFile) throws IOException
+   {
+      long start = System.nanoTime();
+      cases = 0;
+      error = 0.0;
+      int numOfOutputs = nn.getWeightStore().getSizeOfLayers()[outputLayer];
+      outputSums = new double[numOfOutputs];
+      outputSquares = new double[numOfOutputs];
+      outputMins = new double[numOfOutputs];
+      outputMaxes = new double[numOfOutputs];
+      squaredErrors = new double[numOfOutputs];
+      absoluteErrors = new double[numOfOutputs];
+      Arrays.fill(outputMins, Double.POSITIVE_INFINITY);
+      Arrays.fill(outputMaxes, Double.NEGATIVE_INFINITY);
+
+      try (CaseReader reader = open(dataFile);
+           BatchReader batches = new BatchReader(reader);
+           PredictionWriter writer = predictionsFile == null ? null :
+                                     new PredictionWriter(predictionsFile, numOfOutputs, outputLayer))
+      {
+         hasExpected = reader.numOfOutputs > 0;
+         if (hasExpected && reader.numOfOutputs != numOfOutputs)
+         {
+            throw new IOException(dataFile + " has " + reader.numOfOutputs + " outputs but the network has " +
+                                  numOfOutputs);
+         }
+
+         for (Batch batch = batches.take(); batch.count > 0; batch = batches.take())
+         {
+            batch.outputs = nn.propagateTo(batch.inputs, outputLayer);
+            accumulate(batch);
+            if (writer != null)
+            {
+               writer.write(batch);
+            }
+         }
+         if (writer != null)
+         {
+            writer.finish();
+         }
+      } // try (CaseReader reader = open(dataFile); BatchReader batches = ...; PredictionWriter writer = ...)
+
+      return report((System.nanoTime() - start) / 1e9);
+   } // public String evaluate(String dataFile, String predictionsFile)
+
+   /**
+    * Adds the outputs of a batch, and their errors if the dataset has expected outputs, to the statistics.
+    *
+    * @param batch the batch, after it has been run
+    */
+   private void accumulate(Batch batch)
+   {
+      for (int k = 0; k < batch.count; k++)
+      {
+         double[] output = batch.outputs[k];
+         double singleError = 0.0;
+         for (int i = 0; i < output.length; i++)
+         {
+            outputSums[i] += output[i];
+            outputSquares[i] += output[i] * output[i];
+            outputMins[i] = Math.min(outputMins[i], output[i]);
+            outputMaxes[i] = Math.max(outputMaxes[i], output[i]);
+            if (hasExpected)
+            {
+               double difference = batch.expected[k][i] - output[i];
+               squaredErrors[i] += difference * difference;
+               absoluteErrors[i] += Math.abs(difference);
+               singleError += 0.5 * difference * difference;
+            }
+         }
+         error += singleError * singleError;
+      } // for (int k = 0; k < batch.count; k++)
+      cases += batch.count;
+   } // private void accumulate(Batch batch)
+
+   /**
+    * Describes the statistics of every case scored and how fast they were scored.
+    *
+    * @param seconds the time taken to score them
+    * @return the error, a line for each output and the throughput
+    */
+   private String report(double seconds)
+   {
+      String report = "Cases: " + cases + "\n";
+      if (hasExpected)
+      {
+         report += "Error: " + getError() + "\n";
+      }
+      for (int i = 0; i < outputSums.length && cases > 0; i++)
+      {
+         double mean = outputSums[i] / cases;
+         double deviation = Math.sqrt(Math.max(0.0, outputSquares[i] / cases - mean * mean));
+         report += "Output " + i + ": Mean = " + mean + ", Standard Deviation = " + deviation + ", Min = " +
+                   outputMins[i] + ", Max = " + outputMaxes[i];
+         if (hasExpected)
+         {
+            report += ", RMS Error = " + Math.sqrt(squaredErrors[i] / cases) + ", Mean Absolute Error = " +
+                      absoluteErrors[i] / cases;
+         }
+         report += "\n";
+      } // for (int i = 0; i < outputSums.length && cases > 0; i++)
+      report += "Time: " + seconds + " s, " + (long) (cases / seconds) + " samples per second\n";
+      return report;
+   } // private String report(double seconds)
+
+   /**
+    * Gets the error of the last dataset scored, added up the same way as while training.
+    *
+    * @return the square root of the error, or NaN if the dataset had no expected outputs
+    */
+   public double getError()
+   {
+      return hasExpected ? Math.sqrt(error) : Double.NaN;
+   }
+
+   /**
+    * Opens a dataset for reading, telling its format from its contents. A binary dataset starts with its magic
+    * number. Otherwise, the file starts with three numbers, and it is in the training data format if a number comes
+    * after them and in the image training format if a file name does.
+    *
+    * @param dataFile the dataset
+    * @return a reader positioned at the first case
+    */
+   static CaseReader open(String dataFile) throws IOException
+   {
+      Path file = Paths.get(dataFile);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         while (magic.hasRemaining() && channel.read(magic) > 0)
+         {
+         }
+         if (!magic.hasRemaining() && magic.getInt(0) == MAGIC)
+         {
+            return new BinaryReader(file);
+         }
+      }
+
+      TextReader reader = new TextReader(file);
+      try
+      {
+         Double.parseDouble(reader.peek());
+         return reader;
+      }
+      catch (NumberFormatException e)
+      {
+         return new BitmapReader(reader);
+      }
+   } // static CaseReader open(String dataFile)
+
+   /**
+    * Converts a file in the training data format to a binary dataset file, which is much faster to read. The file is
+    * converted one case at a time, so it never has to fit in memory.
+    *
+    * @param textFile   the file in the training data format
+    * @param binaryFile the binary dataset file to write
+    */
+   public static void writeBinary(String textFile, String binaryFile) throws IOException
+   {
+      Path target = Paths.get(binaryFile).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      try (TextReader reader = new TextReader(Paths.get(textFile));
+           FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+         buffer.putInt(MAGIC).putInt(reader.numOfCases).putInt(reader.numOfInputs).putInt(reader.numOfOutputs);
+         for (int k = 0; k < reader.numOfCases; k++)
+         {
+            for (double[] values : reader.next())
+            {
+               for (double value : values)
+               {
+                  if (!buffer.hasRemaining())
+                  {
+                     PredictionWriter.drain(channel, buffer);
+                  }
+                  buffer.putFloat((float) value);
+               }
+            }
+         }
+         PredictionWriter.drain(channel, buffer);
+      } // try (TextReader reader = ...; FileChannel channel = ...)
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   } // public static void writeBinary(String textFile, String binaryFile)
+
+   /**
+    * A batch of cases handed from one thread to the next.
+    */
+   static class Batch
+   {
+      final double[][] inputs;
+      private final double[][] expected;
+      final int count;                         // the number of cases, or 0 for the batch after the last
+      final long first;                        // the index of the first case in the dataset
+      private double[][] outputs;              // the outputs of each case, once it has been run
+      private Exception failure;               // why the dataset could not be read, on the batch after the last
+
+      private Batch(double[][] inputs, double[][] expected, int count, long first)
+      {
+         this.inputs = inputs;
+         this.expected = expected;
+         this.count = count;
+         this.first = first;
+      }
+   } // static class Batch
+
+   /**
+    * Reads a dataset into batches on a thread of its own, so the next batches are parsed while the network runs.
+    */
+   static class BatchReader implements AutoCloseable
+   {
+      private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+      private final Thread thread;
+
+      BatchReader(CaseReader reader)
+      {
+         thread = new Thread(() -> read(reader), "eval-reader");
+         thread.setDaemon(true);
+         thread.start();
+      }
+
+      /**
+       * Runs on the reader thread: reads every case into batches, then puts an empty batch at the end, holding the
+       * reason if the dataset could not be read.
+       */
+      private void read(CaseReader reader)
+      {
+         Batch end = new Batch(null, null, 0, 0);
+         try
+         {
+            for (long first = 0; first < reader.numOfCases; first += BATCH_SIZE)
+            {
+               int count = (int) Math.min(BATCH_SIZE, reader.numOfCases - first);
+               double[][] inputs = new double[count][];
+               double[][] expected = new double[count][];
+               for (int k = 0; k < count; k++)
+               {
+                  double[][] trainingCase = reader.next();
+                  inputs[k] = trainingCase[0];
+                  expected[k] = trainingCase[1];
+               }
+               queue.put(new Batch(inputs, expected, count, first));
+            }
+         } // try
+         catch (IOException | RuntimeException e)
+         {
+            end.failure = e;
+         }
+         catch (InterruptedException e)
+         {
+            return;
+         }
+
+         try
+         {
+            queue.put(end);
+         }
+         catch (InterruptedException e)
+         {
+            // Nothing is waiting for the end any more
+         }
+      } // private void read(CaseReader reader)
+
+      /**
+       * Takes the next batch, waiting for the reader thread if it is not ready.
+       *
+       * @return the batch, which is empty after the last one
+       */
+      Batch take() throws IOException
+      {
+         try
+         {
+            Batch batch = queue.take();
+            if (batch.failure != null)
+            {
+               throw new IOException("Could not read the dataset", batch.failure);
+            }
+            return batch;
+         }
+         catch (InterruptedException e)
+         {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the dataset", e);
+         }
+      } // Batch take()
+
+      /**
+       * Stops the reader thread, in case the batches stopped being taken before the last one.
+       */
+      public void close()
+      {
+         thread.interrupt();
+      }
+   } // static class BatchReader implements AutoCloseable
+
+   /**
+    * Writes the outputs of each batch to the predictions file on a thread of its own, through a direct buffer that is
+    * written to the file whenever it fills up.
+    */
+   private static class PredictionWriter implements AutoCloseable
+   {
+      private static final Batch END = new Batch(null, null, 0, 0);
+
+      private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+      private final Path target;
+      private final Path temporary;
+      private final FileChannel channel;
+      private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      private final boolean csv;                // true to write CSV, false for the embeddings format
+      private final Thread thread;
+      private volatile Exception failure;      // why the predictions could not be written
+      private volatile boolean ended;          // true once the writer thread has taken the end of the batches
+      private int written;                     // the number of cases written
+      private boolean finished;                // true once the predictions file has been replaced
+
+      private PredictionWriter(String filename, int numOfOutputs, int layer) throws IOException
+      {
+         target = Paths.get(filename).toAbsolutePath();
+         temporary = target.resolveSibling(target.getFileName() + ".tmp");
+         csv = filename.toLowerCase().endsWith(".csv");
+         channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+
+         // The CSV header, or the embeddings header, whose number of cases is filled in once they are all written
+         if (csv)
+         {
+            StringBuilder header = new StringBuilder("case");
+            for (int i = 0; i < numOfOutputs; i++)
+            {
+               header.append(",output_").append(i);
+            }
+            put(header.append('\n'));
+         }
+         else
+         {
+            buffer.putInt(EmbeddingEncoder.MAGIC).putInt(0).putInt(numOfOutputs).putInt(layer);
+         }
+
+         thread = new Thread(this::run, "eval-writer");
+         thread.setDaemon(true);
+         thread.start();
+      } // private PredictionWriter(String filename, int numOfOutputs, int layer)
+
+      /**
+       * Hands a batch to the writer thread, waiting while the queue is full, unless the writer thread has died.
+       *
+       * @param batch the batch, after it has been run
+       */
+      private void write(Batch batch) throws IOException
+      {
+         try
+         {
+            while (!queue.offer(batch, HANDOFF_WAIT, TimeUnit.MILLISECONDS))
+            {
+               if (!thread.isAlive())
+               {
+                  throw new IOException("The prediction writer stopped", failure);
+               }
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing predictions", e);
+         }
+      }
+
+      /**
+       * Runs on the writer thread: writes every batch until the end. After a failure, the rest of the batches are
+       * taken and dropped so that the thread handing them over never waits forever.
+       */
+      private void run()
+      {
+         StringBuilder line = new StringBuilder();
+         try
+         {
+            for (Batch batch = queue.take(); batch != END; batch = queue.take())
+            {
+               if (failure != null)
+               {
+                  continue;
+               }
+               try
+               {
+                  for (int k = 0; k < batch.count; k++)
+                  {
+                     if (csv)
+                     {
+                        line.setLength(0);
+                        line.append(batch.first + k);
+                        for (double output : batch.outputs[k])
+                        {
+                           line.append(',').append(output);
+                        }
+                        put(line.append('\n'));
+                     }
+                     else
+                     {
+                        for (double output : batch.outputs[k])
+                        {
+                           if (!buffer.hasRemaining())
+                           {
+                              drain(channel, buffer);
+                           }
+                           buffer.putFloat((float) output);
+                        }
+                     }
+                  } // for (int k = 0; k < batch.count; k++)
+                  written += batch.count;
+               } // try
+               catch (IOException | RuntimeException e)
+               {
+                  failure = e;
+               }
+            } // for (Batch batch = queue.take(); batch != END; batch = queue.take())
+            ended = true;
+         } // try
+         catch (InterruptedException e)
+         {
+            failure = e;
+         }
+      } // private void run()
+
+      /**
+       * Puts a line of ASCII text in the buffer, writing the buffer out whenever it fills up.
+       *
+       * @param text the text
+       */
+      private void put(CharSequence text) throws IOException
+      {
+         for (int c = 0; c < text.length(); c++)
+         {
+            if (!buffer.hasRemaining())
+            {
+               drain(channel, buffer);
+            }
+            buffer.put((byte) text.charAt(c));
+         }
+      }
+
+      /**
+       * Writes everything in a buffer to a channel and clears the buffer.
+       *
+       * @param channel the channel to write to
+       * @param buffer  the buffer, ready to be written to
+       */
+      private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException
+      {
+         buffer.flip();
+         while (buffer.hasRemaining())
+         {
+            channel.write(buffer);
+         }
+         buffer.clear();
+      }
+
+      /**
+       * Waits for the writer thread to write every batch, fills in the number of cases and renames the file over the
+       * predictions file.
+       */
+      private void finish() throws IOException
+      {
+         stop();
+         if (failure != null || !ended)
+         {
+            throw new IOException("Could not write the predictions to " + target, failure);
+         }
+
+         drain(channel, buffer);
+         if (!csv)
+         {
+            ByteBuffer count = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.write(count.putInt(0, written), Integer.BYTES);
+         }
+         channel.close();
+         Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         finished = true;
+      } // private void finish()
+
+      /**
+       * Hands the writer thread the end of the batches and waits for it to write everything before them.
+       */
+      private void stop() throws IOException
+      {
+         if (thread.isAlive())
+         {
+            write(END);
+            try
+            {
+               thread.join();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               throw new IOException("Interrupted while writing predictions", e);
+            }
+         }
+      }
+
+      /**
+       * Deletes the temporary file if the predictions were not finished, so that a failed run never replaces the
+       * predictions file.
+       */
+      public void close() throws IOException
+      {
+         if (!finished)
+         {
+            stop();
+            channel.close();
+            Files.deleteIfExists(temporary);
+         }
+      }
+   } // private static class PredictionWriter implements AutoCloseable
+
+   /**
+    * Reads the cases of a dataset one at a time.
+    */
+   abstract static class CaseReader implements AutoCloseable
+   {
+      int numOfCases;
+      int numOfInputs;
+      int numOfOutputs;                        // 0 if the dataset has no expected outputs
+
+      /**
+       * Reads the next case.
+       *
+       * @return the inputs and the expected outputs of the case, in new arrays
+       */
+      abstract double[][] next() throws IOException;
+
+      public abstract void close() throws IOException;
+   } // abstract static class CaseReader implements AutoCloseable
+
+   /**
+    * Reads a file in the training data format, one whitespace-separated number at a time.
+    */
+   private static class TextReader extends CaseReader
+   {
+      private final BufferedReader br;
+      private StringTokenizer tokens = new StringTokenizer("");
+      private String pending;                  // a token that was looked at but not read, or null
+
+      private TextReader(Path file) throws IOException
+      {
+         br = Files.newBufferedReader(file);
+         numOfCases = Integer.parseInt(token());
+         numOfInputs = Integer.parseInt(token());
+         numOfOutputs = Integer.parseInt(token());
+      }
+
+      /**
+       * Reads the next token, going on to the next lines until one is found.
+       *
+       * @return the token
+       */
+      private String token() throws IOException
+      {
+         if (pending != null)
+         {
+            String token = pending;
+            pending = null;
+            return token;
+         }
+         while (!tokens.hasMoreTokens())
+         {
+            String line = br.readLine();
+            if (line == null)
+            {
+               throw new IOException("The dataset ended early");
+            }
+            tokens = new StringTokenizer(line);
+         }
+         return tokens.nextToken();
+      }
+
+      /**
+       * Looks at the next token without reading it.
+       *
+       * @return the token
+       */
+      private String peek() throws IOException
+      {
+         pending = token();
+         return pending;
+      }
+
+      double[][] next() throws IOException
+      {
+         double[][] trainingCase = {new double[numOfInputs], new double[numOfOutputs]};
+         for (double[] values : trainingCase)
+         {
+            for (int i = 0; i < values.length; i++)
+            {
+               values[i] = Double.parseDouble(token());
+            }
+         }
+         return trainingCase;
+      }
+
+      public void close() throws IOException
+      {
+         br.close();
+      }
+   } // private static class TextReader extends CaseReader
+
+   /**
+    * Reads a file in the image training format, turning each input and expected bitmap to gray scale. The sizes of
+    * the inputs and outputs come from the first pair of bitmaps, which is read when the reader is made.
+    */
+   private static class BitmapReader extends CaseReader
+   {
+      private final TextReader names;          // reads the name of each bitmap
+      private double[][] first;                // the first case, until it is read
+
+      private BitmapReader(TextReader names) throws IOException
+      {
+         this.names = names;
+         numOfCases = names.numOfCases;
+         first = numOfCases > 0 ? next() : null;
+         numOfInputs = first == null ? 0 : first[0].length;
+         numOfOutputs = first == null ? 0 : first[1].length;
+      }
+
+      double[][] next() throws IOException
+      {
+         if (first != null)
+         {
+            double[][] trainingCase = first;
+            first = null;
+            return trainingCase;
+         }
+
+         double[][] trainingCase = new double[2][];
+         for (int side = 0; side < 2; side++)
+         {
+            String name = names.token();
+            ImageWrapper image = new ImageWrapper(name);
+            TrainingMetrics.get().addBytesRead(Files.size(Paths.get(name)));
+            image.toGrayScale();
+            trainingCase[side] = image.toDoubleArray();
+         }
+         return trainingCase;
+      }
+
+      public void close() throws IOException
+      {
+         names.close();
+      }
+   } // private static class BitmapReader extends CaseReader
+
+   /**
+    * Reads a binary dataset file through a direct buffer.
+    */
+   private static class BinaryReader extends CaseReader
+   {
+      private final FileChannel channel;
+      private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+      private BinaryReader(Path file) throws IOException
+      {
+         channel = FileChannel.open(file, StandardOpenOption.READ);
+         buffer.flip();
+         fill(HEADER_SIZE);
+         buffer.getInt();
+         numOfCases = buffer.getInt();
+         numOfInputs = buffer.getInt();
+         numOfOutputs = buffer.getInt();
+      }
+
+      /**
+       * Reads from the file until at least the given number of bytes are in the buffer.
+       *
+       * @param bytes the number of bytes needed
+       */
+      private void fill(int bytes) throws IOException
+      {
+         if (buffer.remaining() >= bytes)
+         {
+            return;
+         }
+         buffer.compact();
+         while (buffer.position() < bytes)
+         {
+            if (channel.read(buffer) < 0)
+            {
+               throw new IOException("The dataset ended early");
+            }
+         }
+         buffer.flip();
+      }
+
+      double[][] next() throws IOException
+      {
+         double[][] trainingCase = {new double[numOfInputs], new double[numOfOutputs]};
+         for (double[] values : trainingCase)
+         {
+            for (int i = 0; i < values.length; i++)
+            {
+               fill(Float.BYTES);
+               values[i] = buffer.getFloat();
+            }
+         }
+         return trainingCase;
+      }
+
+      public void close() throws IOException
+      {
+         channel.close();
+      }
+   } // private static class BinaryReader extends CaseReader
+
+   /**
+    * Scores a network on a dataset. The arguments are the config file, the weights file, the dataset and optionally
+    * the predictions file, which is written as CSV if its name ends in .csv. Giving CONVERT, a file in the training
+    * data format and a binary dataset file instead converts the first to the second.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args[0].equals("CONVERT"))
+      {
+         writeBinary(args[1], args[2]);
+         return;
+      }
+
+      TrainingConfig config = new TrainingConfig(args[0]);
+      NeuralNet nn = Main.loadNetwork(config, args[1]);
+      EvaluationRunner runner = new EvaluationRunner(nn, config.intraOpThreads);
+      System.out.print(runner.evaluate(args[2], args.length > 3 ? args[3] : null));
+      nn.close();
+   } // public static void main(String[] args)
+
+} // public class EvaluationRunner
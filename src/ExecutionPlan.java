@@ -0,0 +1,242 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Execution Plan
+ *
+ * A forward pass specialized for one topology, meaning the size of every activation layer. The generic loops in
+ * NeuralNet read the layer sizes and loop over them for every case, which costs more than the work itself for tiny
+ * networks such as XOR. A plan is made once for each topology and shared by every network with that topology in the
+ * JVM, since it holds no weights of its own.
+ *
+ * Small networks get a plan with every multiply-add written out, with no loops at all. Its source is generated for the
+ * topology, compiled in memory and loaded as a hidden class by PlanCompiler, on a background thread so that nothing
+ * waits for the compiler. Until it is ready, and whenever there is no compiler in the JVM, the blocked plan is used
+ * instead, and the reason the unrolled plan could not be compiled is kept in the description of the plan. Larger
+ * networks always use the blocked plan, which goes through the weights row by row, in blocks of output units small
+ * enough that the sums being added to stay in the cache.
+ *
+ * Every plan adds up each weighted sum in the same order as the generic loops, so the results are exactly the same.
+ *
+ * Methods in this class:
+ * void          forward(double[][][] weights, double[][] theta, double[][] activations)
+ * String        describe()
+ * ExecutionPlan forTopology(int[] sizeOfLayers)
+ * void          main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public abstract class ExecutionPlan
+{
+   static final int UNROLL_LIMIT = 256;       // networks with at most this many weights get an unrolled plan
+   static final int OUTPUT_BLOCK = 64;        // output units found at once by the blocked plan
+
+   private static final Map<String, ExecutionPlan> PLANS = new ConcurrentHashMap<>(); // the plan for each topology
+   private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r ->
+   {
+      Thread thread = new Thread(r, "plan-compiler");
+      thread.setDaemon(true);
+      return thread;
+   });
+
+   /**
+    * Finds theta and the activation of every unit after the input layer, given the activations of the input layer in
+    * activations[0].
+    *
+    * @param weights     the weights, indexed as weights[n][j][i]
+    * @param theta       where to put the weighted sum of each unit, indexed as theta[n][i]
+    * @param activations the activation of each unit, indexed as activations[n][i]
+    */
+   public abstract void forward(double[][][] weights, double[][] theta, double[][] activations);
+
+   /**
+    * Describes which kind of plan this is and the topology it is for.
+    *
+    * @return the description
+    */
+   public abstract String describe();
+
+   /**
+    * Gets the plan for a topology, making it the first time the topology is seen.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @return the plan shared by every network with this topology
+    */
+   public static ExecutionPlan forTopology(int[] sizeOfLayers)
+   {
+      return PLANS.computeIfAbsent(Arrays.toString(sizeOfLayers), key -> create(sizeOfLayers.clone()));
+   }
+
+   /**
+    * Makes the plan for a topology. Small networks start with the blocked plan and switch to the unrolled plan once it
+    * has been compiled.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @return the new plan
+    */
+   private static ExecutionPlan create(int[] sizeOfLayers)
+   {
+      ExecutionPlan blocked = new BlockedPlan(sizeOfLayers);
+
+      long weights = 0;
+      for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      {
+         weights += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+      }
+      if (weights > UNROLL_LIMIT)
+      {
+         return blocked;
+      }
+
+      SwitchingPlan plan = new SwitchingPlan(blocked);
+      COMPILER.execute(() ->
+      {
+         try
+         {
+            plan.current = PlanCompiler.compile(sizeOfLayers);
+         }
+         catch (IllegalStateException e)
+         {
+            plan.failure = e.getMessage();
+         }
+      });
+      return plan;
+   } // private static ExecutionPlan create(int[] sizeOfLayers)
+
+   /**
+    * A plan that runs another plan, which can be switched for a faster one at any time.
+    */
+   private static class SwitchingPlan extends ExecutionPlan
+   {
+      private volatile ExecutionPlan current;  // the plan being run
+      private volatile String failure;         // why the faster plan could not be made, or null if it has not failed
+
+      private SwitchingPlan(ExecutionPlan first)
+      {
+         current = first;
+      }
+
+      public void forward(double[][][] weights, double[][] theta, double[][] activations)
+      {
+         current.forward(weights, theta, activations);
+      }
+
+      public String describe()
+      {
+         String reason = failure;
+         String description = current.describe();
+         return reason == null ? description
+                               : description + ", since the unrolled plan could not be compiled: " + reason;
+      }
+   } // private static class SwitchingPlan extends ExecutionPlan
+
+   /**
+    * A plan that goes through the weights of each layer row by row, for one block of output units at a time.
+    */
+   private static class BlockedPlan extends ExecutionPlan
+   {
+      private final int[] sizeOfLayers;        // the number of units in each activation layer
+
+      private BlockedPlan(int[] sizeOfLayers)
+      {
+         this.sizeOfLayers = sizeOfLayers;
+      }
+
+      public void forward(double[][][] weights, double[][] theta, double[][] activations)
+      {
+         for (int n = 0; n < sizeOfLayers.length - 1; n++)
+         {
+            double[] input = activations[n];
+            double[] sums = theta[n + 1];
+            for (int from = 0; from < sizeOfLayers[n + 1]; from += OUTPUT_BLOCK)
+            {
+               int to = Math.min(sizeOfLayers[n + 1], from + OUTPUT_BLOCK);
+               Arrays.fill(sums, from, to, 0.0);
+               for (int j = 0; j < sizeOfLayers[n]; j++)
+               {
+                  double activation = input[j];
+                  double[] row = weights[n][j];
+                  for (int i = from; i < to; i++)
+                  {
+                     sums[i] += row[i] * activation;
+                  }
+               }
+            }
+
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               activations[n + 1][i] = NeuralNet.outputFunction(sums[i]);
+            }
+         } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      } // public void forward(double[][][] weights, double[][] theta, double[][] activations)
+
+      public String describe()
+      {
+         return "Blocked plan for " + Arrays.toString(sizeOfLayers);
+      }
+   } // private static class BlockedPlan extends ExecutionPlan
+
+   /**
+    * Times running and training a network with the given layer sizes, with and without its plan. The arguments are
+    * the size of each activation layer, such as 2 2 1.
+    */
+   public static void main(String[] args) throws InterruptedException
+   {
+      int[] sizeOfLayers = new int[args.length];
+      for (int n = 0; n < args.length; n++)
+      {
+         sizeOfLayers[n] = Integer.parseInt(args[n]);
+      }
+
+      TrainingConfig config = new TrainingConfig().with("SEED", "1");
+      NeuralNet planned = new NeuralNet(sizeOfLayers, config.with("EXECUTION_PLAN", "TRUE"));
+      NeuralNet generic = new NeuralNet(sizeOfLayers, config);
+
+      // Give the compiler a few seconds to finish the unrolled plan
+      ExecutionPlan plan = forTopology(sizeOfLayers);
+      for (int wait = 0; wait < 100 && plan instanceof SwitchingPlan && plan.describe().startsWith("Blocked"); wait++)
+      {
+         Thread.sleep(50);
+      }
+      System.out.println(plan.describe());
+
+      double[] input = new double[sizeOfLayers[0]];
+      double[] expected = new double[sizeOfLayers[sizeOfLayers.length - 1]];
+      Arrays.fill(input, 0.5);
+      long weights = 0;
+      for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      {
+         weights += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+      }
+      int iterations = (int) Math.max(1000, 100_000_000L / weights);
+      for (int round = 0; round < 3; round++)
+      {
+         for (NeuralNet nn : new NeuralNet[] {generic, planned})
+         {
+            long start = System.nanoTime();
+            double sum = 0.0;
+            for (int k = 0; k < iterations; k++)
+            {
+               sum += nn.propagate(input)[0];
+            }
+            long propagateNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int k = 0; k < iterations; k++)
+            {
+               nn.backPropagate(input, expected, 0.0);
+            }
+            long backPropagateNanos = System.nanoTime() - start;
+
+            System.out.println((nn == planned ? "Planned" : "Generic") + " propagate: " +
+                               (double) propagateNanos / iterations + " ns, backPropagate: " +
+                               (double) backPropagateNanos / iterations + " ns (" + sum + ")");
+         } // for (NeuralNet nn : new NeuralNet[] {generic, planned})
+      } // for (int round = 0; round < 3; round++)
+   } // public static void main(String[] args)
+
+} // public abstract class ExecutionPlan
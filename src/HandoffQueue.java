@@ -0,0 +1,74 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handoff Queue
+ *
+ * A bounded, lock-free queue of ints for exactly one thread putting values in and one thread taking them out. The
+ * values are kept in a ring buffer whose size is a power of two. The producer only ever writes the tail and the
+ * consumer only ever writes the head, and each is published with an ordered write, so neither thread ever waits on a
+ * lock. Everything the producer wrote before putting a value in is visible to the consumer once it takes the value
+ * out.
+ *
+ * Methods in this class:
+ * boolean offer(int value)
+ * int     poll()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class HandoffQueue
+{
+   private final int[] buffer;                       // the values in the queue, in a ring
+   private final int mask;                           // the size of the buffer minus one, to wrap indices around
+
+   private final AtomicLong head = new AtomicLong(); // the number of values ever taken out, written by the consumer
+   private final AtomicLong tail = new AtomicLong(); // the number of values ever put in, written by the producer
+
+   /**
+    * Creates an empty queue that can hold at least the given number of values.
+    *
+    * @param capacity the smallest number of values the queue has to hold
+    */
+   public HandoffQueue(int capacity)
+   {
+      int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+      buffer = new int[size];
+      mask = size - 1;
+   }
+
+   /**
+    * Puts a value at the end of the queue, if there is room. Must only be called by the producer thread.
+    *
+    * @param value the value to put in
+    * @return true if the value was put in, or false if the queue is full
+    */
+   public boolean offer(int value)
+   {
+      long t = tail.get();
+      if (t - head.get() == buffer.length)
+      {
+         return false;
+      }
+      buffer[(int) t & mask] = value;
+      tail.lazySet(t + 1);
+      return true;
+   }
+
+   /**
+    * Takes the value at the front of the queue, if there is one. Must only be called by the consumer thread.
+    *
+    * @return the value taken out, or -1 if the queue is empty
+    */
+   public int poll()
+   {
+      long h = head.get();
+      if (h == tail.get())
+      {
+         return -1;
+      }
+      int value = buffer[(int) h & mask];
+      head.lazySet(h + 1);
+      return value;
+   }
+
+} // public class HandoffQueue
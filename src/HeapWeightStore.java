@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * Heap Weight Store
+ *
+ * A weight store that keeps the weights in a jagged double array on the Java heap. This is the array the neural
+ * network trains on directly, so this store is just a view of it.
+ *
+ * Methods in this class:
+ * void multiplyBlock(int n, double[] input, double[] output, int from, int to)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class HeapWeightStore implements WeightStore
+{
+   private final int[] sizeOfLayers;     // number of units in each activation layer
+   private double[][][] weights;         // the weights, indexed as weights[n][j][i]
+
+   /**
+    * Creates a weight store that is a view of the given weights.
+    *
+    * @param weights the weights, indexed as weights[n][j][i]
+    */
+   public HeapWeightStore(double[][][] weights)
+   {
+      this.weights = weights;
+
+      sizeOfLayers = new int[weights.length + 1];
+      for (int n = 0; n < weights.length; n++)
+      {
+         sizeOfLayers[n] = weights[n].length;
+      }
+      sizeOfLayers[weights.length] = weights[weights.length - 1][0].length;
+   }
+
+   public int[] getSizeOfLayers()
+   {
+      return sizeOfLayers;
+   }
+
+   public double get(int n, int j, int i)
+   {
+      return weights[n][j][i];
+   }
+
+   public void set(int n, int j, int i, double value)
+   {
+      weights[n][j][i] = value;
+   }
+
+   public void multiply(int n, double[] input, double[] output)
+   {
+      multiplyBlock(n, input, output, 0, sizeOfLayers[n + 1]);
+   }
+
+   public void multiply(int n, double[] input, double[] output, ParallelKernels kernels)
+   {
+      kernels.forBlocks(sizeOfLayers[n + 1], ParallelKernels.OUTPUT_BLOCK, (long) sizeOfLayers[n] * sizeOfLayers[n + 1],
+                        (from, to) -> multiplyBlock(n, input, output, from, to));
+   }
+
+   /**
+    * Finds the weighted sums for a block of units of the next layer.
+    *
+    * @param n      the connectivity layer
+    * @param input  the activations of the previous layer
+    * @param output the array to put the weighted sums into
+    * @param from   the first unit of the next layer in the block
+    * @param to     one past the last unit of the next layer in the block
+    */
+   private void multiplyBlock(int n, double[] input, double[] output, int from, int to)
+   {
+      // Goes through the weights row by row, so each part of a row is read in order
+      Arrays.fill(output, from, to, 0.0);
+      for (int j = 0; j < sizeOfLayers[n]; j++)
+      {
+         double activation = input[j];
+         double[] row = weights[n][j];
+         for (int i = from; i < to; i++)
+         {
+            output[i] += row[i] * activation;
+         }
+      }
+   }
+
+   public void close()
+   {
+      weights = null;
+   }
+
+} // public class HeapWeightStore
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hogwild Trainer
+ *
+ * Trains a neural network with several threads at once, in the style of Hogwild!: each thread runs backprop on its own
+ * share of the training cases and changes the one shared weights matrix directly, without any locks. A thread may read
+ * weights that another thread is halfway through changing, but when each training case only moves the weights a
+ * little, this costs very little accuracy, and no thread ever waits for another.
+ *
+ * Each thread is a worker network that shares the weights array of the network being trained, but has its own
+ * activations, theta, omega and psi, and its own optimizer. Thread t trains on cases t, t + N, t + 2N and so on of
+ * every epoch, where N is the number of threads, and the threads meet again at the end of each epoch so the error can
+ * be calculated.
+ *
+ * Striping only rotates the order the rows are changed in: each thread starts changing the rows of each layer at a
+ * different place and goes around to the rows before it. Every thread still changes every row of every layer for every
+ * training case, so striping does not keep the threads from writing to the same rows. It only makes it less likely
+ * that two threads are on the same rows, and so the same cache lines, at the same moment.
+ *
+ * The staleness of each step is the number of steps other threads finished while it was running, which is how many
+ * changes to the weights it did not see. The mean and largest staleness are kept so they can be reported.
+ *
+ * Methods in this class:
+ * void   runEpoch(double[][][] trainingData, double learningRate)
+ * String getStalenessReport()
+ * void   close()
+ * String compare(TrainingConfig config, double[][][] trainingData, int epochs)
+ * void   main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class HogwildTrainer
+{
+   private final NeuralNet[] workers;          // one network for each thread, all sharing the same weights
+   private final ExecutorService pool;         // runs the workers
+
+   private final AtomicLong clock = new AtomicLong();  // the number of steps finished by any thread
+   private final long[] totalStaleness;        // the sum of the staleness of each worker's steps
+   private final long[] maxStaleness;          // the largest staleness of any of each worker's steps
+   private final long[] steps;                 // the number of steps each worker has taken
+
+   /**
+    * Creates a trainer with the given number of threads for the given weights. Each worker gets its own optimizer from
+    * the configuration.
+    *
+    * @param weights  the weights that every thread changes, indexed as weights[n][j][i]
+    * @param config   the configuration, with the number of threads and whether to rotate where each starts a layer
+    */
+   public HogwildTrainer(double[][][] weights, TrainingConfig config)
+   {
+      int threads = config.hogwildThreads;
+      workers = new NeuralNet[threads];
+      for (int t = 0; t < threads; t++)
+      {
+         workers[t] = new NeuralNet(weights);
+         workers[t].setConfig(config);
+         workers[t].setOptimizer(config.createOptimizer());
+         if (config.hogwildStriping)
+         {
+            workers[t].setStripe(t, threads);
+         }
+      }
+
+      totalStaleness = new long[threads];
+      maxStaleness = new long[threads];
+      steps = new long[threads];
+
+      pool = Executors.newFixedThreadPool(threads, r ->
+      {
+         Thread thread = new Thread(r, "hogwild");
+         thread.setDaemon(true);
+         return thread;
+      });
+   } // public HogwildTrainer(double[][][] weights, TrainingConfig config)
+
+   /**
+    * Runs one epoch, with every thread training on its share of the training cases at the same time. Returns once
+    * every thread is done.
+    *
+    * @param trainingData the inputs and outputs for each training case
+    * @param learningRate the rate at which to change the weights
+    */
+   public void runEpoch(double[][][] trainingData, double learningRate)
+   {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int t = 0; t < workers.length; t++)
+      {
+         int worker = t;
+         tasks.add(() ->
+         {
+            for (int c = worker; c < trainingData.length; c += workers.length)
+            {
+               long before = clock.get();
+               workers[worker].backPropagate(trainingData[c][0], trainingData[c][1], learningRate);
+               long staleness = clock.getAndIncrement() - before;
+
+               totalStaleness[worker] += staleness;
+               maxStaleness[worker] = Math.max(maxStaleness[worker], staleness);
+               steps[worker]++;
+            }
+            return null;
+         });
+      } // for (int t = 0; t < workers.length; t++)
+
+      try
+      {
+         for (Future<Void> result : pool.invokeAll(tasks))
+         {
+            result.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Hogwild training was interrupted", e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("A Hogwild worker failed", e.getCause());
+      }
+   } // public void runEpoch(double[][][] trainingData, double learningRate)
+
+   /**
+    * Gets the number of threads and the mean and largest staleness of every step taken so far.
+    *
+    * @return the staleness report, one value per line
+    */
+   public String getStalenessReport()
+   {
+      long total = 0;
+      long max = 0;
+      long count = 0;
+      for (int t = 0; t < workers.length; t++)
+      {
+         total += totalStaleness[t];
+         max = Math.max(max, maxStaleness[t]);
+         count += steps[t];
+      }
+
+      String report = "";
+      report += "Hogwild Threads: " + workers.length + "\n";
+      report += "Mean Staleness: " + (count == 0 ? 0.0 : (double) total / count) + "\n";
+      report += "Max Staleness: " + max + "\n";
+      return report;
+   }
+
+   /**
+    * Stops the worker threads.
+    */
+   public void close()
+   {
+      pool.shutdown();
+   }
+
+   /**
+    * Trains two networks that start from the same weights, one with the configured number of Hogwild threads and one
+    * with plain sequential training, and puts the error of each after every epoch side by side, along with how many
+    * training cases each trained on per second. Both networks use the configured learning rate, which is never changed.
+    *
+    * @param config       the configuration, with the number of Hogwild threads, which must be at least 2
+    * @param trainingData the inputs and outputs for each training case
+    * @param epochs       the number of epochs to train each network for, at least 1
+    * @return a table of the error curves, followed by the throughput and staleness
+    */
+   public static String compare(TrainingConfig config, double[][][] trainingData, int epochs)
+   {
+      if (config.hogwildThreads < 2)
+      {
+         throw new IllegalArgumentException("Comparing with sequential training needs HOGWILD_THREADS of at least 2, " +
+                                            "not " + config.hogwildThreads);
+      }
+      if (epochs < 1)
+      {
+         throw new IllegalArgumentException("Comparing with sequential training needs at least 1 epoch, not " + epochs);
+      }
+
+      config = config.with("PRINTING_RATE", "0");
+      NeuralNet hogwild = new NeuralNet(config.getLayerSizes(trainingData), config);
+      NeuralNet sequential = new NeuralNet(config.getLayerSizes(trainingData), config.with("HOGWILD_THREADS", "1"));
+
+      StringBuilder table = new StringBuilder("Epoch\tHogwild Error\tSequential Error\n");
+      long hogwildNanos = 0;
+      long sequentialNanos = 0;
+      for (int e = 1; e <= epochs; e++)
+      {
+         long start = System.nanoTime();
+         hogwild.train(trainingData, config.learningRate, 1.0, 1);
+         hogwildNanos += System.nanoTime() - start;
+
+         start = System.nanoTime();
+         sequential.train(trainingData, config.learningRate, 1.0, 1);
+         sequentialNanos += System.nanoTime() - start;
+
+         table.append(e).append('\t').append(Math.sqrt(hogwild.calculateError(trainingData))).append('\t')
+              .append(Math.sqrt(sequential.calculateError(trainingData))).append('\n');
+      }
+
+      double cases = (double) epochs * trainingData.length;
+      table.append("Hogwild Cases per Second: ").append(cases / (hogwildNanos * 1e-9)).append('\n');
+      table.append("Sequential Cases per Second: ").append(cases / (sequentialNanos * 1e-9)).append('\n');
+
+      // A pruned or factorized network is always trained sequentially, so it has no staleness to report
+      String staleness = hogwild.getStalenessReport();
+      table.append(staleness.isEmpty() ? "Hogwild Threads: none, the network is pruned or factorized\n" : staleness);
+
+      hogwild.close();
+      sequential.close();
+      return table.toString();
+   } // public static String compare(TrainingConfig config, double[][][] trainingData, int epochs)
+
+   /**
+    * Compares Hogwild training with sequential training. The arguments are the config file, which should give the
+    * number of Hogwild threads, and the training data file. The configured number of epochs is run for each network.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      TrainingConfig config = new TrainingConfig(args[0]);
+      System.out.print(compare(config, Main.getTrainingData(args[1]), config.epochs));
+   }
+
+} // public class HogwildTrainer
@@ -24,13 +24,17 @@ public class ImageWrapper
 
    /**
     * Creates a new ImageWrapper from a file. This constructor reads the image array from the file and masks off the
-    * alpha channel.
+    * alpha channel. DibDump keeps the headers of the bitmap it is reading in static fields, so only one bitmap is read
+    * at a time.
     *
     * @param fileName the bmp file containing the image
     */
    public ImageWrapper(String fileName)
    {
-      imageArray = DibDump.bmpToArray(fileName);
+      synchronized (DibDump.class)
+      {
+         imageArray = DibDump.bmpToArray(fileName);
+      }
       for (int i = 0; i < imageArray.length; i++)
       {
          for (int j = 0; j < imageArray[0].length; j++)
@@ -55,7 +59,7 @@ public class ImageWrapper
       {
          for (int j = 0; j < width; j++)
          {
-            imageArray[i][j] = (int) (image[i * height + j] * SCALING_FACTOR);
+            imageArray[i][j] = (int) (image[i * width + j] * SCALING_FACTOR);
          }
       }
    }
@@ -83,7 +87,7 @@ public class ImageWrapper
       {
          for (int c = 0; c < imageArray[0].length; c++)
          {
-            imageDoubleArray[r * imageArray.length + c] = (double) (imageArray[r][c]) / SCALING_FACTOR;
+            imageDoubleArray[r * imageArray[0].length + c] = (double) (imageArray[r][c]) / SCALING_FACTOR;
          }
       }
 
@@ -99,13 +103,17 @@ public class ImageWrapper
    }
 
    /**
-    * Takes the imageArray instance variable and puts it in the given bmp file.
+    * Takes the imageArray instance variable and puts it in the given bmp file. Like reading, this uses the static
+    * headers of DibDump, so only one bitmap is written at a time.
     *
     * @param fileName the file in which the image should go
     */
    public void toBMP(String fileName)
    {
-      DibDump.imageArrayToBMP(imageArray, fileName);
+      synchronized (DibDump.class)
+      {
+         DibDump.imageArrayToBMP(imageArray, fileName);
+      }
    }
 
    /**
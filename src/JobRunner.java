@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Job Runner
+ *
+ * Runs many independent training jobs in parallel on one executor in a single JVM. Each job has its own
+ * configuration, network and output file, so the JVM only starts and warms up once for all of them.
+ *
+ * To run it from the command line, give the number of threads, then the config file, training data file and weights
+ * file for each job:
+ *
+ * java JobRunner 4 config1.txt trainingData.txt weights1.txt config2.txt trainingData.txt weights2.txt
+ *
+ * The output of each job goes to its weights file with .log added to the end.
+ *
+ * Methods in this class:
+ * Future   submit(Callable job)
+ * void     shutdown()
+ * void     main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class JobRunner
+{
+   private final ExecutorService executor;   // runs the jobs, one per thread at a time
+
+   /**
+    * Creates a job runner that runs up to the given number of jobs at the same time.
+    *
+    * @param threads the number of jobs to run at the same time
+    */
+   public JobRunner(int threads)
+   {
+      executor = Executors.newFixedThreadPool(threads);
+   }
+
+   /**
+    * Starts running a job as soon as a thread is free.
+    *
+    * @param job the job to run
+    * @return the future result of the job, which is its diagnostic information
+    */
+   public Future<String> submit(Callable<String> job)
+   {
+      return executor.submit(job);
+   }
+
+   /**
+    * Lets every job that was submitted finish, then stops the threads.
+    */
+   public void shutdown()
+   {
+      executor.shutdown();
+   }
+
+   /**
+    * Reads the jobs from the arguments, runs all of them, and prints the result of each job as it finishes, in the
+    * order they were given.
+    */
+   public static void main(String[] args) throws Exception
+   {
+      JobRunner runner = new JobRunner(Integer.parseInt(args[0]));
+
+      List<TrainingJob> jobs = new ArrayList<>();
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 1; i + 2 < args.length; i += 3)
+      {
+         String weightsFile = args[i + 2];
+         TrainingJob job = new TrainingJob(weightsFile, new TrainingConfig(args[i]), args[i + 1], weightsFile,
+                                           weightsFile + ".log");
+         jobs.add(job);
+         results.add(runner.submit(job));
+      }
+      runner.shutdown();
+
+      for (int j = 0; j < jobs.size(); j++)
+      {
+         try
+         {
+            System.out.println(jobs.get(j).getName() + ":\n" + results.get(j).get());
+         }
+         catch (ExecutionException e)
+         {
+            System.out.println(jobs.get(j).getName() + ": Failed: " + e.getCause() + "\n");
+         }
+      }
+   } // public static void main(String[] args)
+
+} // public class JobRunner
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * L-BFGS Optimizer
+ *
+ * A full-batch, limited-memory quasi-Newton optimizer. While backprop runs over every training case, this optimizer
+ * only adds up the gradient of the loss and does not change any weights. At the end of the batch, it estimates the
+ * curvature of the loss from the last few changes in weights and gradients, uses that to find a search direction, and
+ * then does a backtracking line search along that direction. The learning rate is not used.
+ *
+ * All of the weights are stored in flat arrays, and the optimizer keeps a number of these arrays for its history, so
+ * this optimizer is meant for small networks such as XOR, where it converges in far fewer passes than SGD.
+ *
+ * Methods in this class:
+ * double endBatch(DoubleSupplier loss)
+ * double dot(double[] a, double[] b)
+ * void   copyWeights(double[] flat)
+ * void   setWeights(double[] start, double[] direction, double step)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class LBFGSOptimizer implements Optimizer
+{
+   private static final double ARMIJO_CONSTANT = 1e-4;  // how much the loss must drop for a step to be accepted
+   private static final int MAX_LINE_SEARCH_STEPS = 30; // how many times the step size can be halved
+
+   private final int historySize;      // the number of previous changes kept to estimate the curvature
+
+   private double[][][] weights;       // the weights of the network, changed directly during the line search
+   private int[] layerOffset;          // index in the flat arrays of the first weight in each connectivity layer
+
+   private double[] gradient;          // the gradient of the loss over the batch
+   private double[] previousGradient;  // the gradient of the loss at the start of the last line search
+   private double[] previousWeights;   // the weights at the start of the last line search
+   private double[] direction;         // the search direction
+
+   private double[][] weightChanges;   // the change in weights for each step in the history
+   private double[][] gradientChanges; // the change in gradient for each step in the history
+   private double[] rho;               // one over the dot product of the weight change and gradient change
+   private double[] alpha;             // the coefficients found in the first loop of the two-loop recursion
+   private int historyCount;           // the number of steps in the history
+   private int newest;                 // the index of the newest step in the history
+   private boolean hasPrevious;        // if there is a previous step to find the weight and gradient changes from
+
+   /**
+    * Creates an L-BFGS optimizer that keeps the given number of previous steps.
+    *
+    * @param historySize the number of previous steps to keep, usually between 5 and 20
+    */
+   public LBFGSOptimizer(int historySize)
+   {
+      this.historySize = historySize;
+   }
+
+   public void initialize(double[][][] weights)
+   {
+      this.weights = weights;
+
+      layerOffset = new int[weights.length + 1];
+      for (int n = 0; n < weights.length; n++)
+      {
+         layerOffset[n + 1] = layerOffset[n] + weights[n].length * weights[n][0].length;
+      }
+      int size = layerOffset[weights.length];
+
+      gradient = new double[size];
+      previousGradient = new double[size];
+      previousWeights = new double[size];
+      direction = new double[size];
+      weightChanges = new double[historySize][size];
+      gradientChanges = new double[historySize][size];
+      rho = new double[historySize];
+      alpha = new double[historySize];
+
+      historyCount = 0;
+      newest = -1;
+      hasPrevious = false;
+   }
+
+   public void startStep()
+   {
+   }
+
+   public void updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate)
+   {
+      // The descent direction is the negative gradient, so it is subtracted
+      int offset = layerOffset[n] + j * weightRow.length;
+      for (int i = 0; i < weightRow.length; i++)
+      {
+         gradient[offset + i] -= activation * psi[i];
+      }
+   }
+
+   public double delta(int n, int j, int i, double descent, double learningRate)
+   {
+      gradient[layerOffset[n] + j * weights[n][0].length + i] -= descent;
+      return 0.0;
+   }
+
+   public boolean isFullBatch()
+   {
+      return true;
+   }
+
+   /**
+    * Uses the gradient collected over the batch to take one L-BFGS step. The search direction is found with the
+    * two-loop recursion, then the step size is halved until the loss drops by enough. If no step size works, the
+    * weights are left where they were and the history is cleared.
+    *
+    * @param loss finds the loss of the network over the batch with the current weights
+    * @return the loss of the network after the step
+    */
+   public double endBatch(DoubleSupplier loss)
+   {
+      double startLoss = loss.getAsDouble();
+
+      // Add the change since the last step to the history, if it keeps the curvature estimate positive
+      if (hasPrevious)
+      {
+         int next = (newest + 1) % historySize;
+         double[] weightChange = weightChanges[next];
+         double[] gradientChange = gradientChanges[next];
+         copyWeights(weightChange);
+         for (int k = 0; k < gradient.length; k++)
+         {
+            weightChange[k] -= previousWeights[k];
+            gradientChange[k] = gradient[k] - previousGradient[k];
+         }
+
+         double curvature = dot(weightChange, gradientChange);
+         if (curvature > 1e-10)
+         {
+            rho[next] = 1.0 / curvature;
+            newest = next;
+            historyCount = Math.min(historyCount + 1, historySize);
+         }
+      }
+
+      // Save where the line search starts from
+      copyWeights(previousWeights);
+      System.arraycopy(gradient, 0, previousGradient, 0, gradient.length);
+      hasPrevious = true;
+
+      // First loop of the two-loop recursion, going from the newest step to the oldest
+      System.arraycopy(gradient, 0, direction, 0, gradient.length);
+      int m = newest;
+      for (int h = 0; h < historyCount; h++)
+      {
+         alpha[m] = rho[m] * dot(weightChanges[m], direction);
+         for (int k = 0; k < direction.length; k++)
+         {
+            direction[k] -= alpha[m] * gradientChanges[m][k];
+         }
+         m = (m - 1 + historySize) % historySize;
+      }
+
+      // Scale by the estimate of the inverse curvature, or by the gradient size if there is no history yet
+      double scale;
+      if (historyCount > 0)
+      {
+         scale = 1.0 / (rho[newest] * dot(gradientChanges[newest], gradientChanges[newest]));
+      }
+      else
+      {
+         scale = 1.0 / Math.max(1.0, Math.sqrt(dot(gradient, gradient)));
+      }
+      for (int k = 0; k < direction.length; k++)
+      {
+         direction[k] *= -scale;
+      }
+
+      // Second loop, going from the oldest step to the newest, with the sign flipped to go downhill
+      m = (newest - historyCount + 1 + historySize) % historySize;
+      for (int h = 0; h < historyCount; h++)
+      {
+         double beta = rho[m] * dot(gradientChanges[m], direction);
+         for (int k = 0; k < direction.length; k++)
+         {
+            direction[k] -= (alpha[m] + beta) * weightChanges[m][k];
+         }
+         m = (m + 1) % historySize;
+      }
+
+      // If the direction does not go downhill, clear the history and go along the negative gradient
+      double slope = dot(direction, gradient);
+      if (slope >= 0.0)
+      {
+         historyCount = 0;
+         scale = 1.0 / Math.max(1.0, Math.sqrt(dot(gradient, gradient)));
+         for (int k = 0; k < direction.length; k++)
+         {
+            direction[k] = -scale * gradient[k];
+         }
+         slope = dot(direction, gradient);
+      }
+
+      // Backtracking line search until the loss drops by enough
+      double curLoss = startLoss;
+      double step = 1.0;
+      boolean accepted = false;
+      for (int t = 0; t < MAX_LINE_SEARCH_STEPS && !accepted; t++)
+      {
+         setWeights(previousWeights, direction, step);
+         curLoss = loss.getAsDouble();
+         accepted = curLoss <= startLoss + ARMIJO_CONSTANT * step * slope;
+         step *= 0.5;
+      }
+
+      if (!accepted)
+      {
+         setWeights(previousWeights, direction, 0.0);
+         curLoss = startLoss;
+         historyCount = 0;
+         hasPrevious = false;
+      }
+
+      Arrays.fill(gradient, 0.0);
+      return curLoss;
+   } // public double endBatch(DoubleSupplier loss)
+
+   /**
+    * Finds the dot product of two arrays of the same length.
+    *
+    * @param a the first array
+    * @param b the second array
+    * @return the sum of the products of each pair of elements
+    */
+   private double dot(double[] a, double[] b)
+   {
+      double sum = 0.0;
+      for (int k = 0; k < a.length; k++)
+      {
+         sum += a[k] * b[k];
+      }
+      return sum;
+   }
+
+   /**
+    * Copies the weights of the network into a flat array, one layer after another and one row after another.
+    *
+    * @param flat the array to copy the weights into
+    */
+   private void copyWeights(double[] flat)
+   {
+      for (int n = 0; n < weights.length; n++)
+      {
+         int columns = weights[n][0].length;
+         for (int j = 0; j < weights[n].length; j++)
+         {
+            System.arraycopy(weights[n][j], 0, flat, layerOffset[n] + j * columns, columns);
+         }
+      }
+   }
+
+   /**
+    * Sets the weights of the network to a point along the search direction.
+    *
+    * @param start     the flat weights at the start of the line search
+    * @param direction the flat search direction
+    * @param step      how far to go along the search direction
+    */
+   private void setWeights(double[] start, double[] direction, double step)
+   {
+      for (int n = 0; n < weights.length; n++)
+      {
+         int columns = weights[n][0].length;
+         for (int j = 0; j < weights[n].length; j++)
+         {
+            int offset = layerOffset[n] + j * columns;
+            for (int i = 0; i < columns; i++)
+            {
+               weights[n][j][i] = start[offset + i] + step * direction[offset + i];
+            }
+         }
+      }
+   }
+
+} // public class LBFGSOptimizer
@@ -0,0 +1,359 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lazy Weight Store
+ *
+ * A weight store that reads the layers of a text weights file one at a time, as they are needed, instead of reading the
+ * whole file before the network can be used. Opening the store only reads the layer sizes. A background thread then
+ * reads the layers in forward order, and anything that uses a layer before the thread gets to it waits for just that
+ * layer. A network can run its first layer as soon as that layer is read, while the later layers are still loading,
+ * and code that only needs the first layers, such as feature extraction, never waits for the rest.
+ *
+ * Where each layer starts in the file is kept in an index file, the weights file with .index added to the end, which is
+ * written once every layer has been read. When a valid index is there, a layer that is needed before the background
+ * thread gets to it is read straight from its offset on the thread that needs it. Without an index, a layer can only
+ * be found by reading every layer before it, so the thread that needs it reads those layers first. The index holds the
+ * length and modification time of the weights file, so an index for an older version of the file is ignored.
+ *
+ * The weights of each layer are kept on the heap once read. They can be changed, but the network cannot be trained.
+ *
+ * Methods in this class:
+ * LazyWeightStore open(String filename)
+ * double[][]      getLayer(int n)
+ * double[][]      readLayer(int n)
+ * void            prefetch()
+ * long[]          readIndex(Path file)
+ * void            writeIndex()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class LazyWeightStore implements WeightStore
+{
+   private static final int READ_BUFFER_SIZE = 1 << 16;
+
+   private final Path file;                  // the weights file
+   private final int[] sizeOfLayers;         // number of units in each activation layer
+   private final long fileLength;            // the length of the weights file when it was opened
+   private final long fileModified;          // the modification time of the weights file when it was opened
+   private final long[] offsets;             // where the first row of each layer starts, or 0 if not known yet
+   private final boolean indexed;            // true if every offset was read from a valid index file
+   private final FutureTask<double[][]>[] layers; // reads each layer once, for whichever thread needs it first
+   private final Thread prefetcher;
+
+   /**
+    * Creates a lazy store over a weights file whose layer sizes have been read, and starts reading its layers in the
+    * background.
+    *
+    * @param file         the weights file
+    * @param sizeOfLayers the number of units in each activation layer
+    * @param firstOffset  where the first row of the first layer starts
+    */
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private LazyWeightStore(Path file, int[] sizeOfLayers, long firstOffset) throws IOException
+   {
+      this.file = file;
+      this.sizeOfLayers = sizeOfLayers;
+      fileLength = Files.size(file);
+      fileModified = Files.getLastModifiedTime(file).toMillis();
+
+      long[] index = readIndex(file.resolveSibling(file.getFileName() + ".index"));
+      indexed = index != null;
+      offsets = indexed ? index : new long[sizeOfLayers.length - 1];
+      offsets[0] = firstOffset;
+
+      layers = new FutureTask[sizeOfLayers.length - 1];
+      for (int n = 0; n < layers.length; n++)
+      {
+         int layer = n;
+         layers[n] = new FutureTask<>(() -> readLayer(layer));
+      }
+
+      prefetcher = new Thread(this::prefetch, "lazy-prefetch");
+      prefetcher.setDaemon(true);
+      prefetcher.start();
+   } // private LazyWeightStore(Path file, int[] sizeOfLayers, long firstOffset)
+
+   /**
+    * Opens a weights file in the text format, reading only the size of each layer. Files of networks with
+    * convolutional layers cannot be opened lazily.
+    *
+    * @param filename the name of the weights file
+    * @return the store, whose layers are read in the background and on first use
+    */
+   public static LazyWeightStore open(String filename) throws IOException
+   {
+      Path file = Paths.get(filename);
+      try (LineReader reader = new LineReader(file, 0))
+      {
+         String[] splitLine = reader.readLine().trim().split(" +");
+         if (splitLine[0].equals("CONV"))
+         {
+            throw new IOException(filename + " has convolutional layers, which cannot be loaded lazily");
+         }
+
+         int[] sizeOfLayers = new int[splitLine.length];
+         for (int n = 0; n < splitLine.length; n++)
+         {
+            sizeOfLayers[n] = Integer.parseInt(splitLine[n]);
+         }
+         reader.readLine();                   // the blank line before the first layer
+
+         return new LazyWeightStore(file, sizeOfLayers, reader.getPosition());
+      } // try (LineReader reader = new LineReader(file, 0))
+   } // public static LazyWeightStore open(String filename)
+
+   /**
+    * Gets the weights of a layer, reading them first if no thread has yet, or waiting for the thread that is.
+    *
+    * @param n the connectivity layer
+    * @return the weights of the layer, indexed as layer[j][i]
+    */
+   public double[][] getLayer(int n)
+   {
+      FutureTask<double[][]> layer = layers[n];
+      layer.run();                            // does nothing if the layer is already read or being read
+      try
+      {
+         return layer.get();
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("Could not read layer " + n + " of " + file, e.getCause());
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while reading layer " + n + " of " + file, e);
+      }
+   } // public double[][] getLayer(int n)
+
+   /**
+    * Reads a layer from its offset in the file. If the offset is not known yet, the layer before it is read first,
+    * which finds where this layer starts.
+    *
+    * @param n the connectivity layer
+    * @return the weights of the layer, indexed as layer[j][i]
+    */
+   private double[][] readLayer(int n) throws IOException
+   {
+      if (!indexed && n > 0)
+      {
+         getLayer(n - 1);                     // sets the offset of this layer once it is read
+      }
+
+      double[][] layer = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+      try (LineReader reader = new LineReader(file, offsets[n]))
+      {
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            StringTokenizer st = new StringTokenizer(reader.readLine());  // Each line is a different row of weights
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               layer[j][i] = Double.parseDouble(st.nextToken());          // Weights are space-separated
+            }
+         }
+         reader.readLine();                   // the blank line after the layer
+
+         if (n + 1 < offsets.length && !indexed)
+         {
+            offsets[n + 1] = reader.getPosition();
+         }
+      } // try (LineReader reader = new LineReader(file, offsets[n]))
+      return layer;
+   } // private double[][] readLayer(int n)
+
+   /**
+    * Runs on the prefetch thread: reads every layer in forward order, then writes the index if there was none.
+    */
+   private void prefetch()
+   {
+      for (FutureTask<double[][]> layer : layers)
+      {
+         layer.run();
+      }
+
+      try
+      {
+         for (FutureTask<double[][]> layer : layers)
+         {
+            layer.get();
+         }
+         if (!indexed)
+         {
+            writeIndex();
+         }
+      } // try
+      catch (ExecutionException | InterruptedException | CancellationException | IOException e)
+      {
+         // A layer could not be read, which is reported to whatever uses it, the store was closed, or the index
+         // could not be written
+      }
+   } // private void prefetch()
+
+   /**
+    * Reads the offset of every layer from an index file, if it is for the weights file as it is now.
+    *
+    * @param indexFile the index file
+    * @return the offset of each layer, or null if there is no valid index
+    */
+   private long[] readIndex(Path indexFile)
+   {
+      try (BufferedReader br = Files.newBufferedReader(indexFile))
+      {
+         StringTokenizer st = new StringTokenizer(br.readLine());
+         if (Long.parseLong(st.nextToken()) != fileLength || Long.parseLong(st.nextToken()) != fileModified)
+         {
+            return null;
+         }
+
+         long[] index = new long[sizeOfLayers.length - 1];
+         for (int n = 0; n < index.length; n++)
+         {
+            index[n] = Long.parseLong(br.readLine().trim());
+         }
+         return index;
+      } // try (BufferedReader br = Files.newBufferedReader(indexFile))
+      catch (IOException | RuntimeException e)
+      {
+         return null;
+      }
+   } // private long[] readIndex(Path indexFile)
+
+   /**
+    * Writes the offset of every layer to the index file, with the length and modification time of the weights file on
+    * the first line. The index is written to a temporary file that is then renamed, so it is never read half written.
+    */
+   private void writeIndex() throws IOException
+   {
+      Path indexFile = file.resolveSibling(file.getFileName() + ".index");
+      Path temporary = file.resolveSibling(file.getFileName() + ".index.tmp");
+      try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(temporary)))
+      {
+         pw.println(fileLength + " " + fileModified);
+         for (long offset : offsets)
+         {
+            pw.println(offset);
+         }
+      }
+      Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   public int[] getSizeOfLayers()
+   {
+      return sizeOfLayers;
+   }
+
+   public double get(int n, int j, int i)
+   {
+      return getLayer(n)[j][i];
+   }
+
+   public void set(int n, int j, int i, double value)
+   {
+      getLayer(n)[j][i] = value;
+   }
+
+   public void multiply(int n, double[] input, double[] output)
+   {
+      double[][] layer = getLayer(n);
+
+      // Goes through the weights row by row, so each row is read in order
+      Arrays.fill(output, 0, sizeOfLayers[n + 1], 0.0);
+      for (int j = 0; j < sizeOfLayers[n]; j++)
+      {
+         double activation = input[j];
+         double[] row = layer[j];
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            output[i] += row[i] * activation;
+         }
+      }
+   } // public void multiply(int n, double[] input, double[] output)
+
+   public void close()
+   {
+      for (FutureTask<double[][]> layer : layers)
+      {
+         layer.cancel(false);
+      }
+   }
+
+   /**
+    * Reads lines of ASCII text from a file, starting at any offset, and keeps track of the offset of the next line.
+    */
+   private static class LineReader implements AutoCloseable
+   {
+      private final FileChannel channel;
+      private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      private final StringBuilder line = new StringBuilder();
+      private long position;                  // the offset in the file of the next byte to be read
+
+      private LineReader(Path file, long position) throws IOException
+      {
+         channel = FileChannel.open(file, StandardOpenOption.READ);
+         channel.position(position);
+         this.position = position;
+         buffer.flip();
+      }
+
+      /**
+       * Reads the next line, without its line ending.
+       *
+       * @return the line, or null at the end of the file
+       */
+      private String readLine() throws IOException
+      {
+         line.setLength(0);
+         while (true)
+         {
+            if (!buffer.hasRemaining())
+            {
+               buffer.clear();
+               int read = channel.read(buffer);
+               buffer.flip();
+               if (read <= 0)
+               {
+                  return line.length() == 0 ? null : line.toString();
+               }
+            }
+
+            byte b = buffer.get();
+            position++;
+            if (b == '\n')
+            {
+               return line.toString();
+            }
+            if (b != '\r')
+            {
+               line.append((char) b);
+            }
+         } // while (true)
+      } // private String readLine()
+
+      private long getPosition()
+      {
+         return position;
+      }
+
+      public void close() throws IOException
+      {
+         channel.close();
+      }
+   } // private static class LineReader implements AutoCloseable
+
+} // public class LazyWeightStore
@@ -0,0 +1,566 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Low Rank Layer
+ *
+ * This class stores a connectivity layer as the product of two thinner matrices, a left factor with one row for each
+ * unit of the previous layer and a right factor with one column for each unit of the next layer, both with rank
+ * columns or rows between them. A forward pass multiplies the input by the left factor and then the result by the
+ * right factor, which takes rank * (inputs + outputs) multiply-adds instead of inputs * outputs.
+ *
+ * The factors come from a truncated singular value decomposition of the dense weights, which gives the closest matrix
+ * of that rank. It is found with a randomized range finder: the dense weights are multiplied by a few more random
+ * vectors than the rank, a couple of power iterations sharpen the range they span, and the small matrix left once the
+ * weights are projected onto that range is decomposed exactly with the Jacobi eigenvalue method. The square root of
+ * each singular value goes into each factor, so both factors are on the same scale while fine-tuning.
+ *
+ * As with a sparse layer, the layer keeps a reference to the dense weights matrix of the neural net. The dense matrix
+ * is replaced by the product of the factors when the layer is made, and every change made to the factors during
+ * fine-tuning is also made to it, so it can always be stored to a file.
+ *
+ * Methods in this class:
+ * void       multiply(double[] input, double[] output)
+ * void       backPropagate(double[] input, double[] psi, double[] omega, double learningRate)
+ * double     estimateError(int k)
+ * double     getError()
+ * int        getRank()
+ * long       size()
+ * double[][] multiplyRows(double[][] matrix, double[][] vectors)
+ * double[][] multiplyColumns(double[][] matrix, double[][] vectors)
+ * double[]   orthonormalize(double[][] rows)
+ * double[]   decompose(double[][] a, double[][] vectors)
+ * double     dot(double[] a, double[] b)
+ * void       main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class LowRankLayer
+{
+   private static final int OVERSAMPLING = 8;      // random vectors used beyond the rank, so the range is found well
+   private static final int POWER_ITERATIONS = 2;  // times the range is sharpened by multiplying by the weights again
+   private static final int MAX_SWEEPS = 64;       // most sweeps of rotations the Jacobi method makes
+
+   private final double[][] weights;    // dense weights matrix this layer was built from, indexed [from][to]
+   private final int rank;              // the number of columns in the left factor and rows in the right factor
+
+   private final double[][] left;       // the left factor, indexed left[j][k] where j is a unit of the previous layer
+   private final double[][] right;      // the right factor, indexed right[k][i] where i is a unit of the next layer
+   private final double[] hidden;       // the input times the left factor for the case being run
+
+   private final double[] singularValues; // every singular value that was found, largest first
+   private final double squaredNorm;      // the sum of the squares of the original weights
+   private final double error;            // the Frobenius norm of the original weights minus the product, relative
+
+   /**
+    * Creates a low rank layer from a dense weights matrix, replacing the weights with the closest matrix of the given
+    * rank.
+    *
+    * @param weights the dense weights matrix, indexed as weights[j][i] where j is the previous unit and i the next
+    * @param rank    the rank of the factors, at most the smaller side of the matrix
+    * @param seed    the seed for the random vectors of the range finder
+    */
+   public LowRankLayer(double[][] weights, int rank, long seed)
+   {
+      int numOfInputs = weights.length;
+      int numOfOutputs = weights[0].length;
+      if (rank < 1 || rank > Math.min(numOfInputs, numOfOutputs))
+      {
+         throw new IllegalArgumentException("A " + numOfInputs + " by " + numOfOutputs + " layer cannot have rank " +
+                                            rank);
+      }
+
+      this.weights = weights;
+      this.rank = rank;
+      hidden = new double[rank];
+      int sketch = Math.min(rank + OVERSAMPLING, Math.min(numOfInputs, numOfOutputs));
+
+      // Find an orthonormal basis for the range of the weights, stored as rows, by multiplying by random vectors
+      Random random = new Random(seed);
+      double[][] probes = new double[sketch][numOfOutputs];
+      for (double[] probe : probes)
+      {
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            probe[i] = random.nextGaussian();
+         }
+      }
+      double[][] basis = multiplyRows(weights, probes);
+      orthonormalize(basis);
+      for (int q = 0; q < POWER_ITERATIONS; q++)
+      {
+         double[][] coRange = multiplyColumns(weights, basis);
+         orthonormalize(coRange);
+         basis = multiplyRows(weights, coRange);
+         orthonormalize(basis);
+      }
+
+      // Project the weights onto the basis, and decompose the small matrix that is left exactly
+      double[][] projected = multiplyColumns(weights, basis);
+      double[][] gram = new double[sketch][sketch];
+      for (int a = 0; a < sketch; a++)
+      {
+         for (int b = a; b < sketch; b++)
+         {
+            gram[a][b] = dot(projected[a], projected[b]);
+            gram[b][a] = gram[a][b];
+         }
+      }
+      double[][] vectors = new double[sketch][sketch];
+      double[] eigenvalues = decompose(gram, vectors);
+      singularValues = new double[sketch];
+      for (int k = 0; k < sketch; k++)
+      {
+         singularValues[k] = Math.sqrt(Math.max(0.0, eigenvalues[k]));
+      }
+
+      // left = basis^T * vectors * sqrt(S), right = 1 / sqrt(S) * vectors^T * projected, for the largest values
+      left = new double[numOfInputs][rank];
+      right = new double[rank][numOfOutputs];
+      for (int k = 0; k < rank; k++)
+      {
+         double scale = Math.sqrt(singularValues[k]);
+         for (int c = 0; c < sketch; c++)
+         {
+            double component = vectors[c][k];
+            for (int j = 0; j < numOfInputs; j++)
+            {
+               left[j][k] += basis[c][j] * component * scale;
+            }
+            for (int i = 0; i < numOfOutputs; i++)
+            {
+               right[k][i] += projected[c][i] * component / (scale == 0.0 ? 1.0 : scale);
+            }
+         }
+      } // for (int k = 0; k < rank; k++)
+
+      // Replace the dense weights with the product of the factors, measuring how far they moved
+      double squared = 0.0;
+      double difference = 0.0;
+      double[] row = new double[numOfOutputs];
+      for (int j = 0; j < numOfInputs; j++)
+      {
+         Arrays.fill(row, 0.0);
+         for (int k = 0; k < rank; k++)
+         {
+            double factor = left[j][k];
+            for (int i = 0; i < numOfOutputs; i++)
+            {
+               row[i] += factor * right[k][i];
+            }
+         }
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            squared += weights[j][i] * weights[j][i];
+            difference += (weights[j][i] - row[i]) * (weights[j][i] - row[i]);
+            weights[j][i] = row[i];
+         }
+      } // for (int j = 0; j < numOfInputs; j++)
+      squaredNorm = squared;
+      error = squared == 0.0 ? 0.0 : Math.sqrt(difference / squared);
+   } // public LowRankLayer(double[][] weights, int rank, long seed)
+
+   /**
+    * Multiplies the input activations by the two factors in turn. The output array is filled with the weighted sum
+    * for each unit of the next layer, before the output function is applied.
+    *
+    * @param input  the activations of the previous layer
+    * @param output the array to put the weighted sums into
+    */
+   public void multiply(double[] input, double[] output)
+   {
+      Arrays.fill(hidden, 0.0);
+      for (int j = 0; j < left.length; j++)
+      {
+         double activation = input[j];
+         double[] row = left[j];
+         for (int k = 0; k < rank; k++)
+         {
+            hidden[k] += row[k] * activation;
+         }
+      }
+
+      Arrays.fill(output, 0, right[0].length, 0.0);
+      for (int k = 0; k < rank; k++)
+      {
+         double activation = hidden[k];
+         double[] row = right[k];
+         for (int i = 0; i < row.length; i++)
+         {
+            output[i] += row[i] * activation;
+         }
+      }
+   } // public void multiply(double[] input, double[] output)
+
+   /**
+    * Runs the backward step of backprop through this layer. With h the input times the left factor and g the right
+    * factor times psi, omega for the previous layer is the left factor times g, the right factor changes by h times
+    * psi and the left factor by the input times g, all found with the factors before they are changed. The factors
+    * are changed by plain gradient descent, since the optimizer of the network keeps its state for the dense weights.
+    * The dense weights matrix is changed by the exact difference between the old and new products.
+    *
+    * @param input        the activations of the previous layer
+    * @param psi          the psi values of the next layer
+    * @param omega        the array to put omega for the previous layer into, or null if it is not needed
+    * @param learningRate the rate at which to change the weights
+    */
+   public void backPropagate(double[] input, double[] psi, double[] omega, double learningRate)
+   {
+      int numOfInputs = left.length;
+      int numOfOutputs = right[0].length;
+
+      // h = input * left, g = right * psi
+      double[] h = new double[rank];
+      double[] g = new double[rank];
+      for (int j = 0; j < numOfInputs; j++)
+      {
+         for (int k = 0; k < rank; k++)
+         {
+            h[k] += left[j][k] * input[j];
+         }
+      }
+      for (int k = 0; k < rank; k++)
+      {
+         g[k] = dot(right[k], psi);
+      }
+
+      // omega_j = sum of (left_jk * g_k), along with v = left * h for the change to the dense weights
+      double[] v = new double[numOfInputs];
+      for (int j = 0; j < numOfInputs; j++)
+      {
+         double sum = 0.0;
+         for (int k = 0; k < rank; k++)
+         {
+            sum += left[j][k] * g[k];
+            v[j] += left[j][k] * h[k];
+         }
+         if (omega != null)
+         {
+            omega[j] = sum;
+         }
+      }
+
+      // u = g * right, for the change to the dense weights
+      double[] u = new double[numOfOutputs];
+      for (int k = 0; k < rank; k++)
+      {
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            u[i] += g[k] * right[k][i];
+         }
+      }
+
+      // (left + rate * input g)(right + rate * h psi) - left * right
+      //    = rate * v psi + rate * input u + rate^2 (g . h) input psi
+      double cross = learningRate * learningRate * dot(g, h);
+      for (int j = 0; j < numOfInputs; j++)
+      {
+         double alongPsi = learningRate * v[j] + cross * input[j];
+         double alongU = learningRate * input[j];
+         double[] row = weights[j];
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            row[i] += alongPsi * psi[i] + alongU * u[i];
+         }
+         for (int k = 0; k < rank; k++)
+         {
+            left[j][k] += alongU * g[k];
+         }
+      }
+      for (int k = 0; k < rank; k++)
+      {
+         double step = learningRate * h[k];
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            right[k][i] += step * psi[i];
+         }
+      }
+   } // public void backPropagate(double[] input, double[] psi, double[] omega, double learningRate)
+
+   /**
+    * Estimates the relative error of the closest matrix of a given rank to the original weights, from the singular
+    * values that were found. Only ranks up to the number of singular values found can be estimated.
+    *
+    * @param k the rank
+    * @return the estimated Frobenius norm of the difference divided by that of the original weights
+    */
+   public double estimateError(int k)
+   {
+      double kept = 0.0;
+      for (int c = 0; c < Math.min(k, singularValues.length); c++)
+      {
+         kept += singularValues[c] * singularValues[c];
+      }
+      return squaredNorm == 0.0 ? 0.0 : Math.sqrt(Math.max(0.0, squaredNorm - kept) / squaredNorm);
+   }
+
+   /**
+    * Gets how far the weights moved when they were replaced by the product of the factors.
+    *
+    * @return the Frobenius norm of the original weights minus the product, divided by that of the original weights
+    */
+   public double getError()
+   {
+      return error;
+   }
+
+   /**
+    * Gets the number of columns of the left factor, which is also the number of rows of the right factor.
+    *
+    * @return the rank of the factors
+    */
+   public int getRank()
+   {
+      return rank;
+   }
+
+   /**
+    * Gets the number of values stored in the two factors.
+    *
+    * @return rank * (inputs + outputs)
+    */
+   public long size()
+   {
+      return (long) rank * (left.length + right[0].length);
+   }
+
+   /**
+    * Multiplies a matrix by each of a set of vectors with one value for each of its columns.
+    *
+    * @param matrix  the matrix, indexed [row][column]
+    * @param vectors the vectors
+    * @return the product with each vector, as a row with one value for each row of the matrix
+    */
+   private static double[][] multiplyRows(double[][] matrix, double[][] vectors)
+   {
+      double[][] products = new double[vectors.length][matrix.length];
+      for (int j = 0; j < matrix.length; j++)
+      {
+         for (int c = 0; c < vectors.length; c++)
+         {
+            products[c][j] = dot(matrix[j], vectors[c]);
+         }
+      }
+      return products;
+   }
+
+   /**
+    * Multiplies each of a set of vectors with one value for each row of a matrix by the matrix.
+    *
+    * @param matrix  the matrix, indexed [row][column]
+    * @param vectors the vectors
+    * @return the product of each vector, as a row with one value for each column of the matrix
+    */
+   private static double[][] multiplyColumns(double[][] matrix, double[][] vectors)
+   {
+      double[][] products = new double[vectors.length][matrix[0].length];
+      for (int c = 0; c < vectors.length; c++)
+      {
+         double[] product = products[c];
+         for (int j = 0; j < matrix.length; j++)
+         {
+            double scale = vectors[c][j];
+            double[] row = matrix[j];
+            for (int i = 0; i < row.length; i++)
+            {
+               product[i] += scale * row[i];
+            }
+         }
+      }
+      return products;
+   } // private static double[][] multiplyColumns(double[][] matrix, double[][] vectors)
+
+   /**
+    * Makes a set of rows orthonormal in place with modified Gram-Schmidt, run twice so that rounding errors do not
+    * leave the rows leaning towards each other. A row that is left with almost nothing once the rows before it are
+    * taken out of it is set to zero.
+    *
+    * @param rows the rows
+    * @return the norm of each row before it was scaled, on the second pass
+    */
+   static double[] orthonormalize(double[][] rows)
+   {
+      double[] norms = new double[rows.length];
+      for (int pass = 0; pass < 2; pass++)
+      {
+         for (int a = 0; a < rows.length; a++)
+         {
+            for (int b = 0; b < a; b++)
+            {
+               double projection = dot(rows[a], rows[b]);
+               for (int j = 0; j < rows[a].length; j++)
+               {
+                  rows[a][j] -= projection * rows[b][j];
+               }
+            }
+
+            norms[a] = Math.sqrt(dot(rows[a], rows[a]));
+            double scale = norms[a] > 1e-12 ? 1.0 / norms[a] : 0.0;
+            for (int j = 0; j < rows[a].length; j++)
+            {
+               rows[a][j] *= scale;
+            }
+         } // for (int a = 0; a < rows.length; a++)
+      } // for (int pass = 0; pass < 2; pass++)
+      return norms;
+   } // static double[] orthonormalize(double[][] rows)
+
+   /**
+    * Finds the eigenvalues and eigenvectors of a symmetric matrix with the cyclic Jacobi method, which zeroes each
+    * value off the diagonal in turn with a rotation until they are all negligible. The matrix is overwritten.
+    *
+    * @param a       the symmetric matrix, which is left close to diagonal
+    * @param vectors where to put the eigenvectors, as columns in the same order as the eigenvalues
+    * @return the eigenvalues, largest first
+    */
+   static double[] decompose(double[][] a, double[][] vectors)
+   {
+      int size = a.length;
+      for (int p = 0; p < size; p++)
+      {
+         Arrays.fill(vectors[p], 0.0);
+         vectors[p][p] = 1.0;
+      }
+
+      for (int sweep = 0; sweep < MAX_SWEEPS; sweep++)
+      {
+         double diagonal = 0.0;
+         double offDiagonal = 0.0;
+         for (int p = 0; p < size; p++)
+         {
+            diagonal += a[p][p] * a[p][p];
+            for (int q = p + 1; q < size; q++)
+            {
+               offDiagonal += a[p][q] * a[p][q];
+            }
+         }
+         if (offDiagonal <= 1e-30 * diagonal)
+         {
+            break;
+         }
+
+         for (int p = 0; p < size; p++)
+         {
+            for (int q = p + 1; q < size; q++)
+            {
+               if (a[p][q] == 0.0)
+               {
+                  continue;
+               }
+
+               // The rotation that zeroes a[p][q], picking the smaller of the two angles that do
+               double theta = (a[q][q] - a[p][p]) / (2.0 * a[p][q]);
+               double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+               if (theta == 0.0)
+               {
+                  t = 1.0;
+               }
+               double c = 1.0 / Math.sqrt(t * t + 1.0);
+               double s = t * c;
+
+               for (int k = 0; k < size; k++)
+               {
+                  double akp = a[k][p];
+                  double akq = a[k][q];
+                  a[k][p] = c * akp - s * akq;
+                  a[k][q] = s * akp + c * akq;
+               }
+               for (int k = 0; k < size; k++)
+               {
+                  double apk = a[p][k];
+                  double aqk = a[q][k];
+                  a[p][k] = c * apk - s * aqk;
+                  a[q][k] = s * apk + c * aqk;
+               }
+               for (int k = 0; k < size; k++)
+               {
+                  double vkp = vectors[k][p];
+                  double vkq = vectors[k][q];
+                  vectors[k][p] = c * vkp - s * vkq;
+                  vectors[k][q] = s * vkp + c * vkq;
+               }
+            } // for (int q = p + 1; q < size; q++)
+         } // for (int p = 0; p < size; p++)
+      } // for (int sweep = 0; sweep < MAX_SWEEPS; sweep++)
+
+      // Sort the eigenvalues, largest first, along with their eigenvectors
+      double[] eigenvalues = new double[size];
+      for (int p = 0; p < size; p++)
+      {
+         eigenvalues[p] = a[p][p];
+      }
+      for (int p = 0; p < size; p++)
+      {
+         int largest = p;
+         for (int q = p + 1; q < size; q++)
+         {
+            if (eigenvalues[q] > eigenvalues[largest])
+            {
+               largest = q;
+            }
+         }
+         double swap = eigenvalues[p];
+         eigenvalues[p] = eigenvalues[largest];
+         eigenvalues[largest] = swap;
+         for (int k = 0; k < size; k++)
+         {
+            swap = vectors[k][p];
+            vectors[k][p] = vectors[k][largest];
+            vectors[k][largest] = swap;
+         }
+      } // for (int p = 0; p < size; p++)
+      return eigenvalues;
+   } // static double[] decompose(double[][] a, double[][] vectors)
+
+   /**
+    * Finds the dot product of two vectors of the same length.
+    *
+    * @param a the first vector
+    * @param b the second vector, at least as long as the first
+    * @return the sum of the products of each pair of values
+    */
+   private static double dot(double[] a, double[] b)
+   {
+      double sum = 0.0;
+      for (int i = 0; i < a.length; i++)
+      {
+         sum += a[i] * b[i];
+      }
+      return sum;
+   }
+
+   /**
+    * Factorizes the layers of a weights file, fine-tunes the factors if a training data file is given and
+    * FINE_TUNE_EPOCHS is set, prints the rank, error and speed of each layer, and stores the weights. The arguments
+    * are the config file, with the rank of each layer in LOW_RANK_RANKS, the weights file, the weights file to write
+    * and optionally the training data file.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      TrainingConfig config = new TrainingConfig(args[0]);
+      NeuralNet nn = new NeuralNet(args[1], false);
+      nn.setConfig(config);
+      nn.setOptimizer(config.createOptimizer());
+
+      double[][][] trainingData = null;
+      double[][][] validationData = null;
+      if (args.length > 3)
+      {
+         double[][][][] splitData = config.splitValidationData(Main.getTrainingData(args[3]));
+         trainingData = splitData[0];
+         validationData = splitData[1];
+         System.out.println("Error Before: " + Math.sqrt(nn.calculateError(trainingData)));
+      }
+
+      System.out.print(Main.factorize(nn, config, trainingData, validationData));
+      if (trainingData != null)
+      {
+         System.out.println("Error After: " + Math.sqrt(nn.calculateError(trainingData)));
+      }
+      Main.storeNetwork(nn, config, args[2]);
+      nn.close();
+   } // public static void main(String[] args)
+
+} // public class LowRankLayer
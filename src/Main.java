@@ -1,6 +1,8 @@
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Scanner;
 
@@ -22,10 +24,18 @@ import java.util.Scanner;
  * for each training case is printed. If image data was used, then the output of the network will be put into a bmp file
  * that is given by the user.
  *
+ * If a manifest file is given on the command line, the user is not asked anything, and the jobs in the manifest are run
+ * in batch mode by BatchRunner.
+ *
  * Methods in this class:
  * void         getConfig(String filename)
  * double[][][] getTrainingData(String filename
- * void         loadImages(String inFileName, String outFileName)
+ * int[]        loadImages(String inFileName, String outFileName)
+ * String       prune(NeuralNet nn, TrainingConfig config, double[][][] trainingData, double[][][] validationData)
+ * String       factorize(NeuralNet nn, TrainingConfig config, double[][][] trainingData, double[][][] validationData)
+ * void         storeNetwork(NeuralNet nn, TrainingConfig config, String weightsFile)
+ * double       warmStart(NeuralNet nn, TrainingConfig config, PrintStream output)
+ * NeuralNet    loadNetwork(TrainingConfig config, String filename)
  * void         minimizeBMP()
  * void         minimizeManual()
  * void         main(String[] args)
@@ -43,77 +53,19 @@ public class Main
    static String trainingImageRawDataFile = "trainingImageRawData.txt";
    static String outputImageFile = "images/output.bmp";
 
-   // meta values that configure the training of the neural net
-   static int[] layers;
-   static double minWeight;
-   static double maxWeight;
-   static double learningRate;
-   static double lambdaMult;
-   static int epochs;
-   static int maxIterations;
-   static double errorThreshold;
-   static int printingRate;
-   static int imHeight;
-   static int imWidth;
+   // the configuration of the neural net, read from the config file
+   static TrainingConfig config;
 
    /**
     * This function reads the configuration of the neural net from the config file. The structure
-    * of the config file is as follows:
-    *
-    * First, the size of each layer is given. Each of these sizes are given space-separated.
-    *
-    * Each of the next lines contain a variable that configures a part of the training:
-    *
-    * Min Weight - the smallest value that the weights can be randomized to
-    * Max Weight - the largest value that the weights can be randomized to
-    * Learning Rate - the initial learning rate of the network
-    * Lambda Multiplier - how much to multiply the learning rate by each epoch
-    * Epochs - the number of epochs to run
-    * Maximum Iterations - the maximum number of times to randomize the weights of the network and retrain it
-    * Error Threshold - the neural net stops when it goes below this error
-    * Printing Rate - how often to print the error during training
+    * of the config file is described in TrainingConfig.
     *
     * @param filename the file to read the configuration from
     */
    static void getConfig(String filename) throws FileNotFoundException
    {
-      Scanner sc = new Scanner(new FileReader(filename));
-
-      sc.nextLine();
-      String[] line = sc.nextLine().split(" ");
-
-      int numLayers = line.length + 2;
-      layers = new int[numLayers];
-      for (int i = 1; i < numLayers - 1; i++)
-      {
-         layers[i] = Integer.parseInt(line[i - 1]);
-      }
-
-      sc.next();
-      minWeight = sc.nextDouble();
-
-      sc.next();
-      maxWeight = sc.nextDouble();
-
-      sc.next();
-      learningRate = sc.nextDouble();
-
-      sc.next();
-      lambdaMult = sc.nextDouble();
-
-      sc.next();
-      epochs = sc.nextInt();
-
-      sc.next();
-      maxIterations = sc.nextInt();
-
-      sc.next();
-      errorThreshold = sc.nextDouble();
-      errorThreshold *= errorThreshold;
-
-      sc.next();
-      printingRate = sc.nextInt();
-   } // static void getConfig(String filename)
+      config = new TrainingConfig(filename);
+   }
 
    /**
     * This function reads the training data from a given file, then returns a matrix containing it.
@@ -142,17 +94,17 @@ public class Main
     */
    static double[][][] getTrainingData(String filename) throws FileNotFoundException
    {
+      TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+      event.begin();
       Scanner sc = new Scanner(new FileReader(filename));
+      long bytes = new File(filename).length();
+      TrainingMetrics.get().addBytesRead(bytes);
 
       // Read sizes
       int sizeOfData = sc.nextInt();
       int sizeOfInput = sc.nextInt();
       int sizeOfOutput = sc.nextInt();
 
-      // Set size of first and last layer
-      layers[0] = sizeOfInput;
-      layers[layers.length - 1] = sizeOfOutput;
-
       double[][][] trainingData = new double[sizeOfData][2][];
 
       for (int i = 0; i < sizeOfData; i++)
@@ -174,6 +126,13 @@ public class Main
          trainingData[i][1] = outputData;
       }
 
+      if (event.shouldCommit())
+      {
+         event.file = filename;
+         event.cases = sizeOfData;
+         event.bytes = bytes;
+         event.commit();
+      }
       return trainingData;
    }
 
@@ -181,15 +140,20 @@ public class Main
     * Reads the filenames within the input file, converts those bitmaps to an array and puts that data in the output
     * file. The structure of the input file is as follows: The first line has the number of training cases, the height
     * of each image and the width of each image. Then, the next lines contain the input file and the expected output
-    * file. While doing so, the function stores the height and width of the images so they can be converted back later.
+    * file. The height and width of the images are returned so the outputs can be converted back to images later.
+    * Nothing is kept between calls, so jobs running at the same time can each load their own images.
     *
     * @param inFileName  the name of the input file containing the bitmaps
     * @param outFileName the name of the output file to print the training data
+    * @return the height and width of the input images
     */
-   static void loadImages(String inFileName, String outFileName) throws FileNotFoundException
+   static int[] loadImages(String inFileName, String outFileName) throws FileNotFoundException
    {
+      TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+      event.begin();
       Scanner sc = new Scanner(new FileReader(inFileName));
       PrintWriter pw = new PrintWriter(outFileName);
+      long bytes = new File(inFileName).length();
 
       // Read sizes
       int sizeOfData = sc.nextInt();
@@ -197,15 +161,18 @@ public class Main
       int sizeOfOutput = sc.nextInt();
       pw.println(sizeOfData + " " + sizeOfInput + " " + sizeOfOutput);
 
+      int[] size = new int[2];
       for (int i = 0; i < sizeOfData; i++)
       {
          // Read image from given file
-         ImageWrapper inImage = new ImageWrapper(sc.next());
+         String inImageFile = sc.next();
+         ImageWrapper inImage = new ImageWrapper(inImageFile);
+         bytes += new File(inImageFile).length();
          inImage.toGrayScale();
 
          // Store the height and width of the image
-         imHeight = inImage.getHeight();
-         imWidth = inImage.getWidth();
+         size[0] = inImage.getHeight();
+         size[1] = inImage.getWidth();
 
          // Print the image data to the output file
          double[] inArray = inImage.toDoubleArray();
@@ -216,7 +183,9 @@ public class Main
          pw.println();
 
          // Read output image and print data to the output file
-         ImageWrapper outImage = new ImageWrapper(sc.next());
+         String outImageFile = sc.next();
+         ImageWrapper outImage = new ImageWrapper(outImageFile);
+         bytes += new File(outImageFile).length();
          outImage.toGrayScale();
          double[] outArray = outImage.toDoubleArray();
          for (int j = 0; j < outArray.length; j++)
@@ -227,7 +196,207 @@ public class Main
       } // for (int i = 0; i < sizeOfData; i++)
 
       pw.close();
-   } // static void loadImages(String inFileName, String outFileName)
+
+      TrainingMetrics.get().addBytesRead(bytes);
+      if (event.shouldCommit())
+      {
+         event.file = inFileName;
+         event.cases = sizeOfData;
+         event.bytes = bytes;
+         event.commit();
+      }
+      return size;
+   } // static int[] loadImages(String inFileName, String outFileName)
+
+   /**
+    * Prunes the network if pruning is turned on in the configuration, then fine-tunes the remaining weights for the
+    * configured number of fine-tuning epochs. Weights below the prune threshold are pruned first, and then only the
+    * largest weights in each layer are kept if a top k is given. The pruned weights stay at zero while fine-tuning.
+    *
+    * @param nn             the trained neural network to prune
+    * @param config         the configuration with the pruning and fine-tuning variables
+    * @param trainingData   the training data used to fine-tune the network
+    * @param validationData the validation data used while fine-tuning, or null if there is none
+    * @return the density of each layer and the diagnostic information from fine-tuning, or an empty string if pruning
+    *         is turned off
+    */
+   static String prune(NeuralNet nn, TrainingConfig config, double[][][] trainingData, double[][][] validationData)
+   {
+      if (config.pruneThreshold <= 0.0 && config.pruneTopK <= 0)
+      {
+         return "";
+      }
+
+      String diagnosticInformation = "";
+      if (config.pruneThreshold > 0.0)
+      {
+         diagnosticInformation = nn.pruneByThreshold(config.pruneThreshold);
+      }
+      if (config.pruneTopK > 0)
+      {
+         diagnosticInformation += nn.pruneTopK(config.pruneTopK);
+      }
+
+      if (config.fineTuneEpochs > 0)
+      {
+         diagnosticInformation += "Fine Tuning:\n" + nn.train(trainingData, validationData, config.learningRate,
+                                                              config.lambdaMult, config.fineTuneEpochs);
+      }
+
+      return diagnosticInformation;
+   } // static String prune(NeuralNet nn, TrainingConfig config, double[][][] trainingData, ...)
+
+   /**
+    * Factorizes the layers given a rank in the configuration into two thinner matrices, then fine-tunes the factors
+    * for the configured number of fine-tuning epochs if there is training data.
+    *
+    * @param nn             the trained neural network to factorize
+    * @param config         the configuration with the rank of each layer and the fine-tuning variables
+    * @param trainingData   the training data used to fine-tune the network, or null to not fine-tune it
+    * @param validationData the validation data used while fine-tuning, or null if there is none
+    * @return the rank, error, size and speed of each layer and the diagnostic information from fine-tuning, or an empty
+    *         string if no layer is factorized
+    */
+   static String factorize(NeuralNet nn, TrainingConfig config, double[][][] trainingData,
+                           double[][][] validationData)
+   {
+      int[] ranks = config.getLowRankRanks();
+      if (ranks == null)
+      {
+         return "";
+      }
+
+      String diagnosticInformation = nn.factorize(ranks);
+      if (config.fineTuneEpochs > 0 && trainingData != null)
+      {
+         diagnosticInformation += "Fine Tuning:\n" + nn.train(trainingData, validationData, config.learningRate,
+                                                              config.lambdaMult, config.fineTuneEpochs);
+      }
+
+      return diagnosticInformation;
+   } // static String factorize(NeuralNet nn, TrainingConfig config, double[][][] trainingData, ...)
+
+   /**
+    * Stores the weights of the network in the weights file. If a mapped weights file is given in the configuration,
+    * the weights are also published to it, replacing the old version in one atomic step so that processes mapping it
+    * can switch to the new version. If an archive directory is given, a compact checkpoint of the weights is also
+    * added to it. The learning rate that training stopped at is stored next to the weights, in the weights file with
+    * .state added to the end, so that a warm start can carry on at the same rate.
+    *
+    * @param nn          the network to store
+    * @param config      the configuration with the mapped weights file and the archive directory
+    * @param weightsFile the name of the file to store the weights in
+    */
+   static void storeNetwork(NeuralNet nn, TrainingConfig config, String weightsFile) throws IOException
+   {
+      nn.storeWeights(weightsFile);
+      if (config.mappedWeightsFile != null)
+      {
+         if (nn.getConvStack() != null)
+         {
+            throw new IllegalStateException("A mapped weights file cannot hold convolutional layers");
+         }
+         MappedWeightStore.write(nn.getWeightStore(), config.mappedWeightsFile);
+      }
+      if (config.archiveDirectory != null)
+      {
+         if (nn.getConvStack() != null)
+         {
+            throw new IllegalStateException("A checkpoint archive cannot hold convolutional layers");
+         }
+         CheckpointArchive.get(config).append(nn.getWeightStore());
+      }
+      if (!Double.isNaN(nn.getFinalLearningRate()))
+      {
+         PrintWriter pw = new PrintWriter(weightsFile + ".state");
+         pw.println("LEARNING_RATE " + nn.getFinalLearningRate());
+         pw.close();
+      }
+   } // static void storeNetwork(NeuralNet nn, TrainingConfig config, String weightsFile)
+
+   /**
+    * Starts the network from the weights in the warm start file, if one is given in the configuration, instead of
+    * from random weights. The weights file is checked against the configured layer sizes, and hidden layers that have
+    * grown or shrunk keep only the weights both networks have. If the learning rate the earlier run stopped at was
+    * stored with it, training carries on at that rate.
+    *
+    * @param nn     the network to start, with the configured layer sizes
+    * @param config the configuration with the warm start file
+    * @param output where to print what was loaded
+    * @return the learning rate to start training at: the stored learning rate if there is one, or else the configured
+    *         learning rate
+    */
+   static double warmStart(NeuralNet nn, TrainingConfig config, PrintStream output) throws IOException
+   {
+      if (config.warmStartFile == null)
+      {
+         return config.learningRate;
+      }
+
+      NeuralNet source = new NeuralNet(config.warmStartFile, false);
+      String changes = nn.copyWeightsFrom(source);
+      source.close();
+      output.print("Warm Start: " + config.warmStartFile + "\n" + changes);
+
+      double learningRate = config.learningRate;
+      File state = new File(config.warmStartFile + ".state");
+      if (state.exists())
+      {
+         Scanner sc = new Scanner(new FileReader(state));
+         while (sc.hasNext())
+         {
+            String name = sc.next();
+            double value = sc.nextDouble();
+            if (name.equals("LEARNING_RATE") && value > 0.0)
+            {
+               learningRate = value;
+            }
+         }
+         sc.close();
+         output.println("Restored Learning Rate: " + learningRate);
+      } // if (state.exists())
+
+      return learningRate;
+   } // static double warmStart(NeuralNet nn, TrainingConfig config, PrintStream output)
+
+   /**
+    * Loads a network to run, keeping its weights where the configuration says. With MAPPED storage, the weights are
+    * mapped from the mapped weights file, which has to be given, instead of read from the given text file. With LAZY
+    * storage, the network is returned as soon as the layer sizes are read, and each layer is read in the background or
+    * when it is first used.
+    * Large layers are split between the configured number of intra-op threads.
+    *
+    * @param config   the configuration with the weight storage, mapped weights file and intra-op threads
+    * @param filename the name of the weights file
+    * @return the loaded network
+    */
+   static NeuralNet loadNetwork(TrainingConfig config, String filename) throws IOException
+   {
+      NeuralNet nn;
+      switch (config.weightStorage)
+      {
+         case "HEAP":
+            nn = new NeuralNet(filename, false);
+            break;
+         case "OFF_HEAP":
+            nn = new NeuralNet(filename, true);
+            break;
+         case "MAPPED":
+            if (config.mappedWeightsFile == null)
+            {
+               throw new IllegalArgumentException("MAPPED weight storage needs MAPPED_WEIGHTS_FILE to be set");
+            }
+            nn = new NeuralNet(MappedWeightStore.open(config.mappedWeightsFile));
+            break;
+         case "LAZY":
+            nn = new NeuralNet(LazyWeightStore.open(filename));
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown weight storage: " + config.weightStorage);
+      }
+      nn.setParallelism(config.intraOpThreads);
+      return nn;
+   }
 
    /**
     * This function will create and train a neural network with given image training data. It will first get the
@@ -241,27 +410,62 @@ public class Main
       getConfig(configFile);
 
       // Read images and load them into the training file
-      loadImages(trainingImageFile, trainingImageRawDataFile);
+      int[] imageSize = loadImages(trainingImageFile, trainingImageRawDataFile);
+      int imHeight = imageSize[0];
+      int imWidth = imageSize[1];
 
       // Load the training data from the training file
       System.out.println("Getting Training Data...");
-      double[][][] trainingData = getTrainingData(trainingImageRawDataFile);
+      double[][][] allData = getTrainingData(trainingImageRawDataFile);
+      double[][][][] splitData = config.splitValidationData(allData);
+      double[][][] trainingData = splitData[0];
+      double[][][] validationData = splitData[1];
 
       // Create a neural net with the given layer sizes
-      System.out.println("Creating Network...");
-      NeuralNet nn = new NeuralNet(layers);
+      System.out.println("Creating Network... (Seed: " + config.seed + ")");
+      NeuralNet nn = new NeuralNet(config.getLayerSizes(allData), config);
+      if (nn.getConvStack() != null)
+      {
+         System.out.print(nn.getSizeReport());
+      }
+      double learningRate = warmStart(nn, config, System.out);
+
+      // Make variants of the images to train on while training, if augmentation is turned on
+      Augmenter augmenter = null;
+      if (config.augmentThreads > 0)
+      {
+         augmenter = new Augmenter(trainingData, imHeight, imWidth, config);
+         nn.setAugmenter(augmenter);
+      }
 
       // Train with the given configuration
       System.out.println("Training...");
-      String diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs);
+      String diagnosticInformation = nn.train(trainingData, validationData, learningRate,
+                                              config.lambdaMult, config.epochs);
+      if (augmenter != null)
+      {
+         augmenter.close();
+         nn.setAugmenter(null);
+         diagnosticInformation += augmenter.getReport();
+      }
+      diagnosticInformation += prune(nn, config, trainingData, validationData);
+      diagnosticInformation += factorize(nn, config, trainingData, validationData);
 
-      nn.storeWeights(weightsFile);
+      storeNetwork(nn, config, weightsFile);
       System.out.println(diagnosticInformation);
 
       // Create bmp file from output of neural net
       double[] image = nn.propagate(trainingData[0][0]);
       ImageWrapper im = new ImageWrapper(image, imHeight, imWidth);
       im.toBMP(outputImageFile);
+
+      // Write the output of every training image, if a directory for them is given
+      if (config.reconstructionDirectory != null)
+      {
+         ReconstructionExporter exporter = new ReconstructionExporter(nn, imHeight, imWidth, config.intraOpThreads);
+         System.out.print(exporter.export(trainingImageRawDataFile, config.reconstructionDirectory,
+                                          config.contactSheetColumns));
+      }
    }
 
    /**
@@ -278,22 +482,37 @@ public class Main
 
       // Load the training data from the training file
       System.out.println("Getting Training Data...");
-      double[][][] trainingData = getTrainingData(trainingFile);
+      double[][][] allData = getTrainingData(trainingFile);
+      double[][][][] splitData = config.splitValidationData(allData);
+      double[][][] trainingData = splitData[0];
+      double[][][] validationData = splitData[1];
 
       // Create a neural net with the given layer sizes
-      System.out.println("Creating Network...");
-      NeuralNet nn = new NeuralNet(layers);
+      System.out.println("Creating Network... (Seed: " + config.seed + ")");
+      NeuralNet nn = new NeuralNet(config.getLayerSizes(allData), config);
+      if (nn.getConvStack() != null)
+      {
+         System.out.print(nn.getSizeReport());
+      }
+      double learningRate = warmStart(nn, config, System.out);
 
       System.out.println("Training...");
       double minError = Double.MAX_VALUE;
       int e = 1;
-      while (e <= maxIterations && minError > errorThreshold * errorThreshold)
+      while (e <= config.maxIterations && minError > config.errorThreshold * config.errorThreshold)
       {
-         // Randomize the weights
-         nn.generateWeights();
+         // Randomize the weights, except on the first iteration of a warm start
+         if (e > 1 || config.warmStartFile == null)
+         {
+            nn.generateWeights();
+            learningRate = config.learningRate;
+         }
 
          // Train with the given configuration
-         String diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs);
+         String diagnosticInformation = nn.train(trainingData, validationData, learningRate,
+                                                 config.lambdaMult, config.epochs);
+         diagnosticInformation += prune(nn, config, trainingData, validationData);
+         diagnosticInformation += factorize(nn, config, trainingData, validationData);
 
          // Calculate the error
          double curError = nn.calculateError(trainingData);
@@ -302,7 +521,7 @@ public class Main
          if (curError < minError)
          {
             minError = curError;
-            nn.storeWeights(weightsFile);
+            storeNetwork(nn, config, weightsFile);
             System.out.println("Iteration " + e);
 
             System.out.println(diagnosticInformation);
@@ -341,16 +560,25 @@ public class Main
          } // if (curError < minError)
 
          e++;
-      } // while (e <= maxIterations && minError > errorThreshold * errorThreshold)
+      } // while (e <= config.maxIterations && minError > config.errorThreshold * config.errorThreshold)
    } // static void minimizeBoolean()
 
    /**
     * First, it asks the user whether they will be using images or training with manually inputted data. It then asks
     * if the user would like to change any of the default files and asks the user for each file name in turn. Finally,
     * it calls the appropriate function depending the user's answer to the first question.
+    *
+    * If a manifest file is given as an argument, nothing is asked, and every job in the manifest is run in batch mode
+    * instead, with the report written to the second argument if there is one.
     */
    public static void main(String[] args) throws IOException
    {
+      if (args.length > 0)
+      {
+         BatchRunner.main(args);
+         return;
+      }
+
       // If the user wants to override the file paths, they can enter in the config, training data, and weights files manually
       Scanner sc = new Scanner(System.in);
 
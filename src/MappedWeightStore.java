@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Mapped Weight Store
+ *
+ * A read-only weight store whose weights are served straight from a memory-mapped file. The operating system keeps a
+ * single copy of the file in its page cache, so every process on a machine that maps the same file shares the same
+ * physical memory, and none of the weights are on the Java heap. Loading the model is just mapping the file, and the
+ * pages are read from disk the first time they are used.
+ *
+ * The mapped file is a binary file with the following structure, with every value little-endian:
+ *
+ * magic number (int), number of activation layers (int), size of each activation layer (int each)
+ * padding up to the next multiple of 64 bytes
+ * for each connectivity layer: the weights transposed, as weights[i][j] (double each), then padding up to the next
+ * multiple of 64 bytes
+ *
+ * New versions of a model are written to a temporary file and then renamed over the old file in one atomic step.
+ * Processes that already mapped the old file keep using it until they map the file again, so they never see a
+ * partly written model.
+ *
+ * Methods in this class:
+ * MappedWeightStore open(String filename)
+ * void              write(WeightStore source, String filename)
+ * long              align(long position)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class MappedWeightStore extends OffHeapWeightStore
+{
+   private static final int MAGIC = 0x4E4E5731;   // "NNW1", marks the start of a mapped weights file
+   private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+   /**
+    * Creates a mapped weight store over layers that have already been mapped.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @param layers       the mapped weights of each layer, stored transposed
+    */
+   private MappedWeightStore(int[] sizeOfLayers, DoubleBuffer[] layers)
+   {
+      super(sizeOfLayers, layers);
+   }
+
+   /**
+    * Maps a weights file in the mapped format into memory as read-only.
+    *
+    * @param filename the name of the mapped weights file
+    * @return a weight store that reads the weights straight from the mapped file
+    */
+   public static MappedWeightStore open(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         // Read the header to find the size of each layer
+         ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 16));
+         header.order(ByteOrder.LITTLE_ENDIAN);
+         if (header.getInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not a mapped weights file");
+         }
+
+         int[] sizeOfLayers = new int[header.getInt()];
+         for (int n = 0; n < sizeOfLayers.length; n++)
+         {
+            sizeOfLayers[n] = header.getInt();
+         }
+
+         // Map each layer on its own, since a single mapping cannot be larger than 2 GB
+         DoubleBuffer[] layers = new DoubleBuffer[sizeOfLayers.length - 1];
+         long position = align(header.position());
+         for (int n = 0; n < layers.length; n++)
+         {
+            long bytes = (long) sizeOfLayers[n] * sizeOfLayers[n + 1] * Double.BYTES;
+            layers[n] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                               .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            position = align(position + bytes);
+         }
+
+         return new MappedWeightStore(sizeOfLayers, layers);
+      } // try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+   } // public static MappedWeightStore open(String filename)
+
+   /**
+    * Writes the weights of any weight store to a file in the mapped format. The weights are first written to a
+    * temporary file next to the given file, which is then renamed over the given file in one atomic step.
+    *
+    * @param source   the weight store to write
+    * @param filename the name of the mapped weights file
+    */
+   public static void write(WeightStore source, String filename) throws IOException
+   {
+      TrainingEvents.Checkpoint event = new TrainingEvents.Checkpoint();
+      event.begin();
+
+      Path target = Paths.get(filename).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      int[] sizeOfLayers = source.getSizeOfLayers();
+      long count = 0;
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+         // Write the header
+         buffer.putInt(MAGIC);
+         buffer.putInt(sizeOfLayers.length);
+         for (int size : sizeOfLayers)
+         {
+            buffer.putInt(size);
+         }
+         long position = buffer.position();
+
+         // Write each layer transposed, starting each one on an aligned position
+         for (int n = 0; n < sizeOfLayers.length - 1; n++)
+         {
+            if (buffer.remaining() < ALIGNMENT)
+            {
+               buffer.flip();
+               channel.write(buffer);
+               buffer.compact();
+            }
+            for (long p = position; p < align(position); p++)
+            {
+               buffer.put((byte) 0);
+            }
+            position = align(position);
+
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               for (int j = 0; j < sizeOfLayers[n]; j++)
+               {
+                  if (buffer.remaining() < Double.BYTES)
+                  {
+                     buffer.flip();
+                     channel.write(buffer);
+                     buffer.compact();
+                  }
+                  buffer.putDouble(source.get(n, j, i));
+               }
+            }
+            position += (long) sizeOfLayers[n] * sizeOfLayers[n + 1] * Double.BYTES;
+            count += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+         } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+
+         buffer.flip();
+         while (buffer.hasRemaining())
+         {
+            channel.write(buffer);
+         }
+         channel.force(true);
+      } // try (FileChannel channel = ...)
+
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      if (event.shouldCommit())
+      {
+         event.kind = "mapped";
+         event.file = filename;
+         event.weights = count;
+         event.commit();
+      }
+   } // public static void write(WeightStore source, String filename)
+
+   /**
+    * Rounds a position in the file up to the next multiple of the alignment.
+    *
+    * @param position the position in bytes
+    * @return the first aligned position at or after the given position
+    */
+   private static long align(long position)
+   {
+      return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+   }
+
+   /**
+    * Mapped weights are read-only, so they cannot be set.
+    */
+   public void set(int n, int j, int i, double value)
+   {
+      throw new UnsupportedOperationException("Mapped weights are read-only");
+   }
+
+} // public class MappedWeightStore
@@ -0,0 +1,378 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metrics Registry
+ *
+ * Holds named counters, gauges and histograms that can be changed from any thread without locks, and writes all of
+ * them out in the Prometheus text format. Each metric is found by its name and its labels, such as layer="0", and
+ * metrics with the same name but different labels are written together under one HELP and TYPE line.
+ *
+ * Counters and histograms record whole numbers, such as nanoseconds or bytes, and each has a scale that they are
+ * multiplied by when they are written out, so that a counter of nanoseconds can be written out in seconds.
+ *
+ * Histograms use log-linear buckets in the style of HdrHistogram: every power of two is split into 8 buckets of the
+ * same width, so any value is recorded to within 12.5% with a fixed number of buckets and a single atomic add.
+ *
+ * Methods in this class:
+ * Counter   counter(String name, String labels, String help, double scale)
+ * Gauge     gauge(String name, String labels, String help)
+ * Histogram histogram(String name, String labels, String help, double scale)
+ * String    scrape()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class MetricsRegistry
+{
+   /**
+    * A count that only goes up.
+    */
+   public static class Counter
+   {
+      private final LongAdder count = new LongAdder();
+      private final double scale;    // what the count is multiplied by when it is written out
+
+      private Counter(double scale)
+      {
+         this.scale = scale;
+      }
+
+      /**
+       * Adds to the count.
+       *
+       * @param amount the amount to add, which should not be negative
+       */
+      public void add(long amount)
+      {
+         count.add(amount);
+      }
+
+      private double get()
+      {
+         return count.sum() * scale;
+      }
+   } // public static class Counter
+
+   /**
+    * A value that can be set to anything.
+    */
+   public static class Gauge
+   {
+      private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+      private Gauge()
+      {
+      }
+
+      /**
+       * Sets the value of the gauge.
+       *
+       * @param value the new value
+       */
+      public void set(double value)
+      {
+         bits.set(Double.doubleToRawLongBits(value));
+      }
+
+      private double get()
+      {
+         return Double.longBitsToDouble(bits.get());
+      }
+   } // public static class Gauge
+
+   /**
+    * A distribution of values, recorded into log-linear buckets.
+    */
+   public static class Histogram
+   {
+      private static final int SUB_BUCKET_BITS = 3;                   // each power of two is split into 2^3 buckets
+      private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+      private static final int NUM_OF_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+      private static final int MIN_EXPONENT = 10;    // the smallest power of two written out as a bucket boundary
+      private static final int MAX_EXPONENT = 40;    // the largest power of two written out as a bucket boundary
+      private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+      private final AtomicLongArray buckets = new AtomicLongArray(NUM_OF_BUCKETS);
+      private final LongAdder sum = new LongAdder();
+      private final double scale;    // what each value is multiplied by when it is written out
+
+      private Histogram(double scale)
+      {
+         this.scale = scale;
+      }
+
+      /**
+       * Records a value.
+       *
+       * @param value the value to record, which should not be negative
+       */
+      public void record(long value)
+      {
+         value = Math.max(value, 0);
+         buckets.incrementAndGet(bucketOf(value));
+         sum.add(value);
+      }
+
+      /**
+       * Finds the bucket a value goes in. Values below the number of sub-buckets each get their own bucket, and every
+       * larger power of two is split into the same number of buckets.
+       *
+       * @param value the value to find the bucket of
+       * @return the index of the bucket
+       */
+      private static int bucketOf(long value)
+      {
+         if (value < SUB_BUCKETS)
+         {
+            return (int) value;
+         }
+         int exponent = 63 - Long.numberOfLeadingZeros(value);
+         int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+         return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+      }
+
+      /**
+       * Finds the smallest value that goes in a bucket.
+       *
+       * @param bucket the index of the bucket
+       * @return the smallest value in the bucket
+       */
+      private static long lowestValueOf(int bucket)
+      {
+         if (bucket < SUB_BUCKETS)
+         {
+            return bucket;
+         }
+         int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+         long subBucket = bucket % SUB_BUCKETS;
+         return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+      }
+
+      /**
+       * Copies the count of every bucket, so the counts do not change while they are written out.
+       *
+       * @return the count of each bucket
+       */
+      private long[] snapshot()
+      {
+         long[] counts = new long[NUM_OF_BUCKETS];
+         for (int b = 0; b < NUM_OF_BUCKETS; b++)
+         {
+            counts[b] = buckets.get(b);
+         }
+         return counts;
+      }
+
+      /**
+       * Writes the histogram in the Prometheus text format, with a bucket boundary at every power of two between the
+       * smallest and largest boundary, followed by the sum and count. The 50th, 90th and 99th percentiles are written
+       * as a separate gauge, since they are found from the finer buckets.
+       *
+       * @param out    where to write the histogram
+       * @param name   the name of the histogram
+       * @param labels the labels of the histogram, or an empty string
+       */
+      private void write(StringBuilder out, String name, String labels)
+      {
+         long[] counts = snapshot();
+         long total = Arrays.stream(counts).sum();
+
+         String prefix = labels.isEmpty() ? "" : labels + ",";
+         long cumulative = 0;
+         int b = 0;
+         for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++)
+         {
+            while (b < NUM_OF_BUCKETS && lowestValueOf(b) < 1L << e)
+            {
+               cumulative += counts[b];
+               b++;
+            }
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append((1L << e) * scale)
+               .append("\"} ").append(cumulative).append('\n');
+         }
+         out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(total).append('\n');
+         out.append(name).append("_sum").append(braces(labels)).append(' ').append(sum.sum() * scale).append('\n');
+         out.append(name).append("_count").append(braces(labels)).append(' ').append(total).append('\n');
+      } // private void write(StringBuilder out, String name, String labels)
+
+      /**
+       * Writes the 50th, 90th and 99th percentiles of the histogram as a gauge, each taken as the middle of the bucket
+       * it falls in.
+       *
+       * @param out    where to write the percentiles
+       * @param name   the name of the gauge
+       * @param labels the labels of the histogram, or an empty string
+       */
+      private void writeQuantiles(StringBuilder out, String name, String labels)
+      {
+         long[] counts = snapshot();
+         long total = Arrays.stream(counts).sum();
+
+         String prefix = labels.isEmpty() ? "" : labels + ",";
+         for (double q : QUANTILES)
+         {
+            double value = Double.NaN;
+            long rank = (long) Math.ceil(q * total);
+            long cumulative = 0;
+            for (int b = 0; b < NUM_OF_BUCKETS && total > 0; b++)
+            {
+               cumulative += counts[b];
+               if (cumulative >= rank)
+               {
+                  long low = lowestValueOf(b);
+                  long high = b + 1 < NUM_OF_BUCKETS ? lowestValueOf(b + 1) : low;
+                  value = (low + high) / 2.0 * scale;
+                  break;
+               }
+            }
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(q).append("\"} ").append(value)
+               .append('\n');
+         }
+      } // private void writeQuantiles(StringBuilder out, String name, String labels)
+   } // public static class Histogram
+
+   /**
+    * Every metric with the same name, along with their type and description.
+    */
+   private static class Family
+   {
+      private final String type;
+      private final String help;
+      private final Map<String, Object> metrics = new ConcurrentSkipListMap<>(); // each metric, by its labels
+
+      private Family(String type, String help)
+      {
+         this.type = type;
+         this.help = help;
+      }
+   }
+
+   private final Map<String, Family> families = new ConcurrentSkipListMap<>();   // each family, by name
+
+   /**
+    * Gets the counter with the given name and labels, creating it if it does not exist yet.
+    *
+    * @param name   the name of the counter, which should end in _total
+    * @param labels the labels of the counter, such as layer="0", or an empty string
+    * @param help   a description of the counter
+    * @param scale  what the count is multiplied by when it is written out
+    * @return the counter
+    */
+   public Counter counter(String name, String labels, String help, double scale)
+   {
+      return (Counter) get(name, labels, "counter", help, () -> new Counter(scale));
+   }
+
+   /**
+    * Gets the gauge with the given name and labels, creating it if it does not exist yet.
+    *
+    * @param name   the name of the gauge
+    * @param labels the labels of the gauge, or an empty string
+    * @param help   a description of the gauge
+    * @return the gauge
+    */
+   public Gauge gauge(String name, String labels, String help)
+   {
+      return (Gauge) get(name, labels, "gauge", help, Gauge::new);
+   }
+
+   /**
+    * Gets the histogram with the given name and labels, creating it if it does not exist yet.
+    *
+    * @param name   the name of the histogram
+    * @param labels the labels of the histogram, or an empty string
+    * @param help   a description of the histogram
+    * @param scale  what each value is multiplied by when it is written out
+    * @return the histogram
+    */
+   public Histogram histogram(String name, String labels, String help, double scale)
+   {
+      return (Histogram) get(name, labels, "histogram", help, () -> new Histogram(scale));
+   }
+
+   /**
+    * Gets the metric with the given name and labels, creating it and its family if they do not exist yet.
+    *
+    * @param name    the name of the metric
+    * @param labels  the labels of the metric, or an empty string
+    * @param type    the Prometheus type of the metric
+    * @param help    a description of the metric
+    * @param creator creates the metric if it does not exist yet
+    * @return the metric
+    */
+   private Object get(String name, String labels, String type, String help, Supplier<Object> creator)
+   {
+      Family family = families.computeIfAbsent(name, k -> new Family(type, help));
+      if (!family.type.equals(type))
+      {
+         throw new IllegalArgumentException(name + " is already a " + family.type);
+      }
+      return family.metrics.computeIfAbsent(labels, k -> creator.get());
+   }
+
+   /**
+    * Writes every metric in the Prometheus text format, in order of name and then labels.
+    *
+    * @return the text of every metric
+    */
+   public String scrape()
+   {
+      StringBuilder out = new StringBuilder();
+      for (Map.Entry<String, Family> entry : families.entrySet())
+      {
+         String name = entry.getKey();
+         Family family = entry.getValue();
+         out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+         out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+         for (Map.Entry<String, Object> metric : family.metrics.entrySet())
+         {
+            String labels = metric.getKey();
+            Object value = metric.getValue();
+            if (value instanceof Counter)
+            {
+               out.append(name).append(braces(labels)).append(' ').append(((Counter) value).get()).append('\n');
+            }
+            else if (value instanceof Gauge)
+            {
+               out.append(name).append(braces(labels)).append(' ').append(((Gauge) value).get()).append('\n');
+            }
+            else
+            {
+               ((Histogram) value).write(out, name, labels);
+            }
+         }
+
+         // Histograms also get a gauge with their percentiles
+         if (family.type.equals("histogram"))
+         {
+            String quantileName = name + "_quantile";
+            out.append("# HELP ").append(quantileName).append(" Percentiles of ").append(name).append('\n');
+            out.append("# TYPE ").append(quantileName).append(" gauge\n");
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet())
+            {
+               ((Histogram) metric.getValue()).writeQuantiles(out, quantileName, metric.getKey());
+            }
+         }
+      } // for (Map.Entry<String, Family> entry : families.entrySet())
+      return out.toString();
+   } // public String scrape()
+
+   /**
+    * Puts labels in braces, or gives an empty string if there are no labels.
+    *
+    * @param labels the labels, or an empty string
+    * @return the labels in braces
+    */
+   private static String braces(String labels)
+   {
+      return labels.isEmpty() ? "" : "{" + labels + "}";
+   }
+
+} // public class MetricsRegistry
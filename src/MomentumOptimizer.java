@@ -0,0 +1,57 @@
+/**
+ * Momentum Optimizer
+ *
+ * Stochastic gradient descent with momentum. Each weight has a velocity, which is the previous velocity times the
+ * momentum coefficient plus the learning rate times the descent direction. The weight is then changed by its velocity.
+ * This keeps the weights moving in directions that stay consistent across training cases, so fewer epochs are needed.
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class MomentumOptimizer implements Optimizer
+{
+   private final double momentum;    // how much of the previous velocity is kept each step
+
+   private double[][][] velocity;    // the velocity of each weight, indexed the same way as the weights
+
+   /**
+    * Creates a momentum optimizer with the given momentum coefficient.
+    *
+    * @param momentum how much of the previous velocity is kept each step, usually 0.9
+    */
+   public MomentumOptimizer(double momentum)
+   {
+      this.momentum = momentum;
+   }
+
+   public void initialize(double[][][] weights)
+   {
+      velocity = new double[weights.length][][];
+      for (int n = 0; n < weights.length; n++)
+      {
+         velocity[n] = new double[weights[n].length][weights[n][0].length];
+      }
+   }
+
+   public void startStep()
+   {
+   }
+
+   public void updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate)
+   {
+      double[] velocityRow = velocity[n][j];
+      double scaledActivation = learningRate * activation;
+      for (int i = 0; i < weightRow.length; i++)
+      {
+         velocityRow[i] = momentum * velocityRow[i] + scaledActivation * psi[i];
+         weightRow[i] += velocityRow[i];
+      }
+   }
+
+   public double delta(int n, int j, int i, double descent, double learningRate)
+   {
+      velocity[n][j][i] = momentum * velocity[n][j][i] + learningRate * descent;
+      return velocity[n][j][i];
+   }
+
+} // public class MomentumOptimizer
@@ -1,4 +1,6 @@
 import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.StringTokenizer;
 
 /**
@@ -13,18 +15,77 @@ import java.util.StringTokenizer;
  * random values. In addition, these weights can be stored into a file. The network is run by
  * calling the propagate function, which calculates the output of the network from the given input.
  *
+ * The network can be pruned by removing weights that are close to zero. Once pruned, the removed weights stay at
+ * zero during any further training, and connectivity layers with few enough surviving weights are run with a sparse
+ * kernel instead of the dense matrix multiplication.
+ *
+ * The network can also be factorized, replacing chosen connectivity layers with the closest product of two thinner
+ * matrices of a given rank. A factorized layer is run as two smaller multiplications, and any further training
+ * changes the two factors instead of the dense weights. A network cannot be both pruned and factorized.
+ *
+ * Every variable that configures training, such as the error threshold and the optimizer, comes from the training
+ * configuration given to the network, so networks with different configurations can be trained at the same time.
+ *
+ * How the weights change during training is decided by an optimizer. By default this is plain stochastic gradient
+ * descent, but any optimizer can be set, including full-batch optimizers that change the weights once per epoch.
+ *
+ * The weights are held in a weight store. Networks that are trained keep their weights on the Java heap, but a network
+ * loaded from a file can keep its weights in native memory instead, so that large models do not add to garbage
+ * collection pauses, or straight from a memory-mapped file shared by every process on the machine. Such a network can
+ * be run and stored, but not trained or pruned.
+ *
+ * For image inputs, a stack of convolutional and pooling layers can run before the dense layers. The input layer of
+ * the dense network is then the flattened output of the stack, and backprop carries on from the dense layers down
+ * through the stack, changing its kernels with an optimizer of their own.
+ *
  * This network can be trained with any number of training cases. For training, there have to be
  * three layers, with any number of input, hidden, and output nodes.
  *
  * Methods in this class:
  * void     generateWeights()
- * double   uniformRandom(double minVal, double maxVal)
  * void     createActivations()
+ * boolean  usePlan()
+ * void     setOptimizer(Optimizer optimizer)
+ * void     setConfig(TrainingConfig config)
+ * void     setOutput(PrintStream output)
+ * void     setMetrics(TrainingMetrics metrics)
+ * void     setStripe(int stripe, int stripes)
+ * void     setParallelism(int threads)
+ * void     setAugmenter(Augmenter augmenter)
+ * void     closeTrainers()
+ * WeightStore getWeightStore()
  * void     storeWeights(String filename)
+ * void     close()
  * double[] propagate(double[] input)
+ * double[] propagateTo(double[] input, int layer)
+ * double[][] propagateTo(double[][] inputs, int layer)
+ * void     propagateBlock(double[][] inputs, double[][] outputs, int layer, int from, int to)
  * String   train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+ * String   train(double[][][] trainingData, double[][][] validationData, double learningRate, double lambdaMult,
+ *                int epochs)
+ * void     copyWeights(double[][][] from, double[][][] to)
+ * String   copyWeightsFrom(WeightStore source)
+ * String   copyWeightsFrom(NeuralNet source)
+ * ConvStack getConvStack()
+ * String   getSizeReport()
+ * double   getFinalLearningRate()
+ * String   getStalenessReport()
  * void     backPropagate(double[] input, double[] expected, double learningRate)
+ * void     backPropagateRows(int n, double learningRate)
+ * void     backPropagateRow(int n, int j, double learningRate)
+ * long     lap(long[] nanos, int n, long start)
+ * void     commitBatch(TrainingEvents.BackPropagateBatch event, int epoch, int cases)
+ * long     countWeights()
  * double   calculateError(double[][][] trainingData)
+ * double   calculateLoss(double[][][] trainingData)
+ * String   pruneByThreshold(double threshold)
+ * String   pruneTopK(int k)
+ * String   chooseExecution()
+ * String   factorize(int[] ranks)
+ * void     refactorize()
+ * double   timeRepeats(Runnable work, int repeats)
+ * boolean  isLowRank(int n)
+ * boolean  isCompressed()
  * double   outputFunction(double x)
  * double   outputFunctionPrime(double x)
  *
@@ -36,24 +97,107 @@ public class NeuralNet
    private int[] sizeOfLayers;            // number of units in each activation layer
    private int numOfLayers;               // number of connectivity layers
 
-   private double[][][] weights;          // weights for connections between each layer
+   private double[][][] weights;          // weights for connections between each layer, null if stored off-heap
+   private WeightStore weightStore;       // holds the weights, either as a view of the weights array or off-heap
    private double[][] activations;        // state of activation for all processing units
 
    private double[][] theta;
    private double[][] omega;
    private double[][] psi;
 
+   private static final double SPARSE_DENSITY_THRESHOLD = 0.3; // layers at or below this density are run sparse
+   private static final int TIMING_ROUNDS = 5; // rounds each multiplication is run for when timing a factorized layer
+   private static final int BATCH_BLOCK = 16;  // cases run through each weight row together by a batched forward pass
+
+   private boolean[][][] pruned;          // pruning mask, true for each removed connection, null if never pruned
+   private SparseLayer[] sparseLayers;    // sparse form of each connectivity layer, null for layers run densely
+   private LowRankLayer[] lowRankLayers;  // factorized form of each connectivity layer, null if never factorized
+
+   private Optimizer optimizer = new SGDOptimizer(); // decides how the weights change during backprop
+   private WeightInitializer initializer;            // fills the weights with random values
+
+   private TrainingConfig config = new TrainingConfig(); // the variables that configure training
+   private PrintStream output = System.out;              // where the error is printed during training
+
+   private double[][][] bestWeights;      // the weights with the lowest validation error found while training
+
+   private TrainingMetrics metrics;       // where each epoch is recorded, or null if metrics are turned off
+   private long[] forwardNanos;           // time spent going forward through each layer in the current epoch
+   private long[] backwardNanos;          // time spent going backward through each layer in the current epoch
+
+   private HogwildTrainer hogwild;        // trains with several threads at once, or null if it is not used yet
+   private PipelineTrainer pipeline;      // trains with each group of layers on its own thread, or null if not used yet
+   private int stripe;                    // which stripe of rows backprop starts changing each layer at
+   private int stripes = 1;               // the number of stripes each layer is split into
+
+   private ParallelKernels kernels;       // splits each layer into blocks that run in parallel, or null for one thread
+
+   private double finalLearningRate = Double.NaN; // the learning rate the last training run stopped at
+
+   private Augmenter augmenter;           // makes variants of the training cases to train on, or null to not use any
+
+   private ExecutionPlan plan;            // the forward pass specialized for this topology, or null to use the loops
+
+   private ConvStack convStack;           // the convolutional layers run before the dense layers, or null if none
+   private Optimizer convOptimizer;       // changes the kernels of the convolutional layers
+   private double[][][] bestKernels;      // the kernels that go with the best weights found while training
+
    /**
     * Constructor that creates a neural network with the size of each activation layer given. The
     * first layer is the input layer and the last is the output layer. This constructor generates
     * all weights such that the network is fully connected between adjacent layers. Weights are
-    * randomized between -1 and 1.
+    * randomized between -1 and 1, and the network is trained with the default configuration.
     *
     * @param sizeOfLayers the number of processing units in each activation layer
     */
    public NeuralNet(int[] sizeOfLayers)
+   {
+      this(sizeOfLayers, new TrainingConfig());
+   }
+
+   /**
+    * Constructor that creates a neural network with the size of each activation layer given, which
+    * is trained with the given configuration. The weights are generated with the configured
+    * initializer and seed, and the network is trained with the configured optimizer. If the configuration has
+    * convolutional layers, the first size is the number of pels in the input image, and the input layer of the dense
+    * network is the output of the convolutional layers.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param config       the variables that configure how the network is created and trained
+    */
+   public NeuralNet(int[] sizeOfLayers, TrainingConfig config)
+   {
+      this.config = config;
+      this.sizeOfLayers = sizeOfLayers;
+      convStack = ConvStack.create(config, sizeOfLayers[0]);
+      if (convStack != null)
+      {
+         this.sizeOfLayers = sizeOfLayers.clone();
+         this.sizeOfLayers[0] = convStack.getOutputSize();
+         convOptimizer = config.createOptimizer();
+      }
+      this.initializer = config.createInitializer();
+      this.optimizer = config.createOptimizer();
+      numOfLayers = sizeOfLayers.length - 1;
+      setMetrics(config.createMetrics());
+      setParallelism(config.intraOpThreads);
+
+      generateWeights();
+      createActivations();
+   }
+
+   /**
+    * Constructor that creates a neural network with the size of each activation layer given, and
+    * generates all weights with the given initializer. Using a seeded initializer makes the weights
+    * the same every time the network is created.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param initializer  fills the weights with random values whenever they are generated
+    */
+   public NeuralNet(int[] sizeOfLayers, WeightInitializer initializer)
    {
       this.sizeOfLayers = sizeOfLayers;
+      this.initializer = initializer;
       numOfLayers = sizeOfLayers.length - 1;
 
       generateWeights();
@@ -62,36 +206,37 @@ public class NeuralNet
 
    /**
     * Given the size of each layer and the number of connectivity layers, generates random weights
-    * that connect all nodes in each adjacent layer. Weights are randomized between -1 and 1.
+    * that connect all nodes in each adjacent layer. The weights are filled by the initializer.
     */
    public void generateWeights()
    {
+      pruned = null;
+      sparseLayers = null;
+      lowRankLayers = null;
+
       weights = new double[numOfLayers][][];
       for (int n = 0; n < numOfLayers; n++)
       {
          weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+      }
 
-         // Generates random numbers for each weight
-         for (int i = 0; i < sizeOfLayers[n]; i++)
-         {
-            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
-            {
-               weights[n][i][j] = uniformRandom(Main.minWeight, Main.maxWeight);
-            }
-         }
+      // Generates random numbers for each weight
+      if (initializer == null)
+      {
+         initializer = config.createInitializer();
+      }
+      initializer.initialize(weights);
+      if (convStack != null)
+      {
+         initializer.initialize(convStack.getKernels());
+         convOptimizer.initialize(convStack.getKernels());
       }
-   }
 
-   /**
-    * Generates a random number uniformly between the minimum and maximum value, and returns it
-    *
-    * @param minVal the minimum value of the random number
-    * @param maxVal the maximum value of the random number
-    * @return the random number between minVal and maxVal
-    */
-   private double uniformRandom(double minVal, double maxVal)
-   {
-      return (Math.random() * (maxVal - minVal)) + minVal;
+      weightStore = new HeapWeightStore(weights);
+      optimizer.initialize(weights);
+
+      // The parallel trainers hold the old weights, so they are made again for the new weights when next needed
+      closeTrainers();
    }
 
    /**
@@ -106,6 +251,7 @@ public class NeuralNet
    public NeuralNet(double[][][] weights)
    {
       this.weights = weights;
+      weightStore = new HeapWeightStore(weights);
 
       numOfLayers = weights.length;
       sizeOfLayers = new int[weights.length + 1];
@@ -116,6 +262,7 @@ public class NeuralNet
       sizeOfLayers[numOfLayers] = weights[numOfLayers - 1][0].length;
 
       createActivations();
+      optimizer.initialize(weights);
    }
 
    /**
@@ -142,10 +289,36 @@ public class NeuralNet
     * @param filename the name of the file that the weights are stored in
     */
    public NeuralNet(String filename) throws IOException
+   {
+      this(filename, false);
+   }
+
+   /**
+    * Constructor that creates a neural net with all the weights given in a file, in the same format
+    * as above. If off-heap storage is chosen, the weights are read straight into native memory and
+    * never go on the Java heap, and the network can only be run, not trained.
+    *
+    * A network with convolutional layers starts its file with a line that gives the size of the input
+    * image and the layers, such as CONV 40x40 conv8x5,pool2, then a blank line and the kernels of
+    * each convolution in the same format as the weights, before the usual layer sizes and weights.
+    *
+    * @param filename the name of the file that the weights are stored in
+    * @param offHeap  true to keep the weights in native memory, false to keep them on the heap
+    */
+   public NeuralNet(String filename, boolean offHeap) throws IOException
    {
       BufferedReader br = new BufferedReader(new FileReader(filename));
       String[] splitLine = br.readLine().split(" ");
 
+      // Read the convolutional layers, if there are any
+      if (splitLine[0].equals("CONV"))
+      {
+         String[] inputSize = splitLine[1].split("x");
+         convStack = new ConvStack(splitLine[2], Integer.parseInt(inputSize[0]), Integer.parseInt(inputSize[1]));
+         convStack.readKernels(br);
+         splitLine = br.readLine().split(" ");
+      }
+
       // Read in size of each layer
       numOfLayers = splitLine.length - 1;
       sizeOfLayers = new int[splitLine.length];
@@ -154,11 +327,24 @@ public class NeuralNet
          sizeOfLayers[i] = Integer.parseInt(splitLine[i]);
       }
 
+      // Create the storage for the weights
+      if (offHeap)
+      {
+         weightStore = new OffHeapWeightStore(sizeOfLayers);
+      }
+      else
+      {
+         weights = new double[numOfLayers][][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+         }
+         weightStore = new HeapWeightStore(weights);
+      }
+
       // Read weights matrix
-      weights = new double[numOfLayers][][];
       for (int n = 0; n < numOfLayers; n++)
       {
-         weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
          br.readLine();
 
          for (int i = 0; i < sizeOfLayers[n]; i++)
@@ -166,14 +352,50 @@ public class NeuralNet
             StringTokenizer st = new StringTokenizer(br.readLine());  // Each line is a different row of weights
             for (int j = 0; j < sizeOfLayers[n + 1]; j++)
             {
-               weights[n][i][j] = Double.parseDouble(st.nextToken()); // Weights are space-separated on each line
+               weightStore.set(n, i, j, Double.parseDouble(st.nextToken())); // Weights are space-separated
             }
          }
       }
+      br.close();
+
+      createActivations();
+      if (weights != null)
+      {
+         optimizer.initialize(weights);
+      }
+      if (convStack != null)
+      {
+         convOptimizer = new SGDOptimizer();
+         convOptimizer.initialize(convStack.getKernels());
+      }
+   } // public NeuralNet(String filename, boolean offHeap)
+
+   /**
+    * Constructor that creates a neural net that runs on the weights in the given weight store,
+    * such as an off-heap or memory-mapped store. The network can be run and stored, but not trained.
+    *
+    * @param weightStore the store that holds the weights of every connectivity layer
+    */
+   public NeuralNet(WeightStore weightStore)
+   {
+      this.weightStore = weightStore;
+
+      sizeOfLayers = weightStore.getSizeOfLayers();
+      numOfLayers = sizeOfLayers.length - 1;
 
       createActivations();
    }
 
+   /**
+    * Gets the store that holds the weights of the network.
+    *
+    * @return the weight store
+    */
+   public WeightStore getWeightStore()
+   {
+      return weightStore;
+   }
+
    /**
     * Creates an empty deltaWeights, activations, theta, omega, and psi array, given that the array sizeOfLayers
     * is already created. If so, they will jagged matrices with each row having a number of columns equal to the
@@ -195,6 +417,145 @@ public class NeuralNet
          omega[n] = new double[sizeOfLayers[n]];
          psi[n] = new double[sizeOfLayers[n]];
       }
+
+      plan = config.executionPlan && weights != null ? ExecutionPlan.forTopology(sizeOfLayers) : null;
+   }
+
+   /**
+    * Checks if the forward pass can be run by the execution plan. The plan only knows about dense weights on the heap
+    * run on one thread, and it does not time each layer, so the generic loops are used while metrics are recorded.
+    *
+    * @return true if the plan can be used
+    */
+   private boolean usePlan()
+   {
+      return plan != null && sparseLayers == null && lowRankLayers == null && kernels == null && metrics == null;
+   }
+
+   /**
+    * Sets the optimizer used to change the weights during training. The optimizer's state is created for the current
+    * weights, so any state it had before is lost.
+    *
+    * @param optimizer the optimizer to use
+    */
+   public void setOptimizer(Optimizer optimizer)
+   {
+      this.optimizer = optimizer;
+      if (weights != null)
+      {
+         optimizer.initialize(weights);
+      }
+   }
+
+   /**
+    * Sets the configuration used when the network is trained.
+    *
+    * @param config the variables that configure training
+    */
+   public void setConfig(TrainingConfig config)
+   {
+      this.config = config;
+      plan = config.executionPlan && weights != null ? ExecutionPlan.forTopology(sizeOfLayers) : null;
+      closeTrainers();
+   }
+
+   /**
+    * Sets the metrics that each epoch of training is recorded to. While metrics are set, the time spent in each layer
+    * during backprop is measured as well.
+    *
+    * @param metrics the metrics to record to, or null to stop recording
+    */
+   public void setMetrics(TrainingMetrics metrics)
+   {
+      this.metrics = metrics;
+      forwardNanos = new long[numOfLayers];
+      backwardNanos = new long[numOfLayers];
+   }
+
+   /**
+    * Splits the rows of each layer into stripes and makes backprop start changing each layer at the given stripe,
+    * going around to the rows before it at the end. This only rotates the order of the rows: every row is still
+    * changed, so networks that share weights still write to the same rows, just usually not at the same moment.
+    *
+    * @param stripe  the stripe to start at
+    * @param stripes the number of stripes
+    */
+   public void setStripe(int stripe, int stripes)
+   {
+      this.stripe = stripe;
+      this.stripes = stripes;
+   }
+
+   /**
+    * Sets how many threads each layer is split between when the network is run or trained on a single case. Layers
+    * with too little work to be worth splitting still run on one thread.
+    *
+    * @param threads the number of threads, or 1 to run every layer on the calling thread
+    */
+   public void setParallelism(int threads)
+   {
+      kernels = threads > 1 ? ParallelKernels.get(threads) : null;
+   }
+
+   /**
+    * Sets the augmenter that makes variants of the training cases. During plain stochastic training, each step trains
+    * on a variant if one is ready, or on the training case itself if not. The error is still calculated on the
+    * training cases themselves.
+    *
+    * @param augmenter the augmenter to take variants from, or null to train on the training cases only
+    */
+   public void setAugmenter(Augmenter augmenter)
+   {
+      this.augmenter = augmenter;
+   }
+
+   /**
+    * Sets where the error is printed during training. This lets each training job in the same JVM
+    * have its own output.
+    *
+    * @param output the stream to print to
+    */
+   public void setOutput(PrintStream output)
+   {
+      this.output = output;
+   }
+
+   /**
+    * Checks that the weights are on the heap, which is needed to train or prune the network.
+    */
+   private void requireHeapWeights()
+   {
+      if (weights == null)
+      {
+         throw new IllegalStateException("A network with off-heap weights can only be run, not trained or pruned");
+      }
+   }
+
+   /**
+    * Releases the memory held by the weight store. The network cannot be used after it is closed.
+    */
+   public void close()
+   {
+      weightStore.close();
+      closeTrainers();
+   }
+
+   /**
+    * Stops the threads of the Hogwild and pipeline trainers, if there are any. They are made again the next time they
+    * are needed.
+    */
+   private void closeTrainers()
+   {
+      if (hogwild != null)
+      {
+         hogwild.close();
+         hogwild = null;
+      }
+      if (pipeline != null)
+      {
+         pipeline.close();
+         pipeline = null;
+      }
    }
 
    /**
@@ -206,8 +567,18 @@ public class NeuralNet
     */
    public void storeWeights(String filename) throws IOException
    {
+      TrainingEvents.Checkpoint event = new TrainingEvents.Checkpoint();
+      event.begin();
       PrintWriter pw = new PrintWriter(new FileWriter(filename));
 
+      // Store the convolutional layers and their kernels first, if there are any
+      if (convStack != null)
+      {
+         pw.println(convStack.getHeader());
+         pw.println();
+         convStack.storeKernels(pw);
+      }
+
       // Store the size of each layer
       for (int i = 0; i < sizeOfLayers.length; i++)
       {
@@ -216,19 +587,27 @@ public class NeuralNet
       pw.println("\n");
 
       // Store weights matrix
-      for (int n = 0; n < weights.length; n++)
+      for (int n = 0; n < numOfLayers; n++)
       {
-         for (int i = 0; i < weights[n].length; i++)
+         for (int i = 0; i < sizeOfLayers[n]; i++)
          {
-            for (int j = 0; j < weights[n][0].length; j++)
+            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
             {
-               pw.print(weights[n][i][j] + " ");
+               pw.print(weightStore.get(n, i, j) + " ");
             }
             pw.println();
          }
          pw.println();
       }
       pw.close();
+
+      if (event.shouldCommit())
+      {
+         event.kind = "store";
+         event.file = filename;
+         event.weights = countWeights();
+         event.commit();
+      }
    } // public void storeWeights(String filename)
 
    /**
@@ -242,128 +621,720 @@ public class NeuralNet
     */
    public double[] propagate(double[] input)
    {
-      activations[0] = input;
-      for (int n = 0; n < numOfLayers; n++)
-      {
-         // calculates the next layer by multiplying the weights by the current layer
-         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
-         {
-            activations[n + 1][i] = 0.0;
-            for (int j = 0; j < sizeOfLayers[n]; j++)
-            {
-               activations[n + 1][i] += weights[n][j][i] * activations[n][j];
-            }
-
-            // applies the output function to the nodes
-            activations[n + 1][i] = outputFunction(activations[n + 1][i]);
-         }
-      }
-
-      return activations[numOfLayers];
-   } // public double[] propagate(double[] input)
+      return propagateTo(input, numOfLayers);
+   }
 
    /**
-    * Trains the neural network with the given training data and calculates the error with the test
-    * data. The learning rate of the network starts at the given learning rate, and increases or
-    * decreases depending on the error. Training runs for a given number of epochs or until the
-    * learning rate goes to 0.
+    * Runs the network on the given input only as far as the given activation layer, and returns the activations of
+    * that layer. For an autoencoder, running to the smallest hidden layer gives the encoding of the input without
+    * running the decoder at all. Layer 0 is the input layer, or the output of the convolutional layers if there are
+    * any, and the output layer is the number of connectivity layers.
     *
-    * @param trainingData the inputs and outputs for each training case, used to train the network
-    * @param learningRate the initial learning rate of the network
-    * @param lambdaMult   how much to multiply the learning rate by for each iteration
-    * @param epochs       the number of epochs that training will run for
+    * @param input the values for the activation of all input units
+    * @param layer the activation layer to stop at
+    * @return the array of activations for the units of that layer, which is changed by the next run of the network
     */
-   public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+   public double[] propagateTo(double[] input, int layer)
    {
-      double minError = Double.MAX_VALUE;
-
-      int e = 1;
-      while (e <= epochs && learningRate != 0.0 && minError >= Main.errorThreshold)
+      if (layer < 0 || layer > numOfLayers)
       {
-         for (double[][] trainingCase : trainingData)
-         {
-            // Find how much the weights need to change for each training case
-            backPropagate(trainingCase[0], trainingCase[1], learningRate);
+         throw new IllegalArgumentException("There is no activation layer " + layer);
+      }
 
-            // Calculate the error using the training data
-            double curError = calculateError(trainingData);
+      activations[0] = convStack == null ? input : convStack.forward(input);
+      if (layer == numOfLayers && usePlan())
+      {
+         plan.forward(weights, theta, activations);
+         return activations[numOfLayers];
+      }
 
-            // Change the learning rate depending on if the error is decreasing or increasing
-            if (minError != Double.MAX_VALUE && curError < minError)
-            {
-               // If the error is decreasing, increase the learning rate
-               learningRate *= lambdaMult;
-               minError = curError;
-            }
-            else if (minError != Double.MAX_VALUE && curError >= minError && lambdaMult != 1.0)
+      for (int n = 0; n < layer; n++)
+      {
+         // sparse layers only multiply by the weights that survived pruning
+         if (isSparse(n))
+         {
+            sparseLayers[n].multiply(activations[n], activations[n + 1]);
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
             {
-               // If the error is increasing, decrease the learning rate
-               learningRate /= lambdaMult;
+               activations[n + 1][i] = outputFunction(activations[n + 1][i]);
             }
-            else
+            continue;
+         }
+
+         // factorized layers multiply by each of their two factors in turn
+         if (isLowRank(n))
+         {
+            lowRankLayers[n].multiply(activations[n], activations[n + 1]);
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
             {
-               minError = curError;
+               activations[n + 1][i] = outputFunction(activations[n + 1][i]);
             }
-         } // for (double[][] trainingCase : trainingData)
+            continue;
+         }
 
-         // Print the current error
-         if (Main.printingRate != 0 && e % (epochs / Main.printingRate) == 0)
+         // calculates the next layer by multiplying the weights by the current layer
+         if (kernels != null)
          {
-            System.out.println("Epoch " + e + ": Error = " + Math.sqrt(minError));
+            weightStore.multiply(n, activations[n], activations[n + 1], kernels);
+         }
+         else
+         {
+            weightStore.multiply(n, activations[n], activations[n + 1]);
          }
 
-         e++;
-      } // while (e <= epochs && learningRate != 0)
+         // applies the output function to the nodes
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            activations[n + 1][i] = outputFunction(activations[n + 1][i]);
+         }
+      }
 
-      // Return the ending diagnostic information: the final epoch, learning rate, error, and reason for stopping
-      String diagnosticInformation = "";
-      diagnosticInformation += "Final Epoch: " + e + "\n";
-      diagnosticInformation += "Final Learning Rate: " + learningRate + "\n";
-      diagnosticInformation += "Final Error: " + Math.sqrt(minError) + "\n";
+      return activations[layer];
+   } // public double[] propagateTo(double[] input, int layer)
 
-      diagnosticInformation += "Reason for stopping: ";
-      if (e > epochs)
+   /**
+    * Runs the network on many inputs at once as far as the given activation layer. With the weights on the heap, the
+    * inputs are run in blocks, and every case in a block is run through each row of weights while it is in the cache,
+    * so each weight is read from memory once per block instead of once per case. When intra-op threads are set, the
+    * blocks run in parallel, unless the network has convolutional, sparse or factorized layers or weights off the
+    * heap, which run through buffers shared by the whole network. Each weighted sum is added up in the same order as
+    * when running one case, so the results are exactly the same.
+    *
+    * @param inputs the inputs of each case
+    * @param layer  the activation layer to stop at
+    * @return the activations of that layer for each case, in new arrays
+    */
+   public double[][] propagateTo(double[][] inputs, int layer)
+   {
+      if (layer < 0 || layer > numOfLayers)
       {
-         diagnosticInformation += "Reached max epochs\n";
+         throw new IllegalArgumentException("There is no activation layer " + layer);
       }
-      else if (learningRate == 0.0)
+
+      double[][] outputs = new double[inputs.length][];
+      if (kernels != null && convStack == null && weights != null && sparseLayers == null && lowRankLayers == null)
       {
-         diagnosticInformation += "Learning rate went to 0\n";
+         long work = 0;
+         for (int n = 0; n < layer; n++)
+         {
+            work += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+         }
+         kernels.forBlocks(inputs.length, BATCH_BLOCK, work * inputs.length,
+                           (from, to) -> propagateBlock(inputs, outputs, layer, from, to));
       }
-      else if (minError < Main.errorThreshold)
+      else
       {
-         diagnosticInformation += "Reached error threshold\n";
+         for (int from = 0; from < inputs.length; from += BATCH_BLOCK)
+         {
+            propagateBlock(inputs, outputs, layer, from, Math.min(inputs.length, from + BATCH_BLOCK));
+         }
       }
-
-      return diagnosticInformation;
-   } // public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+      return outputs;
+   } // public double[][] propagateTo(double[][] inputs, int layer)
 
    /**
-    * This is the generalized form of backprop. It finds the gradient of the error function with respect to each weight for a given
-    * test case. It can work for a network that has any number of inputs, outputs, or hidden layers.
+    * Runs one block of cases as far as the given activation layer. Networks whose weights are not on the heap, or
+    * that have sparse or factorized layers, run each case on its own.
     *
-    * @param input        the input test case to train the network on
-    * @param expected     the expected output for that test case
-    * @param learningRate the rate at which to change the weights
+    * @param inputs  the inputs of every case
+    * @param outputs where to put the activations of the layer for every case
+    * @param layer   the activation layer to stop at
+    * @param from    the first case in the block
+    * @param to      one past the last case in the block
     */
-   private void backPropagate(double[] input, double[] expected, double learningRate)
+   private void propagateBlock(double[][] inputs, double[][] outputs, int layer, int from, int to)
    {
-      // Propagate forward to calculate theta and activations
-      activations[0] = input;
-      for (int n = 0; n < numOfLayers; n++)
+      if (weights == null || sparseLayers != null || lowRankLayers != null)
       {
-         // Calculates the next layer by multiplying the weights by the current layer
-         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         for (int k = from; k < to; k++)
          {
-            theta[n + 1][i] = 0.0;
-            for (int j = 0; j < sizeOfLayers[n]; j++)
-            {
+            outputs[k] = propagateTo(inputs[k], layer).clone();
+         }
+         return;
+      }
+
+      double[][] current = new double[to - from][];
+      for (int k = from; k < to; k++)
+      {
+         current[k - from] = (convStack == null ? inputs[k] : convStack.forward(inputs[k])).clone();
+      }
+
+      for (int n = 0; n < layer; n++)
+      {
+         double[][] next = new double[to - from][sizeOfLayers[n + 1]];
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            double[] row = weights[n][j];
+            for (int b = 0; b < next.length; b++)
+            {
+               double activation = current[b][j];
+               double[] sums = next[b];
+               for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+               {
+                  sums[i] += row[i] * activation;
+               }
+            }
+         } // for (int j = 0; j < sizeOfLayers[n]; j++)
+
+         for (double[] sums : next)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               sums[i] = outputFunction(sums[i]);
+            }
+         }
+         current = next;
+      } // for (int n = 0; n < layer; n++)
+
+      System.arraycopy(current, 0, outputs, from, to - from);
+   } // private void propagateBlock(double[][] inputs, double[][] outputs, int layer, int from, int to)
+
+   /**
+    * Trains the neural network with the given training data and calculates the error with the test
+    * data. The learning rate of the network starts at the given learning rate, and increases or
+    * decreases depending on the error. Training runs for a given number of epochs or until the
+    * learning rate goes to 0. If the learning rate multiplier is 1, the learning rate never changes, so
+    * the error is only calculated once at the end of each epoch instead of after every training case.
+    *
+    * If the optimizer is full-batch, each epoch collects the gradient over all training cases and
+    * then lets the optimizer change the weights once, and the learning rate is not changed.
+    *
+    * @param trainingData the inputs and outputs for each training case, used to train the network
+    * @param learningRate the initial learning rate of the network
+    * @param lambdaMult   how much to multiply the learning rate by for each iteration
+    * @param epochs       the number of epochs that training will run for
+    */
+   public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+   {
+      return train(trainingData, null, learningRate, lambdaMult, epochs);
+   }
+
+   /**
+    * Trains the neural network the same way as without validation data, but also calculates the
+    * error on the held-out validation data every few epochs, as given by the validation rate. The
+    * weights with the lowest validation error are copied into a snapshot. If the validation error
+    * does not improve for a number of validations in a row, as given by the patience, training stops
+    * early. When training ends, the weights are set back to the snapshot, so storing the weights
+    * afterwards stores the best model.
+    *
+    * @param trainingData   the inputs and outputs for each training case, used to train the network
+    * @param validationData the inputs and outputs for each validation case, or null to train without validation
+    * @param learningRate   the initial learning rate of the network
+    * @param lambdaMult     how much to multiply the learning rate by for each iteration
+    * @param epochs         the number of epochs that training will run for
+    */
+   public String train(double[][][] trainingData, double[][][] validationData, double learningRate,
+                       double lambdaMult, int epochs)
+   {
+      requireHeapWeights();
+      double minError = Double.MAX_VALUE;
+
+      // Validation state: the lowest validation error so far and how many validations have passed since
+      double bestValidationError = Double.MAX_VALUE;
+      int validationsSinceBest = 0;
+      boolean stoppedEarly = false;
+      if (validationData != null && bestWeights == null)
+      {
+         bestWeights = new double[numOfLayers][][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            bestWeights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+         }
+      }
+
+      if (optimizer.isFullBatch() && isCompressed())
+      {
+         throw new IllegalStateException("A full-batch optimizer cannot be used to fine-tune a pruned or factorized " +
+                                         "network");
+      }
+      if (convStack != null && (optimizer.isFullBatch() || config.hogwildThreads > 1 || config.pipelineStages > 1))
+      {
+         throw new IllegalStateException("Convolutional layers need a per-case optimizer and cannot be trained with " +
+                                         "Hogwild or pipeline training");
+      }
+      if (augmenter != null && (optimizer.isFullBatch() ||
+                                (config.hogwildThreads > 1 || config.pipelineStages > 1) && !isCompressed()))
+      {
+         throw new IllegalStateException("Augmented variants are only used by plain stochastic training, not with a " +
+                                         "full-batch optimizer or Hogwild or pipeline training");
+      }
+      if (validationData != null && convStack != null && bestKernels == null)
+      {
+         bestKernels = new double[convStack.getKernels().length][][];
+         for (int l = 0; l < bestKernels.length; l++)
+         {
+            bestKernels[l] = new double[convStack.getKernels()[l].length][convStack.getKernels()[l][0].length];
+         }
+      }
+
+      // Pruned and factorized networks are always fine-tuned on one thread, as the parallel trainers only know about
+      // dense layers
+      if ((config.hogwildThreads > 1 || config.pipelineStages > 1) && !isCompressed())
+      {
+         if (optimizer.isFullBatch() || lambdaMult != 1.0)
+         {
+            throw new IllegalStateException("Hogwild and pipeline training need a per-case optimizer and a learning " +
+                                            "rate that does not change");
+         }
+         if (config.hogwildThreads > 1 && config.pipelineStages > 1)
+         {
+            throw new IllegalStateException("Hogwild and pipeline training cannot be used together");
+         }
+         if (config.hogwildThreads > 1 && hogwild == null)
+         {
+            hogwild = new HogwildTrainer(weights, config);
+         }
+         if (config.pipelineStages > 1 && pipeline == null)
+         {
+            pipeline = new PipelineTrainer(weights, config);
+         }
+      } // if ((config.hogwildThreads > 1 || config.pipelineStages > 1) && !isCompressed())
+
+      int e = 1;
+      while (e <= epochs && learningRate != 0.0 && minError >= config.errorThreshold && !stoppedEarly)
+      {
+         TrainingEvents.Epoch epochEvent = new TrainingEvents.Epoch();
+         epochEvent.begin();
+         TrainingEvents.BackPropagateBatch batchEvent = new TrainingEvents.BackPropagateBatch();
+         batchEvent.begin();
+
+         long epochStart = System.nanoTime();
+         if (optimizer.isFullBatch())
+         {
+            // Collect the gradient over every training case, then change the weights once
+            for (double[][] trainingCase : trainingData)
+            {
+               backPropagate(trainingCase[0], trainingCase[1], learningRate);
+            }
+            commitBatch(batchEvent, e, trainingData.length);
+            optimizer.endBatch(() -> calculateLoss(trainingData));
+            minError = calculateError(trainingData);
+         }
+         else if (hogwild != null && !isCompressed())
+         {
+            // Every thread trains on its share of the cases at the same time, changing the weights without locks
+            hogwild.runEpoch(trainingData, learningRate);
+            commitBatch(batchEvent, e, trainingData.length);
+            minError = calculateError(trainingData);
+         }
+         else if (pipeline != null && !isCompressed())
+         {
+            // Micro-batches flow through the stages, so each group of layers works on different cases at once
+            pipeline.runEpoch(trainingData, learningRate);
+            commitBatch(batchEvent, e, trainingData.length);
+            minError = calculateError(trainingData);
+         }
+         else
+         {
+            for (double[][] trainingCase : trainingData)
+            {
+               // Find how much the weights need to change for each training case, or for a variant of one if ready
+               int slot = augmenter == null ? -1 : augmenter.poll();
+               if (slot >= 0)
+               {
+                  backPropagate(augmenter.getCase(slot)[0], augmenter.getCase(slot)[1], learningRate);
+                  augmenter.release(slot);
+               }
+               else
+               {
+                  backPropagate(trainingCase[0], trainingCase[1], learningRate);
+               }
+
+               // The error is only needed after every training case if the learning rate can change
+               if (lambdaMult == 1.0)
+               {
+                  continue;
+               }
+
+               // Calculate the error using the training data
+               double curError = calculateError(trainingData);
+
+               // Change the learning rate depending on if the error is decreasing or increasing
+               if (minError != Double.MAX_VALUE && curError < minError)
+               {
+                  // If the error is decreasing, increase the learning rate
+                  learningRate *= lambdaMult;
+                  minError = curError;
+               }
+               else if (minError != Double.MAX_VALUE && curError >= minError && lambdaMult != 1.0)
+               {
+                  // If the error is increasing, decrease the learning rate
+                  learningRate /= lambdaMult;
+               }
+               else
+               {
+                  minError = curError;
+               }
+            } // for (double[][] trainingCase : trainingData)
+            commitBatch(batchEvent, e, trainingData.length);
+
+            // If the learning rate never changes, the error is only calculated once the epoch is over
+            if (lambdaMult == 1.0)
+            {
+               minError = calculateError(trainingData);
+            }
+         } // else
+
+         if (metrics != null)
+         {
+            metrics.recordEpoch(trainingData.length, System.nanoTime() - epochStart, learningRate,
+                                Math.sqrt(minError), forwardNanos, backwardNanos);
+         }
+
+         // Check the validation error, keeping a snapshot of the best weights
+         if (validationData != null && e % config.validationRate == 0)
+         {
+            double validationError = calculateError(validationData);
+            if (validationError < bestValidationError)
+            {
+               bestValidationError = validationError;
+               validationsSinceBest = 0;
+
+               TrainingEvents.Checkpoint checkpointEvent = new TrainingEvents.Checkpoint();
+               checkpointEvent.begin();
+               copyWeights(weights, bestWeights);
+               if (convStack != null)
+               {
+                  copyWeights(convStack.getKernels(), bestKernels);
+               }
+               if (checkpointEvent.shouldCommit())
+               {
+                  checkpointEvent.kind = "snapshot";
+                  checkpointEvent.weights = countWeights();
+                  checkpointEvent.commit();
+               }
+            }
+            else
+            {
+               validationsSinceBest++;
+               stoppedEarly = config.patience > 0 && validationsSinceBest >= config.patience;
+            }
+         } // if (validationData != null && e % config.validationRate == 0)
+
+         // Print the current error
+         if (config.printingRate != 0 && e % (epochs / config.printingRate) == 0)
+         {
+            output.print("Epoch " + e + ": Error = " + Math.sqrt(minError));
+            if (validationData != null)
+            {
+               output.print(", Best Validation Error = " + Math.sqrt(bestValidationError));
+            }
+            output.println();
+         }
+
+         if (epochEvent.shouldCommit())
+         {
+            epochEvent.epoch = e;
+            epochEvent.cases = trainingData.length;
+            epochEvent.learningRate = learningRate;
+            epochEvent.error = Math.sqrt(minError);
+            epochEvent.commit();
+         }
+
+         e++;
+      } // while (e <= epochs && learningRate != 0 && minError >= config.errorThreshold && !stoppedEarly)
+
+      // Find the reason for stopping before the weights are changed back
+      String reasonForStopping = "";
+      if (stoppedEarly)
+      {
+         reasonForStopping = "Validation error stopped improving\n";
+      }
+      else if (e > epochs)
+      {
+         reasonForStopping = "Reached max epochs\n";
+      }
+      else if (learningRate == 0.0)
+      {
+         reasonForStopping = "Learning rate went to 0\n";
+      }
+      else if (minError < config.errorThreshold)
+      {
+         reasonForStopping = "Reached error threshold\n";
+      }
+
+      // Go back to the weights with the lowest validation error, unless the final weights are better
+      if (validationData != null)
+      {
+         double validationError = calculateError(validationData);
+         if (validationError < bestValidationError)
+         {
+            bestValidationError = validationError;
+         }
+         else
+         {
+            copyWeights(bestWeights, weights);
+            if (convStack != null)
+            {
+               copyWeights(bestKernels, convStack.getKernels());
+            }
+            if (pruned != null)
+            {
+               chooseExecution();
+            }
+            if (lowRankLayers != null)
+            {
+               refactorize();
+            }
+            minError = calculateError(trainingData);
+         }
+      } // if (validationData != null)
+
+      // Return the ending diagnostic information: the final epoch, learning rate, error, and reason for stopping
+      String diagnosticInformation = "";
+      diagnosticInformation += "Final Epoch: " + e + "\n";
+      diagnosticInformation += "Final Learning Rate: " + learningRate + "\n";
+      diagnosticInformation += "Final Error: " + Math.sqrt(minError) + "\n";
+      if (validationData != null)
+      {
+         diagnosticInformation += "Best Validation Error: " + Math.sqrt(bestValidationError) + "\n";
+      }
+      diagnosticInformation += "Reason for stopping: " + reasonForStopping;
+      finalLearningRate = learningRate;
+      if (hogwild != null && !isCompressed())
+      {
+         diagnosticInformation += hogwild.getStalenessReport();
+      }
+      if (pipeline != null && !isCompressed())
+      {
+         diagnosticInformation += pipeline.getUtilizationReport();
+      }
+      if (usePlan())
+      {
+         diagnosticInformation += "Execution Plan: " + plan.describe() + "\n";
+      }
+
+      return diagnosticInformation;
+   } // public String train(double[][][] trainingData, double[][][] validationData, double learningRate, ...)
+
+   /**
+    * Copies every weight from one weights matrix into another of the same size, without creating any new arrays.
+    *
+    * @param from the weights to copy
+    * @param to   the weights to copy into
+    */
+   private void copyWeights(double[][][] from, double[][][] to)
+   {
+      for (int n = 0; n < from.length; n++)
+      {
+         for (int j = 0; j < from[n].length; j++)
+         {
+            System.arraycopy(from[n][j], 0, to[n][j], 0, from[n][j].length);
+         }
+      }
+   }
+
+   /**
+    * Copies the weights of an earlier network into this one, so that training can start from where it left off. The
+    * input and output layers and the number of layers have to match, but each hidden layer can have grown or shrunk:
+    * only the weights between units that both networks have are copied. The weights into a new hidden unit keep the
+    * values the initializer gave them, and the weights out of it start at zero, so a grown network starts out with the
+    * same outputs as the earlier one and training only has to find a use for the new units. Any pruning is undone and
+    * the optimizer starts over.
+    *
+    * @param source the weights of the earlier network
+    * @return a line for each hidden layer that changed size, or an empty string if every layer is the same size
+    */
+   public String copyWeightsFrom(WeightStore source)
+   {
+      requireHeapWeights();
+
+      int[] sourceSizes = source.getSizeOfLayers();
+      if (sourceSizes.length != sizeOfLayers.length || sourceSizes[0] != sizeOfLayers[0] ||
+          sourceSizes[numOfLayers] != sizeOfLayers[numOfLayers])
+      {
+         throw new IllegalArgumentException("Weights for layers " + Arrays.toString(sourceSizes) +
+                                            " do not fit layers " + Arrays.toString(sizeOfLayers));
+      }
+
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         int rows = Math.min(sourceSizes[n], sizeOfLayers[n]);
+         int columns = Math.min(sourceSizes[n + 1], sizeOfLayers[n + 1]);
+         for (int j = 0; j < rows; j++)
+         {
+            for (int i = 0; i < columns; i++)
+            {
+               weights[n][j][i] = source.get(n, j, i);
+            }
+         }
+         for (int j = rows; j < sizeOfLayers[n]; j++)
+         {
+            Arrays.fill(weights[n][j], 0.0);
+         }
+      }
+
+      pruned = null;
+      sparseLayers = null;
+      lowRankLayers = null;
+      optimizer.initialize(weights);
+
+      String changes = "";
+      for (int k = 1; k < numOfLayers; k++)
+      {
+         if (sourceSizes[k] != sizeOfLayers[k])
+         {
+            changes += "Hidden Layer " + k + (sourceSizes[k] < sizeOfLayers[k] ? " grew" : " shrank") + " from " +
+                       sourceSizes[k] + " to " + sizeOfLayers[k] + " units\n";
+         }
+      }
+      return changes;
+   } // public String copyWeightsFrom(WeightStore source)
+
+   /**
+    * Copies the weights of an earlier network into this one, the same way as copying from its weight store, along
+    * with the kernels of its convolutional layers, which have to be the same as this network's.
+    *
+    * @param source the earlier network
+    * @return a line for each hidden layer that changed size, or an empty string if every layer is the same size
+    */
+   public String copyWeightsFrom(NeuralNet source)
+   {
+      if ((convStack == null) != (source.convStack == null))
+      {
+         throw new IllegalArgumentException("Only one of the networks has convolutional layers");
+      }
+      if (convStack != null)
+      {
+         convStack.copyKernelsFrom(source.convStack);
+         convOptimizer.initialize(convStack.getKernels());
+      }
+      return copyWeightsFrom(source.getWeightStore());
+   } // public String copyWeightsFrom(NeuralNet source)
+
+   /**
+    * Gets the convolutional layers that run before the dense layers.
+    *
+    * @return the convolutional layers, or null if there are none
+    */
+   public ConvStack getConvStack()
+   {
+      return convStack;
+   }
+
+   /**
+    * Gets the number of weights in the network and the number of multiply-adds it takes to run one case forward,
+    * for the convolutional and dense layers each, and which execution plan the forward pass runs, if there is one.
+    *
+    * @return the size report, one value per line
+    */
+   public String getSizeReport()
+   {
+      long denseWeights = 0;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         denseWeights += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+      }
+
+      String report = "";
+      if (convStack != null)
+      {
+         report += "Convolutional Weights: " + convStack.countWeights() + "\n";
+         report += "Convolutional Multiply-Adds per Case: " + convStack.countMultiplyAdds() + "\n";
+      }
+      report += "Dense Weights: " + denseWeights + "\n";
+      report += "Dense Multiply-Adds per Case: " + denseWeights + "\n";
+      if (plan != null)
+      {
+         report += "Execution Plan: " + plan.describe() + "\n";
+      }
+      return report;
+   } // public String getSizeReport()
+
+   /**
+    * Gets the learning rate the last training run stopped at, which can be stored with the weights so that a later
+    * run can carry on at the same rate.
+    *
+    * @return the final learning rate, or NaN if the network has not been trained
+    */
+   public double getFinalLearningRate()
+   {
+      return finalLearningRate;
+   }
+
+   /**
+    * Gets the staleness report of the Hogwild trainer, which is only made once the network has been trained with more
+    * than one Hogwild thread while it is not pruned or factorized.
+    *
+    * @return the staleness report, one value per line, or an empty string if Hogwild training has not been used
+    */
+   public String getStalenessReport()
+   {
+      return hogwild == null ? "" : hogwild.getStalenessReport();
+   }
+
+   /**
+    * This is the generalized form of backprop. It finds the gradient of the error function with respect to each weight for a given
+    * test case. It can work for a network that has any number of inputs, outputs, or hidden layers.
+    * It is not private so that the Hogwild trainer can run it on each of its worker networks.
+    *
+    * @param input        the input test case to train the network on
+    * @param expected     the expected output for that test case
+    * @param learningRate the rate at which to change the weights
+    */
+   void backPropagate(double[] input, double[] expected, double learningRate)
+   {
+      optimizer.startStep();
+      long start = metrics == null ? 0 : System.nanoTime();
+
+      // Propagate forward to calculate theta and activations, starting with the convolutional layers if there are any
+      activations[0] = convStack == null ? input : convStack.forward(input);
+      boolean planned = usePlan();
+      if (planned)
+      {
+         plan.forward(weights, theta, activations);
+      }
+      for (int n = 0; n < numOfLayers && !planned; n++)
+      {
+         // Sparse layers only multiply by the weights that survived pruning
+         if (isSparse(n))
+         {
+            sparseLayers[n].multiply(activations[n], theta[n + 1]);
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               activations[n + 1][i] = outputFunction(theta[n + 1][i]);
+            }
+            start = lap(forwardNanos, n, start);
+            continue;
+         }
+
+         // Factorized layers multiply by each of their two factors in turn
+         if (isLowRank(n))
+         {
+            lowRankLayers[n].multiply(activations[n], theta[n + 1]);
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               activations[n + 1][i] = outputFunction(theta[n + 1][i]);
+            }
+            start = lap(forwardNanos, n, start);
+            continue;
+         }
+
+         // Large layers are split into blocks of units that are found in parallel
+         if (kernels != null)
+         {
+            weightStore.multiply(n, activations[n], theta[n + 1], kernels);
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               activations[n + 1][i] = outputFunction(theta[n + 1][i]);
+            }
+            start = lap(forwardNanos, n, start);
+            continue;
+         }
+
+         // Calculates the next layer by multiplying the weights by the current layer
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            theta[n + 1][i] = 0.0;
+            for (int j = 0; j < sizeOfLayers[n]; j++)
+            {
                theta[n + 1][i] += weights[n][j][i] * activations[n][j];
             }
 
             // Applies the output function to the nodes
             activations[n + 1][i] = outputFunction(theta[n + 1][i]);
          }
+         start = lap(forwardNanos, n, start);
       } // for (int n = 0; n < numOfLayers; n++)
 
       // Calculate omega and psi for the last layer
@@ -379,37 +1350,189 @@ public class NeuralNet
       // Propagate backwards to calculate omega, psi and weights for everything except the last layer
       for (int n = numOfLayers - 1; n > 0; n--)
       {
-         for (int j = 0; j < sizeOfLayers[n]; j++)
+         if (isSparse(n))
          {
-            // omega_j = sum of (psi_I * w_jI)
-            omega[n][j] = 0.0;
-            for (int I = 0; I < sizeOfLayers[n + 1]; I++)
+            // The sparse layer finds omega and changes only the surviving weights
+            sparseLayers[n].backPropagate(activations[n], psi[n + 1], omega[n], optimizer, n, learningRate);
+            for (int j = 0; j < sizeOfLayers[n]; j++)
             {
-               omega[n][j] += psi[n + 1][I] * weights[n][j][I];
+               psi[n][j] = omega[n][j] * outputFunctionPrime(theta[n][j]);
             }
+            start = lap(backwardNanos, n, start);
+            continue;
+         }
 
-            // psi_j = omega_j * f'(theta_j)
-            psi[n][j] = omega[n][j] * outputFunctionPrime(theta[n][j]);
-
-            // deltaWeights_ji = a_j * psi_i
-            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         if (isLowRank(n))
+         {
+            // The factorized layer finds omega and changes both of its factors
+            lowRankLayers[n].backPropagate(activations[n], psi[n + 1], omega[n], learningRate);
+            for (int j = 0; j < sizeOfLayers[n]; j++)
             {
-               weights[n][j][i] += learningRate * activations[n][j] * psi[n + 1][i];
+               psi[n][j] = omega[n][j] * outputFunctionPrime(theta[n][j]);
             }
-         } // for (int j = 0; j < sizeOfLayers[n]; j++)
+            start = lap(backwardNanos, n, start);
+            continue;
+         }
+
+         backPropagateRows(n, learningRate);
+         start = lap(backwardNanos, n, start);
       } // for (int n = numOfLayers - 1; n > 0; n--)
 
-      // Calculate weights for first layer
+      // Calculate weights for first layer, and omega of the input layer if it is the output of the convolutional layers
       int n = 0;
-      for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+      if (isSparse(n))
       {
-         for (int j = 0; j < sizeOfLayers[n]; j++)
+         sparseLayers[n].backPropagate(activations[n], psi[n + 1], convStack == null ? null : omega[n], optimizer, n,
+                                       learningRate);
+      }
+      else if (isLowRank(n))
+      {
+         lowRankLayers[n].backPropagate(activations[n], psi[n + 1], convStack == null ? null : omega[n], learningRate);
+      }
+      else
+      {
+         backPropagateRows(n, learningRate);
+      }
+      if (convStack != null)
+      {
+         convStack.backPropagate(omega[n], convOptimizer, learningRate);
+      }
+      lap(backwardNanos, n, start);
+   } // public void backPropagate(double[] input, double[] expected)
+
+   /**
+    * Runs the backward step of backprop for every row of a dense connectivity layer. Each row only depends on itself,
+    * so large layers are split into blocks of rows that run in parallel. Otherwise, the rows are run in order,
+    * starting at this network's stripe.
+    *
+    * @param n            the connectivity layer
+    * @param learningRate the rate at which to change the weights
+    */
+   private void backPropagateRows(int n, double learningRate)
+   {
+      if (kernels != null)
+      {
+         kernels.forBlocks(sizeOfLayers[n], ParallelKernels.ROW_BLOCK, 2L * sizeOfLayers[n] * sizeOfLayers[n + 1],
+                           (from, to) ->
+                           {
+                              for (int j = from; j < to; j++)
+                              {
+                                 backPropagateRow(n, j, learningRate);
+                              }
+                           });
+         return;
+      }
+
+      int firstRow = stripe * sizeOfLayers[n] / stripes;
+      for (int k = 0; k < sizeOfLayers[n]; k++)
+      {
+         backPropagateRow(n, (firstRow + k) % sizeOfLayers[n], learningRate);
+      }
+   }
+
+   /**
+    * Runs the backward step of backprop for one row of a dense connectivity layer: it finds omega and psi for unit j
+    * of the previous layer, unless that is the input layer, and then changes the weights going out of unit j. Omega
+    * of an input unit is still found if the input layer is the output of the convolutional layers.
+    *
+    * @param n            the connectivity layer
+    * @param j            the unit in the previous activation layer
+    * @param learningRate the rate at which to change the weights
+    */
+   private void backPropagateRow(int n, int j, double learningRate)
+   {
+      if (n > 0 || convStack != null)
+      {
+         // omega_j = sum of (psi_I * w_jI)
+         omega[n][j] = 0.0;
+         for (int I = 0; I < sizeOfLayers[n + 1]; I++)
          {
-            // deltaWeights_ji = a_j * psi_i
-            weights[n][j][i] += learningRate * activations[n][j] * psi[n + 1][i];
+            omega[n][j] += psi[n + 1][I] * weights[n][j][I];
          }
       }
-   } // public void backPropagate(double[] input, double[] expected)
+      if (n > 0)
+      {
+         // psi_j = omega_j * f'(theta_j)
+         psi[n][j] = omega[n][j] * outputFunctionPrime(theta[n][j]);
+      }
+
+      // deltaWeights_ji = a_j * psi_i, leaving pruned weights at zero
+      optimizer.updateRow(n, j, weights[n][j], activations[n][j], psi[n + 1], learningRate);
+      clearPrunedWeights(n, j);
+   }
+
+   /**
+    * Commits the event for one batch of backprop, if a flight recording wants it.
+    *
+    * @param event the event, begun before the first training case of the batch
+    * @param epoch the epoch the batch is in
+    * @param cases the number of training cases in the batch
+    */
+   private void commitBatch(TrainingEvents.BackPropagateBatch event, int epoch, int cases)
+   {
+      if (event.shouldCommit())
+      {
+         event.epoch = epoch;
+         event.cases = cases;
+         event.fullBatch = optimizer.isFullBatch();
+         event.commit();
+      }
+   }
+
+   /**
+    * Counts the weights in every connectivity layer, including any that were pruned, and in every kernel.
+    *
+    * @return the number of weights in the network
+    */
+   private long countWeights()
+   {
+      long count = convStack == null ? 0 : convStack.countWeights();
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         count += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+      }
+      return count;
+   }
+
+   /**
+    * Adds the time since the start of a step of backprop to the time spent in a layer, if metrics are being recorded.
+    * The last layer of the backward pass also counts the time spent finding omega and psi for the output layer.
+    *
+    * @param nanos the time spent in each layer, in nanoseconds
+    * @param n     the connectivity layer the step was for
+    * @param start when the step started, from System.nanoTime
+    * @return when the next step starts, or 0 if metrics are not being recorded
+    */
+   private long lap(long[] nanos, int n, long start)
+   {
+      if (metrics == null)
+      {
+         return 0;
+      }
+      long now = System.nanoTime();
+      nanos[n] += now - start;
+      return now;
+   }
+
+   /**
+    * Sets every pruned weight leaving a unit back to zero after the optimizer has changed them.
+    *
+    * @param n the connectivity layer
+    * @param j the unit in the previous activation layer
+    */
+   private void clearPrunedWeights(int n, int j)
+   {
+      if (pruned != null)
+      {
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            if (pruned[n][j][i])
+            {
+               weights[n][j][i] = 0.0;
+            }
+         }
+      }
+   }
 
    /**
     * Calculates the total error for every single test case in the training data. This total error is a quadratic mean
@@ -421,6 +1544,9 @@ public class NeuralNet
     */
    public double calculateError(double[][][] trainingData)
    {
+      TrainingEvents.ErrorPass event = new TrainingEvents.ErrorPass();
+      event.begin();
+
       double error = 0.0;
       for (double[][] testCase : trainingData)                                                // for each test case
       {
@@ -433,16 +1559,335 @@ public class NeuralNet
          error += singleError * singleError;                                                  // sum this up for each case
       }
 
+      if (event.shouldCommit())
+      {
+         event.cases = trainingData.length;
+         event.error = Math.sqrt(error);
+         event.commit();
+      }
       return error;
    }
 
+   /**
+    * Calculates the loss that backprop minimizes, which is half of the squared difference between the output and the
+    * expected output, summed over every output and every training case. This is what full-batch optimizers use to
+    * check how good a step is.
+    *
+    * @param trainingData the inputs and expected output for each training case
+    * @return the total loss over the training data
+    */
+   public double calculateLoss(double[][][] trainingData)
+   {
+      double loss = 0.0;
+      for (double[][] testCase : trainingData)
+      {
+         double[] output = propagate(testCase[0]);
+         for (int i = 0; i < output.length; i++)
+         {
+            loss += 0.5 * (testCase[1][i] - output[i]) * (testCase[1][i] - output[i]);
+         }
+      }
+
+      return loss;
+   }
+
+   /**
+    * Prunes every weight whose magnitude is below the given threshold. Pruned weights are set to zero and are added to
+    * the pruning mask, so they stay at zero during any further training. After pruning, each connectivity layer is
+    * set to run either densely or sparsely depending on how many weights are left in it.
+    *
+    * @param threshold the smallest magnitude a weight can have and still survive
+    * @return the density of each layer and whether it will run densely or sparsely
+    */
+   public String pruneByThreshold(double threshold)
+   {
+      requireHeapWeights();
+      createPruningMask();
+
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               if (Math.abs(weights[n][j][i]) < threshold)
+               {
+                  pruned[n][j][i] = true;
+                  weights[n][j][i] = 0.0;
+               }
+            }
+         }
+      }
+
+      return chooseExecution();
+   } // public String pruneByThreshold(double threshold)
+
+   /**
+    * Prunes every weight except for the k weights with the largest magnitude in each connectivity layer. Weights that
+    * were already pruned stay pruned. If a layer has k or fewer weights left, nothing in it is pruned.
+    *
+    * @param k the number of weights to keep in each connectivity layer
+    * @return the density of each layer and whether it will run densely or sparsely
+    */
+   public String pruneTopK(int k)
+   {
+      requireHeapWeights();
+      createPruningMask();
+
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         // Find the magnitude of each weight that is still left in the layer
+         double[] magnitudes = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         int count = 0;
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               if (!pruned[n][j][i])
+               {
+                  magnitudes[count++] = Math.abs(weights[n][j][i]);
+               }
+            }
+         }
+
+         if (count <= k)
+         {
+            continue;
+         }
+
+         // The k-th largest magnitude is the cutoff; ties at the cutoff are kept until k weights have been kept
+         Arrays.sort(magnitudes, 0, count);
+         double cutoff = magnitudes[count - k];
+         int tiesLeft = 0;
+         for (int m = count - k; m < count && magnitudes[m] == cutoff; m++)
+         {
+            tiesLeft++;
+         }
+
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               double magnitude = Math.abs(weights[n][j][i]);
+               if (pruned[n][j][i] || magnitude > cutoff)
+               {
+                  continue;
+               }
+
+               if (magnitude == cutoff && tiesLeft > 0)
+               {
+                  tiesLeft--;
+               }
+               else
+               {
+                  pruned[n][j][i] = true;
+                  weights[n][j][i] = 0.0;
+               }
+            }
+         }
+      } // for (int n = 0; n < numOfLayers; n++)
+
+      return chooseExecution();
+   } // public String pruneTopK(int k)
+
+   /**
+    * Creates an empty pruning mask if the network has not been pruned before. Factorized networks cannot be pruned.
+    */
+   private void createPruningMask()
+   {
+      if (lowRankLayers != null)
+      {
+         throw new IllegalStateException("A factorized network cannot be pruned");
+      }
+      if (pruned == null)
+      {
+         pruned = new boolean[numOfLayers][][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            pruned[n] = new boolean[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+         }
+      }
+   }
+
+   /**
+    * Measures the density of each connectivity layer from the pruning mask and decides whether the layer is run with
+    * the dense or sparse kernel. Layers with a density at or below the sparse density threshold are compressed into a
+    * sparse layer; all other layers are run densely.
+    *
+    * @return the density of each layer and whether it will run densely or sparsely
+    */
+   public String chooseExecution()
+   {
+      sparseLayers = new SparseLayer[numOfLayers];
+
+      String summary = "";
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         int surviving = 0;
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               if (pruned == null || !pruned[n][j][i])
+               {
+                  surviving++;
+               }
+            }
+         }
+
+         double density = (double) surviving / ((double) sizeOfLayers[n] * sizeOfLayers[n + 1]);
+         if (pruned != null && density <= SPARSE_DENSITY_THRESHOLD)
+         {
+            sparseLayers[n] = new SparseLayer(weights[n], pruned[n]);
+         }
+
+         summary += "Layer " + n + ": Density = " + density + " (" + (isSparse(n) ? "sparse" : "dense") + ")\n";
+      } // for (int n = 0; n < numOfLayers; n++)
+
+      return summary;
+   } // public String chooseExecution()
+
+   /**
+    * Checks if a connectivity layer is run with the sparse kernel.
+    *
+    * @param n the connectivity layer
+    * @return true if the layer has a sparse form, otherwise false
+    */
+   private boolean isSparse(int n)
+   {
+      return sparseLayers != null && sparseLayers[n] != null;
+   }
+
+   /**
+    * Factorizes each connectivity layer that is given a rank into two thinner matrices, replacing its weights with the
+    * closest matrix of that rank. A layer is only factorized if its factors hold fewer values than its dense weights,
+    * since otherwise it would be both larger and slower. The two-step multiplication of each factorized layer is timed
+    * against the dense multiplication it replaces, and the error at a few lower ranks is estimated from the singular
+    * values, so the report shows how much more each layer could be cut.
+    *
+    * @param ranks the rank of each connectivity layer, or 0 to leave a layer dense
+    * @return the rank, error, size and speed of each layer
+    */
+   public String factorize(int[] ranks)
+   {
+      requireHeapWeights();
+      if (pruned != null)
+      {
+         throw new IllegalStateException("A pruned network cannot be factorized");
+      }
+      if (ranks.length != numOfLayers)
+      {
+         throw new IllegalArgumentException("Got " + ranks.length + " ranks for " + numOfLayers + " layers");
+      }
+
+      lowRankLayers = new LowRankLayer[numOfLayers];
+      Random random = new Random(config.seed);
+      String report = "";
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         long denseSize = (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+         long lowRankSize = (long) ranks[n] * (sizeOfLayers[n] + sizeOfLayers[n + 1]);
+         if (ranks[n] <= 0 || lowRankSize >= denseSize)
+         {
+            report += "Layer " + n + ": Dense" + (ranks[n] > 0 ? " (rank " + ranks[n] + " would not be smaller)" : "") +
+                      "\n";
+            continue;
+         }
+
+         LowRankLayer layer = new LowRankLayer(weights[n], ranks[n], config.seed + n);
+         lowRankLayers[n] = layer;
+
+         // Time the dense and factorized multiplications on the same random input
+         double[] input = new double[sizeOfLayers[n]];
+         double[] output = new double[sizeOfLayers[n + 1]];
+         for (int j = 0; j < input.length; j++)
+         {
+            input[j] = random.nextDouble();
+         }
+         int layerIndex = n;
+         int repeats = (int) Math.max(100, 100_000_000L / denseSize);
+         double denseMicros = timeRepeats(() -> weightStore.multiply(layerIndex, input, output), repeats) / 1e3;
+         double lowRankMicros = timeRepeats(() -> layer.multiply(input, output), repeats) / 1e3;
+
+         report += "Layer " + n + ": Rank = " + ranks[n] + ", Error = " + layer.getError() + ", Size = " +
+                   lowRankSize + " of " + denseSize + ", Dense = " + denseMicros + " us, Low Rank = " + lowRankMicros +
+                   " us (" + denseMicros / lowRankMicros + "x)\n";
+         for (int k = ranks[n] / 2; k >= Math.max(1, ranks[n] / 8); k /= 2)
+         {
+            report += "   Rank " + k + ": Estimated Error = " + layer.estimateError(k) + ", Size = " +
+                      (long) k * (sizeOfLayers[n] + sizeOfLayers[n + 1]) + "\n";
+         }
+      } // for (int n = 0; n < numOfLayers; n++)
+
+      return report;
+   } // public String factorize(int[] ranks)
+
+   /**
+    * Makes the factors of every factorized layer again from the dense weights, after the dense weights have been set
+    * back to an earlier copy. Those weights already have the rank of the factors, so the product does not change.
+    */
+   private void refactorize()
+   {
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         if (isLowRank(n))
+         {
+            lowRankLayers[n] = new LowRankLayer(weights[n], lowRankLayers[n].getRank(), config.seed + n);
+         }
+      }
+   }
+
+   /**
+    * Runs some work a number of times in each of several rounds and times the fastest round, so that the time is not
+    * thrown off by the work being compiled while it runs.
+    *
+    * @param work    the work to run
+    * @param repeats the number of times to run it each round
+    * @return the average time each run took in the fastest round, in nanoseconds
+    */
+   private static double timeRepeats(Runnable work, int repeats)
+   {
+      long fastest = Long.MAX_VALUE;
+      for (int round = 0; round < TIMING_ROUNDS; round++)
+      {
+         long start = System.nanoTime();
+         for (int r = 0; r < repeats; r++)
+         {
+            work.run();
+         }
+         fastest = Math.min(fastest, System.nanoTime() - start);
+      }
+      return (double) fastest / repeats;
+   }
+
+   /**
+    * Checks if a connectivity layer is run as two factors.
+    *
+    * @param n the connectivity layer
+    * @return true if the layer has a factorized form, otherwise false
+    */
+   private boolean isLowRank(int n)
+   {
+      return lowRankLayers != null && lowRankLayers[n] != null;
+   }
+
+   /**
+    * Checks if the network has been pruned or factorized, which the parallel and full-batch trainers do not support.
+    *
+    * @return true if the network has a pruning mask or factorized layers
+    */
+   private boolean isCompressed()
+   {
+      return pruned != null || lowRankLayers != null;
+   }
+
    /**
     * This is the function used to calculate the output of each activation node.
     *
     * @param x the input for the node
     * @return the function applied to the input
     */
-   private double outputFunction(double x)
+   static double outputFunction(double x)
    {
 //      return x;
       return 1.0 / (1.0 + Math.exp(-x));
@@ -454,7 +1899,7 @@ public class NeuralNet
     * @param x the input for the node
     * @return the derivative of the output function
     */
-   private double outputFunctionPrime(double x)
+   static double outputFunctionPrime(double x)
    {
 //      return 1.0;
       return outputFunction(x) * (1.0 - outputFunction(x));
@@ -0,0 +1,261 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Off-Heap Weight Store
+ *
+ * A weight store that keeps the weights in native memory, outside of the Java heap. The garbage collector never scans
+ * native memory, so even very large networks do not make garbage collection pauses longer or need a larger heap.
+ *
+ * Each connectivity layer is a single block of native memory aligned to a cache line. The weights in a block are
+ * stored transposed, with all the weights going into one unit of the next layer next to each other, so that the
+ * weighted sum for each unit reads memory in order.
+ *
+ * The memory allocated by the store is freed as soon as the store is closed, through the cleaner of each direct
+ * buffer, instead of whenever the garbage collector happens to find the buffers unreachable. If the JVM does not allow
+ * the cleaner to be called, the memory is left for the garbage collector to free. Either way, the store throws an
+ * IllegalStateException if it is used after it is closed, and it must not be closed while another thread is using it.
+ *
+ * Methods in this class:
+ * int[]        getSizeOfLayers(double[][][] weights)
+ * ByteBuffer   allocate(long size)
+ * MethodHandle findCleaner()
+ * void         multiplyBlock(int n, double[] input, double[] output, int from, int to)
+ * DoubleBuffer getLayer(int n)
+ * void         free(ByteBuffer block)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class OffHeapWeightStore implements WeightStore
+{
+   static final int ALIGNMENT = 64;           // the number of bytes each layer is aligned to, the size of a cache line
+
+   // the largest number of doubles a layer can hold, so that it and its alignment fit in one buffer
+   private static final long MAX_LAYER_SIZE = (Integer.MAX_VALUE - ALIGNMENT + 1) / Double.BYTES;
+   private static final MethodHandle CLEANER = findCleaner(); // frees a direct buffer, or null if it cannot be called
+
+   private final int[] sizeOfLayers;          // number of units in each activation layer
+   private DoubleBuffer[] layers;             // the weights of each layer, stored as layers[n].get(i * rows + j)
+   private ByteBuffer[] memory;               // the blocks allocated by this store, or null if it allocated none
+
+   /**
+    * Creates a weight store over blocks of memory that already hold the weights of each layer, stored transposed.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @param layers       the weights of each layer, stored as layers[n].get(i * rows + j)
+    */
+   protected OffHeapWeightStore(int[] sizeOfLayers, DoubleBuffer[] layers)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+      this.layers = layers;
+   }
+
+   /**
+    * Creates an off-heap weight store with every weight set to zero.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    */
+   public OffHeapWeightStore(int[] sizeOfLayers)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+
+      layers = new DoubleBuffer[sizeOfLayers.length - 1];
+      memory = new ByteBuffer[layers.length];
+      for (int n = 0; n < layers.length; n++)
+      {
+         memory[n] = allocate((long) sizeOfLayers[n] * sizeOfLayers[n + 1]);
+         layers[n] = memory[n].alignedSlice(ALIGNMENT).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+   }
+
+   /**
+    * Creates an off-heap weight store with a copy of the given weights.
+    *
+    * @param weights the weights to copy, indexed as weights[n][j][i]
+    */
+   public OffHeapWeightStore(double[][][] weights)
+   {
+      this(getSizeOfLayers(weights));
+
+      for (int n = 0; n < weights.length; n++)
+      {
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               set(n, j, i, weights[n][j][i]);
+            }
+         }
+      }
+   }
+
+   /**
+    * Finds the number of units in each activation layer from the shape of a weights array.
+    *
+    * @param weights the weights, indexed as weights[n][j][i]
+    * @return the size of each activation layer
+    */
+   private static int[] getSizeOfLayers(double[][][] weights)
+   {
+      int[] sizeOfLayers = new int[weights.length + 1];
+      for (int n = 0; n < weights.length; n++)
+      {
+         sizeOfLayers[n] = weights[n].length;
+      }
+      sizeOfLayers[weights.length] = weights[weights.length - 1][0].length;
+      return sizeOfLayers;
+   }
+
+   /**
+    * Allocates a block of native memory with room for the given number of doubles after it is aligned to a cache line.
+    *
+    * @param size the number of doubles in the block
+    * @return the block, with every byte set to zero
+    */
+   private static ByteBuffer allocate(long size)
+   {
+      if (size > MAX_LAYER_SIZE)
+      {
+         throw new IllegalArgumentException("A layer of " + size + " weights is larger than the " + MAX_LAYER_SIZE +
+                                            " that fit in one block of native memory");
+      }
+      return ByteBuffer.allocateDirect((int) (size * Double.BYTES + ALIGNMENT - 1));
+   }
+
+   /**
+    * Finds Unsafe.invokeCleaner, which frees the memory of a direct buffer straight away. It is looked up by
+    * reflection, since it is not part of the standard API.
+    *
+    * @return a handle that takes the buffer to free, or null if the JVM does not allow it
+    */
+   private static MethodHandle findCleaner()
+   {
+      try
+      {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         Field field = unsafeClass.getDeclaredField("theUnsafe");
+         field.setAccessible(true);
+         return MethodHandles.lookup()
+                             .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class,
+                                                                                              ByteBuffer.class))
+                             .bindTo(field.get(null));
+      }
+      catch (ReflectiveOperationException | RuntimeException e)
+      {
+         return null;
+      }
+   } // private static MethodHandle findCleaner()
+
+   public int[] getSizeOfLayers()
+   {
+      return sizeOfLayers;
+   }
+
+   public double get(int n, int j, int i)
+   {
+      return getLayer(n).get(i * sizeOfLayers[n] + j);
+   }
+
+   public void set(int n, int j, int i, double value)
+   {
+      getLayer(n).put(i * sizeOfLayers[n] + j, value);
+   }
+
+   public void multiply(int n, double[] input, double[] output)
+   {
+      multiplyBlock(n, input, output, 0, sizeOfLayers[n + 1]);
+   }
+
+   public void multiply(int n, double[] input, double[] output, ParallelKernels kernels)
+   {
+      kernels.forBlocks(sizeOfLayers[n + 1], ParallelKernels.OUTPUT_BLOCK, (long) sizeOfLayers[n] * sizeOfLayers[n + 1],
+                        (from, to) -> multiplyBlock(n, input, output, from, to));
+   }
+
+   /**
+    * Finds the weighted sums for a block of units of the next layer. Each unit's weights are next to each other, so
+    * each sum reads one run of memory in order.
+    *
+    * @param n      the connectivity layer
+    * @param input  the activations of the previous layer
+    * @param output the array to put the weighted sums into
+    * @param from   the first unit of the next layer in the block
+    * @param to     one past the last unit of the next layer in the block
+    */
+   private void multiplyBlock(int n, double[] input, double[] output, int from, int to)
+   {
+      DoubleBuffer layer = getLayer(n);
+      int rows = sizeOfLayers[n];
+      for (int i = from; i < to; i++)
+      {
+         int start = i * rows;
+         double sum = 0.0;
+         for (int j = 0; j < rows; j++)
+         {
+            sum += layer.get(start + j) * input[j];
+         }
+         output[i] = sum;
+      }
+   }
+
+   /**
+    * Gets the memory of a connectivity layer, checking that the store has not been closed.
+    *
+    * @param n the connectivity layer
+    * @return the buffer holding the weights of the layer
+    */
+   private DoubleBuffer getLayer(int n)
+   {
+      if (layers == null)
+      {
+         throw new IllegalStateException("The weight store has been closed");
+      }
+      return layers[n];
+   }
+
+   /**
+    * Closes the store, freeing the memory it allocated straight away if the JVM allows it. Layers the store was given,
+    * such as mapped files, are only dropped, and are released once the garbage collector finds them unreachable.
+    */
+   public void close()
+   {
+      layers = null;
+      if (memory != null)
+      {
+         for (ByteBuffer block : memory)
+         {
+            free(block);
+         }
+         memory = null;
+      }
+   }
+
+   /**
+    * Frees the memory of a direct buffer, if the cleaner can be called. Otherwise, the memory is freed once the garbage
+    * collector finds the buffer unreachable.
+    *
+    * @param block the buffer, which must not be used again
+    */
+   private static void free(ByteBuffer block)
+   {
+      if (CLEANER == null)
+      {
+         return;
+      }
+      try
+      {
+         CLEANER.invokeExact(block);
+      }
+      catch (Throwable e)
+      {
+         // The buffer could not be freed now, so it is left for the garbage collector
+      }
+   } // private static void free(ByteBuffer block)
+
+} // public class OffHeapWeightStore
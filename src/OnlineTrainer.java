@@ -0,0 +1,359 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Online Trainer
+ *
+ * Trains a neural network continuously on training cases that keep arriving in a directory, instead of on a fixed set
+ * loaded up front. The work is split between three threads, so that new data never stalls training:
+ *
+ * The ingest thread watches the directory. Every file already in it, and every file that appears later, is decoded
+ * and its cases are added to a bounded replay buffer, which drops the oldest cases once it is full. A bitmap becomes
+ * one case that is both the input and the expected output, like the cases made by the image training file, and any
+ * other file is read as a training data file. Cases that do not match the sizes of the first case are skipped.
+ *
+ * The training thread creates the network once the first case arrives, warm-starting it if the configuration says so,
+ * then trains it over and over on batches sampled at random from the replay buffer, one epoch per batch.
+ *
+ * The snapshot thread publishes the weights at a fixed interval. It only asks for a snapshot: the training thread
+ * copies the weights between two batches, which takes far less time than a batch, and the snapshot thread writes the
+ * copy to a temporary file and renames it over the weights file, so readers never see half a file. While a snapshot
+ * is still being written, the next one is put off. A final snapshot is written when the trainer is closed.
+ *
+ * A file is read as soon as it appears, so files should be moved into the directory once they are complete. Hidden
+ * files and files ending in .tmp or .part are ignored, so a file can also be written under such a name and renamed.
+ *
+ * Methods in this class:
+ * void         start()
+ * void         close()
+ * void         ingest()
+ * void         ingestFile(Path file)
+ * double[][][] decode(Path file)
+ * void         train()
+ * void         copySnapshot(double[][][] batch)
+ * void         writeSnapshot()
+ * void         main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class OnlineTrainer
+{
+   private static final long IDLE_MILLIS = 10;    // how long the training thread waits for the first case
+
+   private final TrainingConfig config;           // the configuration, with the buffer, batch and snapshot sizes
+   private final Path directory;                  // the directory new training files arrive in
+   private final String weightsFile;              // where the snapshots are published
+   private final PrintStream output;              // where each snapshot is reported
+
+   private final ReplayBuffer buffer;             // the most recent cases, written by the ingest thread
+   private final WatchService watcher;            // tells the ingest thread about new files
+   private final Thread ingestThread;
+   private final Thread trainThread;
+   private final ScheduledExecutorService snapshotThread;
+
+   private volatile boolean running = true;                           // false once the trainer is closed
+   private final AtomicBoolean snapshotRequested = new AtomicBoolean(); // set by the snapshot thread
+   private final AtomicBoolean snapshotWriting = new AtomicBoolean();   // true while a copy is waiting to be written
+
+   private int[] caseSizes;                       // the input and output sizes of the first case, for ingesting
+   private volatile NeuralNet nn;                 // the network being trained, or null before the first case
+   private NeuralNet snapshot;                    // the copy of the weights that is written out
+   private long batches;                          // the number of batches trained, for the training thread
+   private int snapshots;                         // the number of snapshots written, for the snapshot thread
+
+   /**
+    * Creates a trainer for the given directory. Nothing happens until it is started.
+    *
+    * @param config      the configuration of the network and of online training
+    * @param directory   the directory that new training files arrive in
+    * @param weightsFile the file each snapshot of the weights is published to
+    * @param output      where each snapshot is reported
+    */
+   public OnlineTrainer(TrainingConfig config, String directory, String weightsFile, PrintStream output)
+      throws IOException
+   {
+      if (config.convLayers != null && config.mappedWeightsFile != null)
+      {
+         throw new IllegalArgumentException("A mapped weights file cannot hold convolutional layers");
+      }
+      this.config = config.with("PRINTING_RATE", "0");
+      this.directory = Paths.get(directory);
+      this.weightsFile = weightsFile;
+      this.output = output;
+
+      buffer = new ReplayBuffer(config.replayBufferSize);
+      watcher = this.directory.getFileSystem().newWatchService();
+      this.directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+      ingestThread = new Thread(this::ingest, "online-ingest");
+      trainThread = new Thread(this::train, "online-train");
+      snapshotThread = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "online-snapshot"));
+   } // public OnlineTrainer(TrainingConfig config, String directory, String weightsFile, PrintStream output)
+
+   /**
+    * Starts ingesting, training and taking snapshots.
+    */
+   public void start()
+   {
+      ingestThread.start();
+      trainThread.start();
+      snapshotThread.scheduleAtFixedRate(() -> snapshotRequested.set(true), config.snapshotInterval,
+                                         config.snapshotInterval, TimeUnit.SECONDS);
+   }
+
+   /**
+    * Stops every thread, then writes a final snapshot of the weights if any training was done.
+    */
+   public void close() throws IOException, InterruptedException
+   {
+      running = false;
+      watcher.close();
+      ingestThread.join();
+      trainThread.join();
+      snapshotThread.shutdown();
+      snapshotThread.awaitTermination(1, TimeUnit.MINUTES);
+
+      if (nn != null)
+      {
+         snapshot.copyWeightsFrom(nn);
+         writeSnapshot();
+         output.println("Final Snapshot: " + batches + " batches trained");
+      }
+   } // public void close()
+
+   /**
+    * Runs on the ingest thread: reads every file already in the directory, then every file that appears in it, until
+    * the trainer is closed.
+    */
+   private void ingest()
+   {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+      {
+         for (Path file : files)
+         {
+            ingestFile(file);
+         }
+
+         while (running)
+         {
+            WatchKey key = watcher.take();
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+               if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+               {
+                  ingestFile(directory.resolve((Path) event.context()));
+               }
+            }
+            key.reset();
+         }
+      } // try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+      catch (ClosedWatchServiceException | InterruptedException e)
+      {
+         // The trainer was closed while waiting for a file
+      }
+      catch (IOException e)
+      {
+         output.println("Could not read " + directory + ": " + e);
+      }
+   } // private void ingest()
+
+   /**
+    * Decodes one file and adds its cases to the replay buffer. A file that cannot be read, or whose cases do not
+    * have the same sizes as the first case, is skipped, and a file that is still being written is ignored.
+    *
+    * @param file the file to read
+    */
+   private void ingestFile(Path file)
+   {
+      String name = file.getFileName().toString();
+      if (name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part"))
+      {
+         return;
+      }
+
+      try
+      {
+         double[][][] cases = decode(file);
+         if (caseSizes == null)
+         {
+            caseSizes = new int[] {cases[0][0].length, cases[0][1].length};
+         }
+         for (double[][] trainingCase : cases)
+         {
+            if (trainingCase[0].length == caseSizes[0] && trainingCase[1].length == caseSizes[1])
+            {
+               buffer.add(trainingCase);
+            }
+            else
+            {
+               output.println("Skipped a case in " + file + ": it does not have " + caseSizes[0] + " inputs and " +
+                              caseSizes[1] + " outputs");
+            }
+         }
+      } // try
+      catch (IOException | RuntimeException e)
+      {
+         output.println("Skipped " + file + ": " + e);
+      }
+   } // private void ingestFile(Path file)
+
+   /**
+    * Reads the cases in a file. A bitmap is turned to gray scale and becomes one case that is both the input and the
+    * expected output, and any other file is read as a training data file.
+    *
+    * @param file the file to read
+    * @return the cases in the file
+    */
+   static double[][][] decode(Path file) throws IOException
+   {
+      String name = file.toString();
+      if (!name.toLowerCase().endsWith(".bmp"))
+      {
+         return Main.getTrainingData(name);
+      }
+
+      ImageWrapper image = new ImageWrapper(name);
+      TrainingMetrics.get().addBytesRead(new File(name).length());
+      image.toGrayScale();
+      double[] pels = image.toDoubleArray();
+      return new double[][][] {{pels, pels}};
+   } // static double[][][] decode(Path file)
+
+   /**
+    * Runs on the training thread: waits for the first case, creates the network, then trains it on one batch after
+    * another until the trainer is closed, copying the weights whenever a snapshot is asked for.
+    */
+   private void train()
+   {
+      try
+      {
+         double[][][] batch = new double[config.onlineBatchSize][][];
+         SplittableRandom random = new SplittableRandom(config.seed);
+         while (running && buffer.sample(batch, random) == 0)
+         {
+            Thread.sleep(IDLE_MILLIS);
+         }
+         if (!running)
+         {
+            return;
+         }
+
+         NeuralNet network = new NeuralNet(config.getLayerSizes(batch), config);
+         double learningRate = Main.warmStart(network, config, output);
+         snapshot = new NeuralNet(config.getLayerSizes(batch), config);
+         snapshot.setOptimizer(new SGDOptimizer()); // never trained, so copying weights into it needs no state
+         nn = network;
+
+         while (running)
+         {
+            buffer.sample(batch, random);
+            nn.train(batch, learningRate, config.lambdaMult, 1);
+            if (nn.getFinalLearningRate() > 0.0)
+            {
+               learningRate = nn.getFinalLearningRate();
+            }
+            batches++;
+
+            if (snapshotRequested.get() && snapshotWriting.compareAndSet(false, true))
+            {
+               snapshotRequested.set(false);
+               copySnapshot(batch);
+            }
+         } // while (running)
+      } // try
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch (IOException | RuntimeException e)
+      {
+         output.println("Online training stopped: " + e);
+      }
+   } // private void train()
+
+   /**
+    * Copies the weights into the snapshot network on the training thread, then hands the copy to the snapshot thread
+    * to be written out.
+    *
+    * @param batch the last batch trained on, used to report the error
+    */
+   private void copySnapshot(double[][][] batch)
+   {
+      snapshot.copyWeightsFrom(nn);
+      String report = "Batches: " + batches + ", Buffered Cases: " + buffer.size() + ", Batch Error: " +
+                      Math.sqrt(nn.calculateError(batch));
+
+      snapshotThread.execute(() ->
+      {
+         try
+         {
+            writeSnapshot();
+            output.println("Snapshot " + snapshots + ": " + report);
+         }
+         catch (IOException e)
+         {
+            output.println("Could not write snapshot: " + e);
+         }
+         finally
+         {
+            snapshotWriting.set(false);
+         }
+      });
+   } // private void copySnapshot(double[][][] batch)
+
+   /**
+    * Writes the snapshot network to a temporary file and renames it over the weights file in one step, then publishes
+    * it to the mapped weights file if one is configured.
+    */
+   private void writeSnapshot() throws IOException
+   {
+      String temporaryFile = weightsFile + ".tmp";
+      snapshot.storeWeights(temporaryFile);
+      Files.move(Paths.get(temporaryFile), Paths.get(weightsFile), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      if (config.mappedWeightsFile != null)
+      {
+         MappedWeightStore.write(snapshot.getWeightStore(), config.mappedWeightsFile);
+      }
+      snapshots++;
+   } // private void writeSnapshot()
+
+   /**
+    * Trains online until the JVM is stopped, for example with Ctrl-C, and then writes a final snapshot. The arguments
+    * are the config file, the directory to watch and the weights file to publish snapshots to.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      OnlineTrainer trainer = new OnlineTrainer(new TrainingConfig(args[0]), args[1], args[2], System.out);
+      Runtime.getRuntime().addShutdownHook(new Thread(() ->
+      {
+         try
+         {
+            trainer.close();
+         }
+         catch (IOException | InterruptedException e)
+         {
+            System.out.println("Could not write the final snapshot: " + e);
+         }
+      }));
+      trainer.start();
+   } // public static void main(String[] args)
+
+} // public class OnlineTrainer
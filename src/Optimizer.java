@@ -0,0 +1,90 @@
+import java.util.function.DoubleSupplier;
+
+/**
+ * Optimizer
+ *
+ * An optimizer decides how the weights of a neural network change during training. The neural network finds the
+ * descent direction for each weight during backprop, which is the activation of the previous unit times psi of the
+ * next unit, and then passes it to the optimizer, which changes the weight. Any state the optimizer needs for each
+ * weight is kept in arrays that are allocated once in initialize, so that no memory is allocated while training.
+ *
+ * Most optimizers change the weights after every training case. A full-batch optimizer instead collects the descent
+ * directions for every training case without changing any weights, and then changes all the weights at once when
+ * endBatch is called.
+ *
+ * Methods in this interface:
+ * void    initialize(double[][][] weights)
+ * void    startStep()
+ * void    updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate)
+ * double  delta(int n, int j, int i, double descent, double learningRate)
+ * boolean isFullBatch()
+ * double  endBatch(DoubleSupplier loss)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public interface Optimizer
+{
+   /**
+    * Allocates the state of the optimizer for the given weights. This is called whenever the weights of the network
+    * are created, and it resets any state the optimizer had before.
+    *
+    * @param weights the weights of the network, indexed as weights[n][j][i]
+    */
+   void initialize(double[][][] weights);
+
+   /**
+    * Called once at the start of each backprop step, before any weights are changed.
+    */
+   void startStep();
+
+   /**
+    * Changes every weight leaving unit j of connectivity layer n. The descent direction of weight i in the row is the
+    * activation times psi[i].
+    *
+    * @param n            the connectivity layer
+    * @param j            the unit in the previous activation layer
+    * @param weightRow    the weights leaving unit j, indexed by the unit in the next activation layer
+    * @param activation   the activation of unit j
+    * @param psi          the psi values of the next activation layer
+    * @param learningRate the current learning rate
+    */
+   void updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate);
+
+   /**
+    * Finds how much a single weight should change given its descent direction. This is used by layers that do not
+    * store their weights as dense rows.
+    *
+    * @param n            the connectivity layer
+    * @param j            the unit in the previous activation layer
+    * @param i            the unit in the next activation layer
+    * @param descent      the descent direction of the weight
+    * @param learningRate the current learning rate
+    * @return the amount to add to the weight
+    */
+   double delta(int n, int j, int i, double descent, double learningRate);
+
+   /**
+    * Checks if this optimizer changes the weights once per pass through the training data instead of once per
+    * training case.
+    *
+    * @return true if the optimizer is full-batch, otherwise false
+    */
+   default boolean isFullBatch()
+   {
+      return false;
+   }
+
+   /**
+    * Changes the weights using the descent directions collected over the whole batch. This is only called for
+    * full-batch optimizers.
+    *
+    * @param loss finds the loss of the network over the batch with the current weights
+    * @return the loss of the network after the weights are changed
+    */
+   default double endBatch(DoubleSupplier loss)
+   {
+      return loss.getAsDouble();
+   }
+
+} // public interface Optimizer
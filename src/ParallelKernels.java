@@ -0,0 +1,128 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel Kernels
+ *
+ * Splits the work of a single matrix operation, such as multiplying one layer of activations by the weights, into
+ * blocks that run at the same time on a dedicated ForkJoinPool. This lowers the latency of running the network on a
+ * single input, where there is no other work to run in parallel.
+ *
+ * The blocks are small enough that the part of the output each one writes stays in the cache while it runs. Forking
+ * has a cost, so an operation with less work than the threshold just runs on the calling thread, and small networks
+ * such as XOR never use the pool at all. Splitting an operation into blocks never changes the order in which any single
+ * output is added up, so the results are exactly the same as running it on one thread.
+ *
+ * There is one pool for each number of threads asked for, shared by every network in the JVM.
+ *
+ * Methods in this class:
+ * ParallelKernels get(int threads)
+ * void            forBlocks(int size, int blockSize, long work, BlockAction action)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class ParallelKernels
+{
+   /**
+    * The work done on one block of an operation.
+    */
+   public interface BlockAction
+   {
+      /**
+       * Does the work for every index from the first index up to, but not including, the last index.
+       *
+       * @param from the first index of the block
+       * @param to   one past the last index of the block
+       */
+      void run(int from, int to);
+   }
+
+   static final long PARALLEL_THRESHOLD = 1 << 16; // operations with fewer multiply-adds than this are not split
+   static final int OUTPUT_BLOCK = 64;             // output units per block, so a block's outputs fit in 512 bytes
+   static final int ROW_BLOCK = 16;                // weight rows per block when each row is changed on its own
+
+   private static final Map<Integer, ParallelKernels> KERNELS = new HashMap<>(); // the kernels for each thread count
+
+   private final ForkJoinPool pool;                // runs the blocks
+
+   /**
+    * Creates kernels that run on their own pool with the given number of threads.
+    *
+    * @param threads the number of threads in the pool
+    */
+   private ParallelKernels(int threads)
+   {
+      pool = new ForkJoinPool(threads);
+   }
+
+   /**
+    * Gets the kernels with the given number of threads, creating their pool the first time they are asked for.
+    *
+    * @param threads the number of threads
+    * @return the kernels shared by every network that asks for this many threads
+    */
+   public static synchronized ParallelKernels get(int threads)
+   {
+      return KERNELS.computeIfAbsent(threads, ParallelKernels::new);
+   }
+
+   /**
+    * Runs an action over every index from 0 up to the given size, split into blocks of the given size. If the
+    * operation has less work than the threshold, or fits in one block, the action runs on the calling thread over
+    * every index at once.
+    *
+    * @param size      the number of indices
+    * @param blockSize the number of indices in each block
+    * @param work      the number of multiply-adds in the whole operation
+    * @param action    the work done on each block
+    */
+   public void forBlocks(int size, int blockSize, long work, BlockAction action)
+   {
+      if (work < PARALLEL_THRESHOLD || size <= blockSize)
+      {
+         action.run(0, size);
+         return;
+      }
+      int numOfBlocks = (size + blockSize - 1) / blockSize;
+      pool.invoke(new BlockTask(0, numOfBlocks, size, blockSize, action));
+   }
+
+   /**
+    * Runs a range of blocks, splitting the range in half until there is only one block left.
+    */
+   private static class BlockTask extends RecursiveAction
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int firstBlock;    // the first block in the range
+      private final int lastBlock;     // one past the last block in the range
+      private final int size;          // the number of indices in the whole operation
+      private final int blockSize;     // the number of indices in each block
+      private final BlockAction action;
+
+      private BlockTask(int firstBlock, int lastBlock, int size, int blockSize, BlockAction action)
+      {
+         this.firstBlock = firstBlock;
+         this.lastBlock = lastBlock;
+         this.size = size;
+         this.blockSize = blockSize;
+         this.action = action;
+      }
+
+      protected void compute()
+      {
+         if (lastBlock - firstBlock == 1)
+         {
+            action.run(firstBlock * blockSize, Math.min(size, (firstBlock + 1) * blockSize));
+            return;
+         }
+         int middle = (firstBlock + lastBlock) >>> 1;
+         invokeAll(new BlockTask(firstBlock, middle, size, blockSize, action),
+                   new BlockTask(middle, lastBlock, size, blockSize, action));
+      }
+   } // private static class BlockTask extends RecursiveAction
+
+} // public class ParallelKernels
@@ -0,0 +1,456 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pipeline Trainer
+ *
+ * Trains a neural network with its connectivity layers split into stages, where each stage runs on its own thread. The
+ * training cases of an epoch are split into micro-batches, which flow forward from stage to stage and then backward
+ * again, so that while one stage works on a micro-batch, the stages before it can already work on the next ones. The
+ * stages hand micro-batches to each other through bounded lock-free queues, one for each direction between each pair
+ * of neighbouring stages.
+ *
+ * The layers are split so that each stage has about the same number of weights, and each stage only ever changes its
+ * own layers, so no two threads write to the same weights. Each stage has its own optimizer as well.
+ *
+ * The activations, theta, omega and psi of every case in flight are kept in a fixed number of slots, and a micro-batch
+ * always uses the slot given by its number, so nothing is allocated while training. Only the number of the micro-batch
+ * is passed through the queues: the stage that gets it reads the values the stage before it left in the slot. The first
+ * stage only lets as many micro-batches into the pipeline as there are slots, and once a stage has a micro-batch coming
+ * back, it always runs the backward step for it first.
+ *
+ * Like in PipeDream, each stage changes its weights as soon as the backward step for a case reaches it, so a case can
+ * go forward through weights that are a few cases older than the ones it comes back through. The difference is at most
+ * the number of micro-batches in flight.
+ *
+ * The time each stage spends working is kept, so the utilization of each stage and the pipeline bubble, the fraction of
+ * time the stages spend waiting, can be reported.
+ *
+ * Methods in this class:
+ * void   runEpoch(double[][][] trainingData, double learningRate)
+ * void   runStage(int s, double[][][] trainingData, int numOfMicroBatches, double learningRate)
+ * void   forward(int s, int microBatch, double[][][] trainingData)
+ * void   backward(int s, int microBatch, double[][][] trainingData, double learningRate)
+ * void   put(HandoffQueue queue, int microBatch)
+ * String getUtilizationReport()
+ * void   close()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class PipelineTrainer
+{
+   private static final int SPINS_BEFORE_YIELD = 100;   // how many times to spin while waiting before yielding
+
+   private final double[][][] weights;       // the weights being trained, indexed as weights[n][j][i]
+   private final int[] sizeOfLayers;         // number of units in each activation layer
+   private final int stages;                 // the number of stages
+   private final int[] firstLayer;           // the first connectivity layer of each stage, then the number of layers
+   private final Optimizer[] optimizers;     // the optimizer of each stage
+
+   private final int casesPerMicroBatch;     // the number of training cases in each micro-batch
+   private final int slots;                  // the number of micro-batches that can be in flight at once
+
+   // activations, theta, omega and psi of each case of each slot, indexed as [slot][case][layer][unit]
+   private final double[][][][] activations;
+   private final double[][][][] theta;
+   private final double[][][][] omega;
+   private final double[][][][] psi;
+
+   private final HandoffQueue[] forwardQueues;   // forwardQueues[s] goes from stage s to stage s + 1
+   private final HandoffQueue[] backwardQueues;  // backwardQueues[s] goes from stage s + 1 back to stage s
+   private final ExecutorService pool;           // runs the stages
+
+   private final long[] busyNanos;           // the time each stage has spent working
+   private long wallNanos;                   // the time spent running epochs
+   private volatile boolean failed;          // set when a stage throws, so the other stages stop waiting
+
+   /**
+    * Creates a pipeline for the given weights, with the number of stages and cases per micro-batch given in the
+    * configuration. There are never more stages than connectivity layers.
+    *
+    * @param weights the weights to train, indexed as weights[n][j][i]
+    * @param config  the configuration, with the number of stages and the size of each micro-batch
+    */
+   public PipelineTrainer(double[][][] weights, TrainingConfig config)
+   {
+      this.weights = weights;
+      int numOfLayers = weights.length;
+      sizeOfLayers = new int[numOfLayers + 1];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         sizeOfLayers[n] = weights[n].length;
+      }
+      sizeOfLayers[numOfLayers] = weights[numOfLayers - 1][0].length;
+
+      // Split the layers so each stage has about the same number of weights, with at least one layer each
+      stages = Math.min(config.pipelineStages, numOfLayers);
+      long total = 0;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         total += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+      }
+      firstLayer = new int[stages + 1];
+      int n = 0;
+      long sum = 0;
+      for (int s = 0; s < stages; s++)
+      {
+         firstLayer[s] = n;
+         do
+         {
+            sum += (long) sizeOfLayers[n] * sizeOfLayers[n + 1];
+            n++;
+         }
+         while (n < numOfLayers - (stages - 1 - s) && sum < total * (s + 1) / stages);
+      }
+      firstLayer[stages] = numOfLayers;
+
+      optimizers = new Optimizer[stages];
+      for (int s = 0; s < stages; s++)
+      {
+         optimizers[s] = config.createOptimizer();
+         optimizers[s].initialize(weights);
+      }
+
+      // Two micro-batches per stage keeps every stage busy once the pipeline is full
+      casesPerMicroBatch = config.pipelineMicroBatch;
+      slots = 2 * stages;
+      activations = new double[slots][casesPerMicroBatch][numOfLayers + 1][];
+      theta = new double[slots][casesPerMicroBatch][numOfLayers + 1][];
+      omega = new double[slots][casesPerMicroBatch][numOfLayers + 1][];
+      psi = new double[slots][casesPerMicroBatch][numOfLayers + 1][];
+      for (int slot = 0; slot < slots; slot++)
+      {
+         for (int c = 0; c < casesPerMicroBatch; c++)
+         {
+            for (int layer = 0; layer <= numOfLayers; layer++)
+            {
+               activations[slot][c][layer] = new double[sizeOfLayers[layer]];
+               theta[slot][c][layer] = new double[sizeOfLayers[layer]];
+               omega[slot][c][layer] = new double[sizeOfLayers[layer]];
+               psi[slot][c][layer] = new double[sizeOfLayers[layer]];
+            }
+         }
+      } // for (int slot = 0; slot < slots; slot++)
+
+      forwardQueues = new HandoffQueue[stages - 1];
+      backwardQueues = new HandoffQueue[stages - 1];
+      for (int s = 0; s < stages - 1; s++)
+      {
+         forwardQueues[s] = new HandoffQueue(slots);
+         backwardQueues[s] = new HandoffQueue(slots);
+      }
+
+      busyNanos = new long[stages];
+      pool = Executors.newFixedThreadPool(stages, r ->
+      {
+         Thread thread = new Thread(r, "pipeline-stage");
+         thread.setDaemon(true);
+         return thread;
+      });
+   } // public PipelineTrainer(double[][][] weights, TrainingConfig config)
+
+   /**
+    * Runs one epoch, sending every training case through the pipeline in micro-batches. Returns once every stage has
+    * finished the backward step for every micro-batch.
+    *
+    * @param trainingData the inputs and outputs for each training case
+    * @param learningRate the rate at which to change the weights
+    */
+   public void runEpoch(double[][][] trainingData, double learningRate)
+   {
+      int numOfMicroBatches = (trainingData.length + casesPerMicroBatch - 1) / casesPerMicroBatch;
+
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int s = 0; s < stages; s++)
+      {
+         int stage = s;
+         tasks.add(() ->
+         {
+            try
+            {
+               runStage(stage, trainingData, numOfMicroBatches, learningRate);
+            }
+            catch (RuntimeException | Error e)
+            {
+               failed = true;
+               throw e;
+            }
+            return null;
+         });
+      } // for (int s = 0; s < stages; s++)
+
+      long start = System.nanoTime();
+      try
+      {
+         for (Future<Void> result : pool.invokeAll(tasks))
+         {
+            result.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Pipeline training was interrupted", e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new IllegalStateException("A pipeline stage failed", e.getCause());
+      }
+      wallNanos += System.nanoTime() - start;
+   } // public void runEpoch(double[][][] trainingData, double learningRate)
+
+   /**
+    * Runs one stage until it has finished the backward step for every micro-batch. Whenever a micro-batch comes back
+    * from the next stage, its backward step runs first. Otherwise, the next micro-batch goes forward: the first stage
+    * takes it straight from the training data, as long as there is a free slot, and every other stage takes it from
+    * the stage before. The last stage runs the backward step for a micro-batch right after its forward step.
+    *
+    * @param s                 the stage to run
+    * @param trainingData      the inputs and outputs for each training case
+    * @param numOfMicroBatches the number of micro-batches in the epoch
+    * @param learningRate      the rate at which to change the weights
+    */
+   private void runStage(int s, double[][][] trainingData, int numOfMicroBatches, double learningRate)
+   {
+      boolean isFirst = s == 0;
+      boolean isLast = s == stages - 1;
+      int forwarded = 0;
+      int finished = 0;
+      int spins = 0;
+
+      while (finished < numOfMicroBatches && !failed)
+      {
+         // A micro-batch coming back always goes first, so the slots are freed as soon as possible
+         int microBatch = isLast ? -1 : backwardQueues[s].poll();
+         if (microBatch >= 0)
+         {
+            long start = System.nanoTime();
+            backward(s, microBatch, trainingData, learningRate);
+            busyNanos[s] += System.nanoTime() - start;
+            if (!isFirst)
+            {
+               put(backwardQueues[s - 1], microBatch);
+            }
+            finished++;
+            spins = 0;
+            continue;
+         }
+
+         // Otherwise, take the next micro-batch going forward, if there is one
+         if (forwarded < numOfMicroBatches)
+         {
+            if (isFirst)
+            {
+               microBatch = forwarded - finished < slots ? forwarded : -1;
+            }
+            else
+            {
+               microBatch = forwardQueues[s - 1].poll();
+            }
+         }
+         if (microBatch >= 0)
+         {
+            long start = System.nanoTime();
+            forward(s, microBatch, trainingData);
+            if (isLast)
+            {
+               backward(s, microBatch, trainingData, learningRate);
+               busyNanos[s] += System.nanoTime() - start;
+               if (!isFirst)
+               {
+                  put(backwardQueues[s - 1], microBatch);
+               }
+               finished++;
+            }
+            else
+            {
+               busyNanos[s] += System.nanoTime() - start;
+               put(forwardQueues[s], microBatch);
+            }
+            forwarded++;
+            spins = 0;
+            continue;
+         } // if (microBatch >= 0)
+
+         // Nothing to do, so wait for another stage
+         spins++;
+         if (spins < SPINS_BEFORE_YIELD)
+         {
+            Thread.onSpinWait();
+         }
+         else
+         {
+            Thread.yield();
+         }
+      } // while (finished < numOfMicroBatches && !failed)
+   } // private void runStage(int s, double[][][] trainingData, int numOfMicroBatches, double learningRate)
+
+   /**
+    * Runs the forward step of a stage for every case of a micro-batch, finding theta and the activations of each layer
+    * the stage owns from the activations the stage before it left in the slot.
+    *
+    * @param s            the stage
+    * @param microBatch   the number of the micro-batch
+    * @param trainingData the inputs and outputs for each training case
+    */
+   private void forward(int s, int microBatch, double[][][] trainingData)
+   {
+      int slot = microBatch % slots;
+      int firstCase = microBatch * casesPerMicroBatch;
+      int numOfCases = Math.min(casesPerMicroBatch, trainingData.length - firstCase);
+
+      for (int c = 0; c < numOfCases; c++)
+      {
+         double[][] a = activations[slot][c];
+         double[][] t = theta[slot][c];
+         if (s == 0)
+         {
+            a[0] = trainingData[firstCase + c][0];
+         }
+
+         for (int n = firstLayer[s]; n < firstLayer[s + 1]; n++)
+         {
+            // theta_i = sum of (a_j * w_ji)
+            double[] next = t[n + 1];
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               next[i] = 0.0;
+            }
+            for (int j = 0; j < sizeOfLayers[n]; j++)
+            {
+               double activation = a[n][j];
+               double[] row = weights[n][j];
+               for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+               {
+                  next[i] += row[i] * activation;
+               }
+            }
+
+            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            {
+               a[n + 1][i] = NeuralNet.outputFunction(next[i]);
+            }
+         } // for (int n = firstLayer[s]; n < firstLayer[s + 1]; n++)
+      } // for (int c = 0; c < numOfCases; c++)
+   } // private void forward(int s, int microBatch, double[][][] trainingData)
+
+   /**
+    * Runs the backward step of a stage for every case of a micro-batch, in the same way as backprop. Psi of the last
+    * layer the stage owns comes from the expected output for the last stage, or from the omega the next stage left in
+    * the slot. Omega is found for the first layer of the stage too, so the stage before it can go on from there.
+    *
+    * @param s            the stage
+    * @param microBatch   the number of the micro-batch
+    * @param trainingData the inputs and outputs for each training case
+    * @param learningRate the rate at which to change the weights
+    */
+   private void backward(int s, int microBatch, double[][][] trainingData, double learningRate)
+   {
+      int slot = microBatch % slots;
+      int firstCase = microBatch * casesPerMicroBatch;
+      int numOfCases = Math.min(casesPerMicroBatch, trainingData.length - firstCase);
+      Optimizer optimizer = optimizers[s];
+      int outputLayer = firstLayer[s + 1];
+
+      for (int c = 0; c < numOfCases; c++)
+      {
+         optimizer.startStep();
+         double[][] a = activations[slot][c];
+         double[][] t = theta[slot][c];
+         double[][] o = omega[slot][c];
+         double[][] p = psi[slot][c];
+
+         // psi_i = omega_i * f'(theta_i), where omega_i = T_i - a_i for the output layer
+         for (int i = 0; i < sizeOfLayers[outputLayer]; i++)
+         {
+            if (s == stages - 1)
+            {
+               o[outputLayer][i] = trainingData[firstCase + c][1][i] - a[outputLayer][i];
+            }
+            p[outputLayer][i] = o[outputLayer][i] * NeuralNet.outputFunctionPrime(t[outputLayer][i]);
+         }
+
+         for (int n = outputLayer - 1; n >= firstLayer[s]; n--)
+         {
+            for (int j = 0; j < sizeOfLayers[n]; j++)
+            {
+               if (n > 0)
+               {
+                  // omega_j = sum of (psi_I * w_jI)
+                  o[n][j] = 0.0;
+                  for (int I = 0; I < sizeOfLayers[n + 1]; I++)
+                  {
+                     o[n][j] += p[n + 1][I] * weights[n][j][I];
+                  }
+
+                  // psi_j = omega_j * f'(theta_j), unless the stage before owns layer n
+                  if (n > firstLayer[s])
+                  {
+                     p[n][j] = o[n][j] * NeuralNet.outputFunctionPrime(t[n][j]);
+                  }
+               } // if (n > 0)
+
+               // deltaWeights_ji = a_j * psi_i
+               optimizer.updateRow(n, j, weights[n][j], a[n][j], p[n + 1], learningRate);
+            } // for (int j = 0; j < sizeOfLayers[n]; j++)
+         } // for (int n = outputLayer - 1; n >= firstLayer[s]; n--)
+      } // for (int c = 0; c < numOfCases; c++)
+   } // private void backward(int s, int microBatch, double[][][] trainingData, double learningRate)
+
+   /**
+    * Puts a micro-batch into a queue, waiting for room if it is full. The first stage never lets more micro-batches
+    * into the pipeline than the queues can hold, so this only waits if a stage has failed.
+    *
+    * @param queue      the queue to put the micro-batch into
+    * @param microBatch the number of the micro-batch
+    */
+   private void put(HandoffQueue queue, int microBatch)
+   {
+      while (!queue.offer(microBatch) && !failed)
+      {
+         Thread.yield();
+      }
+   }
+
+   /**
+    * Gets the layers in each stage, the utilization of each stage, which is the fraction of the time spent running
+    * epochs that the stage was working, and the pipeline bubble, which is the fraction of time the stages spent
+    * waiting.
+    *
+    * @return the utilization report, one value per line
+    */
+   public String getUtilizationReport()
+   {
+      String layers = "";
+      for (int s = 0; s < stages; s++)
+      {
+         layers += (s == 0 ? "" : " | ") + firstLayer[s] + "-" + (firstLayer[s + 1] - 1);
+      }
+
+      String report = "Pipeline Stages: " + stages + " (layers " + layers + ")\n";
+      double totalUtilization = 0.0;
+      for (int s = 0; s < stages; s++)
+      {
+         double utilization = wallNanos == 0 ? 0.0 : (double) busyNanos[s] / wallNanos;
+         totalUtilization += utilization;
+         report += "Stage " + s + " Utilization: " + String.format("%.1f%%", 100.0 * utilization) + "\n";
+      }
+      report += "Pipeline Bubble: " + String.format("%.1f%%", 100.0 * (1.0 - totalUtilization / stages)) + "\n";
+      return report;
+   } // public String getUtilizationReport()
+
+   /**
+    * Stops the stage threads.
+    */
+   public void close()
+   {
+      pool.shutdown();
+   }
+
+} // public class PipelineTrainer
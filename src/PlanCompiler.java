@@ -0,0 +1,189 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Plan Compiler
+ *
+ * Compiles an unrolled execution plan for one topology at runtime. The source of a plan class is generated with every
+ * multiply-add of the forward pass written out, with each weight row and activation held in a local variable, and is
+ * compiled in memory with the system Java compiler. The class is then loaded as a hidden class, which can be unloaded
+ * once nothing uses it and never clashes with the plan of another topology.
+ *
+ * For a 2-2-1 network, the generated forward pass is:
+ *
+ * double[] w0_0 = w[0][0];
+ * ...
+ * double a0_0 = a[0][0];
+ * double a0_1 = a[0][1];
+ * double s;
+ * s = 0.0;
+ * s += w0_0[0] * a0_0;
+ * s += w0_1[0] * a0_1;
+ * t[1][0] = s;
+ * double a1_0 = NeuralNet.outputFunction(s);
+ * a[1][0] = a1_0;
+ * ...
+ *
+ * If a plan cannot be compiled, an IllegalStateException with the reason is thrown, and the network keeps running the
+ * interpreted blocked plan, which gives the same results.
+ *
+ * Methods in this class:
+ * ExecutionPlan compile(int[] sizeOfLayers)
+ * String        generateSource(String className, int[] sizeOfLayers)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class PlanCompiler
+{
+   private static final String CLASS_NAME = "UnrolledPlan";
+
+   private PlanCompiler()
+   {
+   }
+
+   /**
+    * Generates, compiles and loads the unrolled plan for a topology.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @return the plan
+    * @throws IllegalStateException if there is no compiler in this JVM or the plan could not be compiled, with why
+    */
+   public static ExecutionPlan compile(int[] sizeOfLayers)
+   {
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      if (compiler == null)
+      {
+         throw new IllegalStateException("there is no Java compiler in this JVM");
+      }
+
+      try
+      {
+         String source = generateSource(CLASS_NAME, sizeOfLayers);
+         JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"),
+                                                              JavaFileObject.Kind.SOURCE)
+         {
+            public CharSequence getCharContent(boolean ignoreEncodingErrors)
+            {
+               return source;
+            }
+         };
+
+         // Keep the class file in memory instead of writing it to disk
+         ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+         StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+         ForwardingJavaFileManager<StandardJavaFileManager> fileManager =
+            new ForwardingJavaFileManager<>(standardManager)
+            {
+               public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                          JavaFileObject.Kind kind, FileObject sibling)
+               {
+                  return new SimpleJavaFileObject(URI.create("bytes:///" + className + ".class"), kind)
+                  {
+                     public OutputStream openOutputStream()
+                     {
+                        return classBytes;
+                     }
+                  };
+               }
+            };
+
+         List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-g:none");
+         DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+         boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null, List.of(sourceFile)).call();
+         fileManager.close();
+         if (!compiled)
+         {
+            // Keep only the first error, on one line, so it fits in a report
+            String error = "no error was given";
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+            {
+               if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+               {
+                  error = diagnostic.getMessage(null).replaceAll("\\s+", " ").trim();
+                  break;
+               }
+            }
+            throw new IllegalStateException("compile error: " + error);
+         }
+
+         Class<?> planClass = MethodHandles.lookup().defineHiddenClass(classBytes.toByteArray(), true).lookupClass();
+         return (ExecutionPlan) planClass.getDeclaredConstructor().newInstance();
+      } // try
+      catch (IllegalStateException e)
+      {
+         throw e;
+      }
+      catch (Exception | LinkageError e)
+      {
+         throw new IllegalStateException(e.toString(), e);
+      }
+   } // public static ExecutionPlan compile(int[] sizeOfLayers)
+
+   /**
+    * Generates the source of the unrolled plan for a topology. Each weighted sum is added up in the same order as the
+    * generic loops, starting from zero and adding the weight from unit 0 of the previous layer first.
+    *
+    * @param className    the name of the class
+    * @param sizeOfLayers the number of units in each activation layer
+    * @return the source of the class
+    */
+   static String generateSource(String className, int[] sizeOfLayers)
+   {
+      StringBuilder sb = new StringBuilder();
+      sb.append("public final class ").append(className).append(" extends ExecutionPlan\n{\n");
+      sb.append("   public ").append(className).append("()\n   {\n   }\n\n");
+
+      sb.append("   public void forward(double[][][] w, double[][] t, double[][] a)\n   {\n");
+      for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      {
+         for (int j = 0; j < sizeOfLayers[n]; j++)
+         {
+            sb.append("      double[] w").append(n).append('_').append(j).append(" = w[").append(n).append("][")
+              .append(j).append("];\n");
+         }
+      }
+      for (int j = 0; j < sizeOfLayers[0]; j++)
+      {
+         sb.append("      double a0_").append(j).append(" = a[0][").append(j).append("];\n");
+      }
+      sb.append("      double s;\n");
+
+      for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      {
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            sb.append("      s = 0.0;\n");
+            for (int j = 0; j < sizeOfLayers[n]; j++)
+            {
+               sb.append("      s += w").append(n).append('_').append(j).append('[').append(i).append("] * a")
+                 .append(n).append('_').append(j).append(";\n");
+            }
+            sb.append("      t[").append(n + 1).append("][").append(i).append("] = s;\n");
+            sb.append("      double a").append(n + 1).append('_').append(i).append(" = NeuralNet.outputFunction(s);\n");
+            sb.append("      a[").append(n + 1).append("][").append(i).append("] = a").append(n + 1).append('_')
+              .append(i).append(";\n");
+         }
+      } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      sb.append("   }\n\n");
+
+      sb.append("   public String describe()\n   {\n");
+      sb.append("      return \"Unrolled plan for ").append(Arrays.toString(sizeOfLayers)).append("\";\n");
+      sb.append("   }\n}\n");
+      return sb.toString();
+   } // static String generateSource(String className, int[] sizeOfLayers)
+
+} // public class PlanCompiler
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reconstruction Exporter
+ *
+ * Runs every case of a dataset through an image network, usually an autoencoder, and writes the output of each case as
+ * a bitmap, so the quality of the reconstructions can be checked on the whole dataset instead of only the first case.
+ * The dataset is streamed in batches by the reader thread of EvaluationRunner, so it can be in any format that
+ * EvaluationRunner reads, including a list of bitmaps in the image training format. Each batch is run with the batched
+ * forward pass of the network, and then split between a pool of encoder threads, which turn the outputs into bitmaps
+ * while the network runs the next batch.
+ *
+ * Each output is turned into pels with ImageWrapper, the same way as the single output image of Main, and written in
+ * the same 32-bit layout as DibDump. DibDump keeps the header of a bitmap in static fields, so it cannot write several
+ * bitmaps at once; instead, each encoder thread has an encoder of its own that builds a whole bitmap, headers and pels,
+ * in one direct buffer and writes it to its file with a single channel write.
+ *
+ * The bitmaps are named reconstruction- followed by the index of the case, padded with zeros so they sort in order.
+ * If a number of columns is given, every output is also tiled, in order, into one contact sheet, contact-sheet.bmp.
+ *
+ * Methods in this class:
+ * String  export(String dataFile, String directory, int columns)
+ * void    encode(double[][] outputs, long first, int from, int to, Path directory, String names, int[][] sheet,
+ *                int columns)
+ * int[]   findImageSize(TrainingConfig config, int numOfOutputs)
+ * void    await(List<Future<?>> tasks)
+ * void    main(String[] args)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class ReconstructionExporter
+{
+   private static final int HEADER_SIZE = 54;       // the size of the file and info headers of a bitmap
+   private static final int INFO_HEADER_SIZE = 40;  // the size of the info header alone
+   private static final int BITMAP_TYPE = 0x4D42;   // "BM", read as a little-endian short
+   private static final int PELS_PER_METER = 2835;  // 72 pels per inch, both ways
+   private static final double MAX_PEL = 1.0 - 1.0 / (1 << 24); // the largest output ImageWrapper can hold
+   private static final String SHEET_NAME = "contact-sheet.bmp";
+   private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+   private static final ExecutorService ENCODERS = Executors.newFixedThreadPool(THREADS, r ->
+   {
+      Thread thread = new Thread(r, "bmp-encoder");
+      thread.setDaemon(true);
+      return thread;
+   });
+   private static final ThreadLocal<BitmapEncoder> ENCODER = ThreadLocal.withInitial(BitmapEncoder::new);
+
+   private final NeuralNet nn;
+   private final int outputLayer;                   // the activation layer of the outputs
+   private final int height;                        // the height of each output image
+   private final int width;                         // the width of each output image
+
+   /**
+    * Creates an exporter for a network whose outputs are images of the given size, which runs each batch on the given
+    * number of intra-op threads.
+    *
+    * @param nn      the network to run
+    * @param height  the height of each output image
+    * @param width   the width of each output image
+    * @param threads the number of threads to split each batch between, usually INTRA_OP_THREADS, or 1 to run each
+    *                batch on the calling thread
+    */
+   public ReconstructionExporter(NeuralNet nn, int height, int width, int threads)
+   {
+      int[] sizeOfLayers = nn.getWeightStore().getSizeOfLayers();
+      outputLayer = sizeOfLayers.length - 1;
+      if (height * width != sizeOfLayers[outputLayer])
+      {
+         throw new IllegalArgumentException("The network has " + sizeOfLayers[outputLayer] + " outputs, which is not " +
+                                            "a " + height + "x" + width + " image");
+      }
+
+      this.nn = nn;
+      this.height = height;
+      this.width = width;
+      nn.setParallelism(threads);
+   } // public ReconstructionExporter(NeuralNet nn, int height, int width, int threads)
+
+   /**
+    * Streams every case of a dataset through the network and writes the output of each case as a bitmap in a
+    * directory, which is made if it is not there. While one batch is run, the encoder threads write the bitmaps of the
+    * batch before it.
+    *
+    * @param dataFile  the dataset, in the training data, binary dataset or image training format
+    * @param directory the directory to write the bitmaps to
+    * @param columns   the number of images in each row of the contact sheet, or 0 to not make one
+    * @return a report of the number of bitmaps written and how fast
+    */
+   public String export(String dataFile, String directory, int columns) throws IOException
+   {
+      long start = System.nanoTime();
+      Path target = Files.createDirectories(Paths.get(directory));
+      long cases = 0;
+
+      try (EvaluationRunner.CaseReader reader = EvaluationRunner.open(dataFile);
+           EvaluationRunner.BatchReader batches = new EvaluationRunner.BatchReader(reader))
+      {
+         String names = "reconstruction-%0" + String.valueOf(Math.max(0, reader.numOfCases - 1)).length() + "d.bmp";
+         int rows = columns > 0 ? (reader.numOfCases + columns - 1) / columns : 0;
+         int[][] sheet = columns > 0 ? new int[rows * height][columns * width] : null;
+
+         List<Future<?>> pending = new ArrayList<>();
+         for (EvaluationRunner.Batch batch = batches.take(); batch.count > 0; batch = batches.take())
+         {
+            double[][] outputs = nn.propagateTo(batch.inputs, outputLayer);
+
+            // The bitmaps of the last batch were being written while this one ran
+            await(pending);
+            pending.clear();
+
+            long firstCase = batch.first;
+            int block = (batch.count + THREADS - 1) / THREADS;
+            for (int from = 0; from < batch.count; from += block)
+            {
+               int first = from;
+               int last = Math.min(batch.count, from + block);
+               pending.add(ENCODERS.submit(() ->
+               {
+                  encode(outputs, firstCase, first, last, target, names, sheet, columns);
+                  return null;
+               }));
+            }
+            cases += batch.count;
+         } // for (EvaluationRunner.Batch batch = batches.take(); batch.count > 0; batch = batches.take())
+         await(pending);
+
+         if (sheet != null && cases > 0)
+         {
+            new BitmapEncoder().write(sheet, target.resolve(SHEET_NAME));
+         }
+      } // try (EvaluationRunner.CaseReader reader = ...; EvaluationRunner.BatchReader batches = ...)
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      return "Wrote " + cases + " " + height + "x" + width + " reconstructions to " + target +
+             (columns > 0 && cases > 0 ? " and a contact sheet of " + columns + " columns" : "") + " in " + seconds +
+             " s, " + (long) (cases / seconds) + " images per second\n";
+   } // public String export(String dataFile, String directory, int columns)
+
+   /**
+    * Runs on an encoder thread: writes the outputs of some of the cases of a batch as bitmaps, and copies them into
+    * their places on the contact sheet. Each case has a place of its own on the sheet, so the threads never write to
+    * the same pels.
+    *
+    * @param outputs   the outputs of every case of the batch
+    * @param first     the index in the dataset of the first case of the batch
+    * @param from      the first case to write
+    * @param to        one past the last case to write
+    * @param directory the directory to write the bitmaps to
+    * @param names     the format of the name of each bitmap, given the index of its case
+    * @param sheet     the pels of the contact sheet, or null if there is none
+    * @param columns   the number of images in each row of the contact sheet
+    */
+   private void encode(double[][] outputs, long first, int from, int to, Path directory, String names, int[][] sheet,
+                       int columns) throws IOException
+   {
+      BitmapEncoder encoder = ENCODER.get();
+      for (int k = from; k < to; k++)
+      {
+         // An output of 1 would wrap around to black, so it is kept just under
+         double[] output = outputs[k];
+         for (int i = 0; i < output.length; i++)
+         {
+            output[i] = Math.min(MAX_PEL, Math.max(0.0, output[i]));
+         }
+
+         long index = first + k;
+         int[][] pels = new ImageWrapper(output, height, width).imageArray;
+         encoder.write(pels, directory.resolve(String.format(names, index)));
+
+         if (sheet != null)
+         {
+            int top = (int) (index / columns) * height;
+            int left = (int) (index % columns) * width;
+            for (int r = 0; r < height; r++)
+            {
+               System.arraycopy(pels[r], 0, sheet[top + r], left, width);
+            }
+         }
+      } // for (int k = from; k < to; k++)
+   } // private void encode(double[][] outputs, long first, int from, int to, Path directory, String names, ...)
+
+   /**
+    * Finds the size of the images a network outputs: the size given by CONV_INPUT if it matches the number of
+    * outputs, and otherwise a square.
+    *
+    * @param config       the configuration of the network
+    * @param numOfOutputs the number of outputs of the network
+    * @return the height and width of each output image
+    */
+   public static int[] findImageSize(TrainingConfig config, int numOfOutputs)
+   {
+      if (config.convInput != null)
+      {
+         String[] size = config.convInput.toLowerCase().split("x");
+         int height = Integer.parseInt(size[0].trim());
+         int width = Integer.parseInt(size[1].trim());
+         if (height * width == numOfOutputs)
+         {
+            return new int[] {height, width};
+         }
+      }
+
+      int side = (int) Math.round(Math.sqrt(numOfOutputs));
+      if (side * side != numOfOutputs)
+      {
+         throw new IllegalArgumentException("The " + numOfOutputs + " outputs are not a square image, so the size " +
+                                            "has to be given by CONV_INPUT");
+      }
+      return new int[] {side, side};
+   } // public static int[] findImageSize(TrainingConfig config, int numOfOutputs)
+
+   /**
+    * Waits for every task to finish.
+    *
+    * @param tasks the tasks
+    */
+   private static void await(List<Future<?>> tasks) throws IOException
+   {
+      try
+      {
+         for (Future<?> task : tasks)
+         {
+            task.get();
+         }
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof IOException)
+         {
+            throw (IOException) cause;
+         }
+         throw new IOException("Could not write a reconstruction", cause);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while writing the reconstructions", e);
+      }
+   } // private static void await(List<Future<?>> tasks)
+
+   /**
+    * Writes bitmaps for one thread, building each one in a direct buffer that is kept for the next bitmap and only
+    * grows when a bigger bitmap comes along.
+    */
+   private static class BitmapEncoder
+   {
+      private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+
+      /**
+       * Writes an image as a 32-bit bitmap, with its rows stored from the bottom up, as DibDump writes them.
+       *
+       * @param pels the pels of the image, indexed as pels[row][column]
+       * @param file the bitmap file
+       */
+      private void write(int[][] pels, Path file) throws IOException
+      {
+         int height = pels.length;
+         int width = pels[0].length;
+         int imageSize = height * width * Integer.BYTES;
+         if (buffer.capacity() < HEADER_SIZE + imageSize)
+         {
+            buffer = ByteBuffer.allocateDirect(HEADER_SIZE + imageSize).order(ByteOrder.LITTLE_ENDIAN);
+         }
+         buffer.clear();
+
+         // BITMAPFILEHEADER
+         buffer.putShort((short) BITMAP_TYPE).putInt(HEADER_SIZE + imageSize).putShort((short) 0).putShort((short) 0)
+               .putInt(HEADER_SIZE);
+
+         // BITMAPINFOHEADER, for a 32-bit image with no compression and no color table
+         buffer.putInt(INFO_HEADER_SIZE).putInt(width).putInt(height).putShort((short) 1).putShort((short) 32)
+               .putInt(0).putInt(imageSize).putInt(PELS_PER_METER).putInt(PELS_PER_METER).putInt(0).putInt(0);
+
+         // A little-endian int puts blue, green, red and the reserved byte in the order a bitmap stores them
+         for (int i = height - 1; i >= 0; i--)
+         {
+            for (int j = 0; j < width; j++)
+            {
+               buffer.putInt(pels[i][j] & 0x00FFFFFF);
+            }
+         }
+         buffer.flip();
+
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING))
+         {
+            while (buffer.hasRemaining())
+            {
+               channel.write(buffer);
+            }
+         }
+      } // private void write(int[][] pels, Path file)
+   } // private static class BitmapEncoder
+
+   /**
+    * Exports the reconstructions of a dataset. The arguments are the config file, the weights file, the dataset in any
+    * format EvaluationRunner reads, the directory to write the bitmaps to and, optionally, the number of columns of
+    * the contact sheet. The size of each image comes from CONV_INPUT in the config file, or is square.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      TrainingConfig config = new TrainingConfig(args[0]);
+      NeuralNet nn = Main.loadNetwork(config, args[1]);
+      int[] sizeOfLayers = nn.getWeightStore().getSizeOfLayers();
+      int[] size = findImageSize(config, sizeOfLayers[sizeOfLayers.length - 1]);
+
+      ReconstructionExporter exporter = new ReconstructionExporter(nn, size[0], size[1], config.intraOpThreads);
+      System.out.print(exporter.export(args[2], args[3], args.length > 4 ? Integer.parseInt(args[4]) : 0));
+      nn.close();
+   } // public static void main(String[] args)
+
+} // public class ReconstructionExporter
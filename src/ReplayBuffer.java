@@ -0,0 +1,84 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Replay Buffer
+ *
+ * A bounded buffer of training cases for one thread adding cases and any number of threads sampling from them. The
+ * cases are kept in a ring, and once it is full each new case replaces the oldest one, so the buffer always holds the
+ * most recent cases and its memory never grows.
+ *
+ * Neither side ever waits on a lock. The adding thread stores the case in its slot before publishing the new count, so
+ * a sampling thread only ever picks slots that already hold a case. A slot can be replaced while a case is being
+ * sampled from it, in which case the sample gets either the old or the new case, both of which are whole.
+ *
+ * Methods in this class:
+ * void add(double[][] trainingCase)
+ * int  sample(double[][][] batch, SplittableRandom random)
+ * int  size()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class ReplayBuffer
+{
+   private final AtomicReferenceArray<double[][]> cases; // the cases in the buffer, in a ring
+   private final AtomicLong added = new AtomicLong();      // the number of cases ever added, written by the producer
+
+   /**
+    * Creates an empty buffer that holds up to the given number of cases.
+    *
+    * @param capacity the largest number of cases kept at once
+    */
+   public ReplayBuffer(int capacity)
+   {
+      cases = new AtomicReferenceArray<>(capacity);
+   }
+
+   /**
+    * Adds a case to the buffer, replacing the oldest case if the buffer is full. Must only be called by the one
+    * thread adding cases.
+    *
+    * @param trainingCase the input and expected output of the case
+    */
+   public void add(double[][] trainingCase)
+   {
+      long count = added.get();
+      cases.set((int) (count % cases.length()), trainingCase);
+      added.lazySet(count + 1);
+   }
+
+   /**
+    * Fills a batch with cases picked at random from the buffer, with replacement. If the buffer is empty, the batch
+    * is left as it is.
+    *
+    * @param batch  the array to put the cases in
+    * @param random the random number generator of the sampling thread
+    * @return the number of cases put in the batch, which is either the length of the batch or 0
+    */
+   public int sample(double[][][] batch, SplittableRandom random)
+   {
+      int size = size();
+      if (size == 0)
+      {
+         return 0;
+      }
+      for (int c = 0; c < batch.length; c++)
+      {
+         batch[c] = cases.get(random.nextInt(size));
+      }
+      return batch.length;
+   }
+
+   /**
+    * Gets the number of cases in the buffer.
+    *
+    * @return the number of cases, which is never more than the capacity
+    */
+   public int size()
+   {
+      return (int) Math.min(added.get(), cases.length());
+   }
+
+} // public class ReplayBuffer
@@ -0,0 +1,36 @@
+/**
+ * SGD Optimizer
+ *
+ * Plain stochastic gradient descent. Each weight is changed by the learning rate times its descent direction after
+ * every training case. This optimizer has no state.
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class SGDOptimizer implements Optimizer
+{
+
+   public void initialize(double[][][] weights)
+   {
+   }
+
+   public void startStep()
+   {
+   }
+
+   public void updateRow(int n, int j, double[] weightRow, double activation, double[] psi, double learningRate)
+   {
+      // deltaWeights_ji = a_j * psi_i
+      double scaledActivation = learningRate * activation;
+      for (int i = 0; i < weightRow.length; i++)
+      {
+         weightRow[i] += scaledActivation * psi[i];
+      }
+   }
+
+   public double delta(int n, int j, int i, double descent, double learningRate)
+   {
+      return learningRate * descent;
+   }
+
+} // public class SGDOptimizer
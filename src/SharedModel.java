@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared Model
+ *
+ * A read-only model for scoring, served from a memory-mapped weights file. Every process on a machine that opens the
+ * same file shares one copy of the weights in the operating system's page cache, so the model takes almost no memory
+ * in each process, and opening it only maps the file.
+ *
+ * The model can be swapped for a new version of the file at any time. The new file is mapped first, and then the
+ * model switches to it in one atomic step, so every call to propagate uses either the old version or the new version
+ * and never a mix of both. Each thread runs its own neural net over the shared weights, since a neural net keeps its
+ * activations between calls.
+ *
+ * Methods in this class:
+ * void     swap(String filename)
+ * double[] propagate(double[] input)
+ * int[]    getSizeOfLayers()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class SharedModel
+{
+   /**
+    * A single mapped version of the model, along with the neural net each thread uses to run it.
+    */
+   private static class Version
+   {
+      private final WeightStore weightStore;
+      private final ThreadLocal<NeuralNet> networks;
+
+      private Version(WeightStore weightStore)
+      {
+         this.weightStore = weightStore;
+         networks = ThreadLocal.withInitial(() -> new NeuralNet(weightStore));
+      }
+   }
+
+   private final AtomicReference<Version> current;   // the version every new call to propagate uses
+
+   /**
+    * Creates a shared model by mapping the given weights file.
+    *
+    * @param filename the name of the mapped weights file
+    */
+   public SharedModel(String filename) throws IOException
+   {
+      current = new AtomicReference<>(new Version(MappedWeightStore.open(filename)));
+   }
+
+   /**
+    * Maps a new version of the model and switches to it. Calls that already started keep running on the old version,
+    * whose mapping is released once nothing uses it anymore.
+    *
+    * @param filename the name of the new mapped weights file, which can be the same file after it was replaced
+    */
+   public void swap(String filename) throws IOException
+   {
+      current.set(new Version(MappedWeightStore.open(filename)));
+   }
+
+   /**
+    * Propagates the input through the current version of the model.
+    *
+    * @param input the values for the activation of all input units
+    * @return a copy of the activations of the output units
+    */
+   public double[] propagate(double[] input)
+   {
+      return current.get().networks.get().propagate(input).clone();
+   }
+
+   /**
+    * Gets the number of units in each activation layer of the current version of the model.
+    *
+    * @return the size of each activation layer
+    */
+   public int[] getSizeOfLayers()
+   {
+      return current.get().weightStore.getSizeOfLayers();
+   }
+
+} // public class SharedModel
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * Sparse Layer
+ *
+ * This class stores the surviving weights of a pruned connectivity layer in compressed sparse row (CSR) form. Each
+ * row of the structure is a unit in the next activation layer, and the columns stored in that row are the units of the
+ * previous activation layer that still have a connection to it. Only the nonzero weights are stored, so a forward pass
+ * only does as many multiply-adds as there are surviving connections.
+ *
+ * The layer keeps a reference to the dense weights matrix of the neural net so that any update made to a stored value
+ * is also made to the dense matrix. This way, the dense matrix is always up to date and can be stored to a file.
+ *
+ * Methods in this class:
+ * void   multiply(double[] input, double[] output)
+ * void   backPropagate(double[] input, double[] psi, double[] omega, Optimizer optimizer, int n, double learningRate)
+ * double density()
+ * int    size()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class SparseLayer
+{
+   private final double[][] weights;  // dense weights matrix this layer was built from, indexed [from][to]
+
+   private final int[] rowStart;      // index in columns and values of the first entry in each row
+   private final int[] columns;       // the unit in the previous layer that each stored weight comes from
+   private final double[] values;     // the value of each stored weight
+
+   /**
+    * Creates a sparse layer from a dense weights matrix and its pruning mask. Every weight that is not pruned is kept,
+    * even if its value happens to be zero, so that the structure does not change during fine-tuning.
+    *
+    * @param weights the dense weights matrix, indexed as weights[j][i] where j is the previous unit and i the next
+    * @param pruned  the pruning mask, where pruned[j][i] is true if the connection was removed
+    */
+   public SparseLayer(double[][] weights, boolean[][] pruned)
+   {
+      this.weights = weights;
+
+      int numOfInputs = weights.length;
+      int numOfOutputs = weights[0].length;
+
+      // Count the number of surviving weights
+      int count = 0;
+      for (int j = 0; j < numOfInputs; j++)
+      {
+         for (int i = 0; i < numOfOutputs; i++)
+         {
+            if (!pruned[j][i])
+            {
+               count++;
+            }
+         }
+      }
+
+      rowStart = new int[numOfOutputs + 1];
+      columns = new int[count];
+      values = new double[count];
+
+      // Fill in each row, going through the dense matrix column by column
+      int k = 0;
+      for (int i = 0; i < numOfOutputs; i++)
+      {
+         rowStart[i] = k;
+         for (int j = 0; j < numOfInputs; j++)
+         {
+            if (!pruned[j][i])
+            {
+               columns[k] = j;
+               values[k] = weights[j][i];
+               k++;
+            }
+         }
+      }
+      rowStart[numOfOutputs] = k;
+   } // public SparseLayer(double[][] weights, boolean[][] pruned)
+
+   /**
+    * Multiplies the input activations by the stored weights. The output array is filled with the weighted sum for
+    * each unit of the next layer, before the output function is applied.
+    *
+    * @param input  the activations of the previous layer
+    * @param output the array to put the weighted sums into
+    */
+   public void multiply(double[] input, double[] output)
+   {
+      for (int i = 0; i < rowStart.length - 1; i++)
+      {
+         double sum = 0.0;
+         for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+         {
+            sum += values[k] * input[columns[k]];
+         }
+         output[i] = sum;
+      }
+   }
+
+   /**
+    * Runs the backward step of backprop through this layer. It first adds each weight's contribution to omega for the
+    * previous layer, using the weights before they are changed, and then lets the optimizer change each surviving
+    * weight given its descent direction, the input activation times psi. The dense weights matrix is changed along
+    * with the stored values. Pruned weights are never touched, so the pruning mask stays fixed.
+    *
+    * @param input        the activations of the previous layer
+    * @param psi          the psi values of the next layer
+    * @param omega        the array to put omega for the previous layer into, or null if it is not needed
+    * @param optimizer    the optimizer that decides how much each weight changes
+    * @param n            the connectivity layer this sparse layer is for
+    * @param learningRate the rate at which to change the weights
+    */
+   public void backPropagate(double[] input, double[] psi, double[] omega, Optimizer optimizer, int n,
+                             double learningRate)
+   {
+      if (omega != null)
+      {
+         // omega_j = sum of (psi_I * w_jI)
+         Arrays.fill(omega, 0.0);
+         for (int i = 0; i < rowStart.length - 1; i++)
+         {
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+            {
+               omega[columns[k]] += psi[i] * values[k];
+            }
+         }
+      }
+
+      // deltaWeights_ji = a_j * psi_i
+      for (int i = 0; i < rowStart.length - 1; i++)
+      {
+         for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+         {
+            int j = columns[k];
+            values[k] += optimizer.delta(n, j, i, input[j] * psi[i], learningRate);
+            weights[j][i] = values[k];
+         }
+      }
+   } // public void backPropagate(double[] input, double[] psi, double[] omega, Optimizer optimizer, int n, ...)
+
+   /**
+    * Finds the fraction of connections in the layer that survived pruning.
+    *
+    * @return the number of stored weights divided by the number of weights in the dense matrix
+    */
+   public double density()
+   {
+      return (double) values.length / ((double) weights.length * weights[0].length);
+   }
+
+   /**
+    * Gets the number of weights stored in this layer.
+    *
+    * @return the number of surviving connections
+    */
+   public int size()
+   {
+      return values.length;
+   }
+
+} // public class SparseLayer
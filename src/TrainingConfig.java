@@ -0,0 +1,478 @@
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**
+ * Training Configuration
+ *
+ * An immutable set of meta values that configure how a neural network is created and trained. A configuration is
+ * read from a config file, and it is passed to each neural network and training job, so that any number of networks
+ * with different configurations can be trained in the same JVM at the same time.
+ *
+ * The structure of the config file is as follows: first, the line LAYER_SIZES, then the size of each hidden layer,
+ * space-separated. The sizes of the input and output layers come from the training data. Each of the next lines
+ * contains the name of a variable and its value:
+ *
+ * MIN_WEIGHT - the smallest value that the weights can be randomized to
+ * MAX_WEIGHT - the largest value that the weights can be randomized to
+ * LEARNING_RATE - the initial learning rate of the network
+ * LAMBDA_MULT - how much to multiply the learning rate by each epoch
+ * MAX_EPOCHS - the number of epochs to run
+ * MAX_ITERATIONS - the maximum number of times to randomize the weights of the network and retrain it
+ * ERROR_THRESHOLD - the neural net stops when it goes below this error
+ * PRINTING_RATE - how often to print the error during training
+ * PRUNE_THRESHOLD - after training, weights with a smaller magnitude than this are pruned
+ * PRUNE_TOP_K - after training, only this many of the largest weights are kept in each layer
+ * FINE_TUNE_EPOCHS - the number of epochs to retrain the network for after pruning or factorizing
+ * OPTIMIZER - how the weights change during training: SGD, MOMENTUM, ADAM or LBFGS
+ * MOMENTUM - how much of the previous velocity the momentum optimizer keeps each step
+ * LBFGS_HISTORY - the number of previous steps the L-BFGS optimizer keeps
+ * VALIDATION_FRACTION - the fraction of the training cases to hold out for validation
+ * VALIDATION_FILE - a file in the training data format with the validation cases, used instead of the fraction
+ * VALIDATION_RATE - how many epochs to train for between each check of the validation error
+ * PATIENCE - the number of validation checks in a row without improvement before training stops early
+ * INITIALIZATION - how the weights are randomized: UNIFORM between the min and max weight, XAVIER or HE
+ * SEED - the seed for randomizing the weights, so that runs can be repeated exactly
+ * WEIGHT_STORAGE - where the weights of a loaded network are kept: HEAP, OFF_HEAP for native memory, MAPPED to
+ *                  share the mapped weights file between processes, or LAZY to read each layer in the background or
+ *                  when it is first used
+ * MAPPED_WEIGHTS_FILE - a binary copy of the weights that is published after training and used by MAPPED storage
+ * HOGWILD_THREADS - the number of threads that train at once without locks, or 1 to train on one thread
+ * HOGWILD_STRIPING - TRUE to have each Hogwild thread start changing the rows of each layer at a different place; every
+ *                    thread still changes every row, so this only rotates the order of the rows
+ * PIPELINE_STAGES - the number of threads the layers are split between, with cases flowing through them in a pipeline
+ * PIPELINE_MICRO_BATCH - the number of training cases passed between pipeline stages at once
+ * INTRA_OP_THREADS - the number of threads each large layer is split between when running or training on one case
+ * METRICS_PORT - the local port to serve training metrics on in the Prometheus text format, or 0 to not record them
+ * WARM_START_FILE - a weights file to start training from instead of random weights, along with the learning rate it
+ *                   stopped at if that was stored
+ * REPLAY_BUFFER_SIZE - the number of most recent cases online training keeps to sample from
+ * ONLINE_BATCH_SIZE - the number of cases online training samples for each epoch
+ * SNAPSHOT_INTERVAL - the number of seconds between each snapshot of the weights published by online training
+ * AUGMENT_THREADS - the number of threads making shifted, flipped, noisy and brightened variants of the training
+ *                   images while training, or 0 to train on the images as they are. Variants are only used by plain
+ *                   stochastic training of images from Main; a full-batch optimizer, Hogwild or pipeline training
+ *                   cannot be combined with them, and BMP jobs in batch mode do not make any
+ * AUGMENT_BUFFER - the number of variants that can be ready or in use at once
+ * AUGMENT_SHIFT - the largest number of pels a variant is shifted by in each direction
+ * AUGMENT_FLIP - TRUE to flip half of the variants left to right
+ * AUGMENT_NOISE - the standard deviation of the noise added to each pel of a variant's input
+ * AUGMENT_BRIGHTNESS - the largest fraction the brightness of a variant's input is scaled up or down by
+ * CONV_LAYERS - the convolutional and pooling layers run on the input image before the dense layers, such as
+ *               conv8x5,pool2 for 8 channels of 5 by 5 kernels followed by a 2 by 2 max pool
+ * CONV_INPUT - the height and width of the input image, such as 40x40, if it is not square
+ * EXECUTION_PLAN - TRUE to run the forward pass with a plan specialized for the size of each layer, or FALSE to use
+ *                  the generic loops
+ * ARCHIVE_DIRECTORY - a directory that every stored network is also added to as a compact checkpoint
+ * ARCHIVE_PRECISION - how each weight of a checkpoint is stored: FLOAT16 or BFLOAT16
+ * ARCHIVE_SHUFFLE - TRUE to store the high bytes of each block of a checkpoint before the low bytes
+ * ARCHIVE_COMPRESSION - the Deflater level checkpoints are compressed with, from 1 to 9, or 0 to not compress them
+ * ARCHIVE_KEYFRAME_INTERVAL - every this many checkpoints is stored in full, and the rest as deltas from the last one
+ * EMBEDDING_LAYER - the activation layer whose activations are written by an encode job, or 0 for the smallest hidden
+ *                   layer
+ * LOW_RANK_RANKS - after training, the rank to factorize each connectivity layer to, comma-separated, such as 64,0
+ *                  to factorize the first layer to rank 64 and leave the second dense
+ * RECONSTRUCTION_DIRECTORY - a directory the output of every training image is written to as a bitmap after training
+ * CONTACT_SHEET_COLUMNS - the number of images in each row of a contact sheet of all of those output images, or 0 to
+ *                         not make one
+ *
+ * Any variable that is not given keeps its default value.
+ *
+ * Methods in this class:
+ * TrainingConfig   with(String name, String value)
+ * int[]            getLayerSizes(double[][][] trainingData)
+ * int[]            getLowRankRanks()
+ * double[][][][]   splitValidationData(double[][][] trainingData)
+ * Optimizer        createOptimizer()
+ * WeightInitializer createInitializer()
+ * TrainingMetrics  createMetrics()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class TrainingConfig
+{
+   // the name of every variable that can be given, in the order they are listed above
+   private static final List<String> NAMES = Arrays.asList(
+           "MIN_WEIGHT", "MAX_WEIGHT", "LEARNING_RATE", "LAMBDA_MULT", "MAX_EPOCHS", "MAX_ITERATIONS",
+           "ERROR_THRESHOLD", "PRINTING_RATE", "PRUNE_THRESHOLD", "PRUNE_TOP_K", "FINE_TUNE_EPOCHS", "OPTIMIZER",
+           "MOMENTUM", "LBFGS_HISTORY", "VALIDATION_FRACTION", "VALIDATION_FILE", "VALIDATION_RATE", "PATIENCE",
+           "INITIALIZATION", "SEED", "WEIGHT_STORAGE", "MAPPED_WEIGHTS_FILE", "HOGWILD_THREADS",
+           "HOGWILD_STRIPING", "PIPELINE_STAGES", "PIPELINE_MICRO_BATCH", "INTRA_OP_THREADS",
+           "METRICS_PORT", "WARM_START_FILE", "REPLAY_BUFFER_SIZE", "ONLINE_BATCH_SIZE", "SNAPSHOT_INTERVAL",
+           "AUGMENT_THREADS", "AUGMENT_BUFFER", "AUGMENT_SHIFT", "AUGMENT_FLIP", "AUGMENT_NOISE", "AUGMENT_BRIGHTNESS",
+           "CONV_LAYERS", "CONV_INPUT", "EXECUTION_PLAN", "ARCHIVE_DIRECTORY", "ARCHIVE_PRECISION", "ARCHIVE_SHUFFLE",
+           "ARCHIVE_COMPRESSION", "ARCHIVE_KEYFRAME_INTERVAL", "EMBEDDING_LAYER", "LOW_RANK_RANKS",
+           "RECONSTRUCTION_DIRECTORY", "CONTACT_SHEET_COLUMNS");
+
+   private final Map<String, String> values;    // the value of every variable that was given, by name
+   private final int[] hiddenLayers;            // the size of each hidden activation layer
+
+   // meta values that configure the training of the neural net
+   public final double minWeight;
+   public final double maxWeight;
+   public final double learningRate;
+   public final double lambdaMult;
+   public final int epochs;
+   public final int maxIterations;
+   public final double errorThreshold;          // squared, so it can be compared to the error directly
+   public final int printingRate;
+
+   // meta values that configure pruning after training
+   public final double pruneThreshold;
+   public final int pruneTopK;
+   public final int fineTuneEpochs;
+
+   // meta values that choose and configure the optimizer
+   public final String optimizer;
+   public final double momentum;
+   public final int lbfgsHistory;
+
+   // meta values that configure validation and early stopping
+   public final double validationFraction;
+   public final String validationFile;
+   public final int validationRate;
+   public final int patience;
+
+   // meta values that configure how the weights are randomized
+   public final WeightInitializer.Scheme initialization;
+   public final long seed;
+
+   // meta values that choose where the weights are kept when running a network
+   public final String weightStorage;
+   public final String mappedWeightsFile;
+
+   // meta values that configure training with several threads at once
+   public final int hogwildThreads;
+   public final boolean hogwildStriping;
+   public final int pipelineStages;
+   public final int pipelineMicroBatch;
+   public final int intraOpThreads;
+
+   // meta values that configure the metrics recorded while training
+   public final int metricsPort;
+
+   // meta values that configure starting training from an earlier network
+   public final String warmStartFile;
+
+   // meta values that configure training online on cases that keep arriving
+   public final int replayBufferSize;
+   public final int onlineBatchSize;
+   public final int snapshotInterval;
+
+   // meta values that configure making variants of the training images while training
+   public final int augmentThreads;
+   public final int augmentBuffer;
+   public final int augmentShift;
+   public final boolean augmentFlip;
+   public final double augmentNoise;
+   public final double augmentBrightness;
+
+   // meta values that configure the convolutional layers run before the dense layers
+   public final String convLayers;
+   public final String convInput;
+
+   // meta values that choose how the forward pass is run
+   public final boolean executionPlan;
+
+   // meta values that configure the archive of compact checkpoints
+   public final String archiveDirectory;
+   public final String archivePrecision;
+   public final boolean archiveShuffle;
+   public final int archiveCompression;
+   public final int archiveKeyframeInterval;
+
+   // meta values that configure writing the activations of a hidden layer
+   public final int embeddingLayer;
+
+   // meta values that configure factorizing layers after training
+   private final int[] lowRankRanks;            // null if no layer is factorized
+
+   // meta values that configure writing the output images of every training case
+   public final String reconstructionDirectory; // null if the output images are not written
+   public final int contactSheetColumns;
+
+   /**
+    * Creates a configuration where every variable has its default value, and there are no hidden layers.
+    */
+   public TrainingConfig()
+   {
+      this(new int[0], new HashMap<>());
+   }
+
+   /**
+    * Reads a configuration from a config file.
+    *
+    * @param filename the file to read the configuration from
+    */
+   public TrainingConfig(String filename) throws FileNotFoundException
+   {
+      this(readHiddenLayers(filename), readValues(filename));
+   }
+
+   /**
+    * Creates a configuration from the size of each hidden layer and the value of each variable that was given. Every
+    * other variable gets its default value.
+    *
+    * @param hiddenLayers the size of each hidden activation layer
+    * @param values       the value of each variable that was given, by name
+    */
+   private TrainingConfig(int[] hiddenLayers, Map<String, String> values)
+   {
+      for (String name : values.keySet())
+      {
+         if (!NAMES.contains(name))
+         {
+            throw new IllegalArgumentException("Unknown configuration variable: " + name);
+         }
+      }
+
+      this.hiddenLayers = hiddenLayers;
+      this.values = values;
+
+      minWeight = Double.parseDouble(values.getOrDefault("MIN_WEIGHT", "-1.0"));
+      maxWeight = Double.parseDouble(values.getOrDefault("MAX_WEIGHT", "1.0"));
+      learningRate = Double.parseDouble(values.getOrDefault("LEARNING_RATE", "1.0"));
+      lambdaMult = Double.parseDouble(values.getOrDefault("LAMBDA_MULT", "1.0"));
+      epochs = Integer.parseInt(values.getOrDefault("MAX_EPOCHS", "100"));
+      maxIterations = Integer.parseInt(values.getOrDefault("MAX_ITERATIONS", "1"));
+      double threshold = Double.parseDouble(values.getOrDefault("ERROR_THRESHOLD", "0.0"));
+      errorThreshold = threshold * threshold;
+      printingRate = Integer.parseInt(values.getOrDefault("PRINTING_RATE", "0"));
+
+      pruneThreshold = Double.parseDouble(values.getOrDefault("PRUNE_THRESHOLD", "0.0"));
+      pruneTopK = Integer.parseInt(values.getOrDefault("PRUNE_TOP_K", "0"));
+      fineTuneEpochs = Integer.parseInt(values.getOrDefault("FINE_TUNE_EPOCHS", "0"));
+
+      optimizer = values.getOrDefault("OPTIMIZER", "SGD");
+      momentum = Double.parseDouble(values.getOrDefault("MOMENTUM", "0.9"));
+      lbfgsHistory = Integer.parseInt(values.getOrDefault("LBFGS_HISTORY", "10"));
+
+      validationFraction = Double.parseDouble(values.getOrDefault("VALIDATION_FRACTION", "0.0"));
+      validationFile = values.get("VALIDATION_FILE");
+      validationRate = Integer.parseInt(values.getOrDefault("VALIDATION_RATE", "1"));
+      patience = Integer.parseInt(values.getOrDefault("PATIENCE", "0"));
+
+      initialization = WeightInitializer.Scheme.valueOf(values.getOrDefault("INITIALIZATION", "UNIFORM"));
+      if (!values.containsKey("SEED"))
+      {
+         values.put("SEED", Long.toString(new SplittableRandom().nextLong()));
+      }
+      seed = Long.parseLong(values.get("SEED"));
+
+      weightStorage = values.getOrDefault("WEIGHT_STORAGE", "HEAP");
+      mappedWeightsFile = values.get("MAPPED_WEIGHTS_FILE");
+
+      hogwildThreads = Integer.parseInt(values.getOrDefault("HOGWILD_THREADS", "1"));
+      hogwildStriping = Boolean.parseBoolean(values.getOrDefault("HOGWILD_STRIPING", "FALSE"));
+      pipelineStages = Integer.parseInt(values.getOrDefault("PIPELINE_STAGES", "1"));
+      pipelineMicroBatch = Integer.parseInt(values.getOrDefault("PIPELINE_MICRO_BATCH", "4"));
+      intraOpThreads = Integer.parseInt(values.getOrDefault("INTRA_OP_THREADS", "1"));
+
+      metricsPort = Integer.parseInt(values.getOrDefault("METRICS_PORT", "0"));
+
+      warmStartFile = values.get("WARM_START_FILE");
+
+      replayBufferSize = Integer.parseInt(values.getOrDefault("REPLAY_BUFFER_SIZE", "10000"));
+      onlineBatchSize = Integer.parseInt(values.getOrDefault("ONLINE_BATCH_SIZE", "32"));
+      snapshotInterval = Integer.parseInt(values.getOrDefault("SNAPSHOT_INTERVAL", "60"));
+
+      augmentThreads = Integer.parseInt(values.getOrDefault("AUGMENT_THREADS", "0"));
+      augmentBuffer = Integer.parseInt(values.getOrDefault("AUGMENT_BUFFER", "64"));
+      augmentShift = Integer.parseInt(values.getOrDefault("AUGMENT_SHIFT", "2"));
+      augmentFlip = Boolean.parseBoolean(values.getOrDefault("AUGMENT_FLIP", "TRUE"));
+      augmentNoise = Double.parseDouble(values.getOrDefault("AUGMENT_NOISE", "0.01"));
+      augmentBrightness = Double.parseDouble(values.getOrDefault("AUGMENT_BRIGHTNESS", "0.1"));
+
+      convLayers = values.get("CONV_LAYERS");
+      convInput = values.get("CONV_INPUT");
+
+      executionPlan = Boolean.parseBoolean(values.getOrDefault("EXECUTION_PLAN", "FALSE"));
+
+      archiveDirectory = values.get("ARCHIVE_DIRECTORY");
+      archivePrecision = values.getOrDefault("ARCHIVE_PRECISION", "FLOAT16");
+      archiveShuffle = Boolean.parseBoolean(values.getOrDefault("ARCHIVE_SHUFFLE", "TRUE"));
+      archiveCompression = Integer.parseInt(values.getOrDefault("ARCHIVE_COMPRESSION", "6"));
+      archiveKeyframeInterval = Integer.parseInt(values.getOrDefault("ARCHIVE_KEYFRAME_INTERVAL", "10"));
+
+      embeddingLayer = Integer.parseInt(values.getOrDefault("EMBEDDING_LAYER", "0"));
+
+      lowRankRanks = values.containsKey("LOW_RANK_RANKS") ?
+                     Arrays.stream(values.get("LOW_RANK_RANKS").split(",")).mapToInt(Integer::parseInt).toArray() :
+                     null;
+
+      reconstructionDirectory = values.get("RECONSTRUCTION_DIRECTORY");
+      contactSheetColumns = Integer.parseInt(values.getOrDefault("CONTACT_SHEET_COLUMNS", "0"));
+   } // private TrainingConfig(int[] hiddenLayers, Map<String, String> values)
+
+   /**
+    * Reads the size of each hidden layer from the second line of a config file.
+    *
+    * @param filename the file to read the configuration from
+    * @return the size of each hidden activation layer
+    */
+   private static int[] readHiddenLayers(String filename) throws FileNotFoundException
+   {
+      Scanner sc = new Scanner(new FileReader(filename));
+
+      sc.nextLine();
+      String[] line = sc.nextLine().trim().split(" +");
+
+      int[] hiddenLayers = new int[line.length];
+      for (int i = 0; i < line.length; i++)
+      {
+         hiddenLayers[i] = Integer.parseInt(line[i]);
+      }
+
+      sc.close();
+      return hiddenLayers;
+   }
+
+   /**
+    * Reads the name and value of every variable given in a config file, after the layer sizes.
+    *
+    * @param filename the file to read the configuration from
+    * @return the value of each variable that was given, by name
+    */
+   private static Map<String, String> readValues(String filename) throws FileNotFoundException
+   {
+      Scanner sc = new Scanner(new FileReader(filename));
+      sc.nextLine();
+      sc.nextLine();
+
+      Map<String, String> values = new HashMap<>();
+      while (sc.hasNext())
+      {
+         String name = sc.next();
+         values.put(name, sc.next());
+      }
+
+      sc.close();
+      return values;
+   }
+
+   /**
+    * Creates a copy of this configuration with a single variable changed. This is useful for running many jobs that
+    * only differ in one variable, such as the learning rate or the seed.
+    *
+    * @param name  the name of the variable to change
+    * @param value the new value of the variable
+    * @return a new configuration with the variable changed
+    */
+   public TrainingConfig with(String name, String value)
+   {
+      Map<String, String> newValues = new HashMap<>(values);
+      newValues.put(name, value);
+      return new TrainingConfig(hiddenLayers, newValues);
+   }
+
+   /**
+    * Finds the size of every activation layer of a network trained on the given data. The input and output layers
+    * get their size from the training data, and the hidden layers from the configuration.
+    *
+    * @param trainingData the inputs and outputs for each training case
+    * @return the number of units in each activation layer
+    */
+   public int[] getLayerSizes(double[][][] trainingData)
+   {
+      int[] layers = new int[hiddenLayers.length + 2];
+      layers[0] = trainingData[0][0].length;
+      System.arraycopy(hiddenLayers, 0, layers, 1, hiddenLayers.length);
+      layers[layers.length - 1] = trainingData[0][1].length;
+      return layers;
+   }
+
+   /**
+    * Gets the rank each connectivity layer is factorized to after training. The array is a copy, so that changing it
+    * cannot change the configuration of any other network or job that shares it.
+    *
+    * @return the rank of each connectivity layer, or null if no layer is factorized
+    */
+   public int[] getLowRankRanks()
+   {
+      return lowRankRanks == null ? null : lowRankRanks.clone();
+   }
+
+   /**
+    * Splits the validation data off from the training data. If a validation file is given, the validation data is
+    * read from it and the training data is left whole. Otherwise, if a validation fraction is given, that fraction of
+    * the training cases, taken from the end, is held out for validation. At least one case is always left for
+    * training.
+    *
+    * @param trainingData all of the training cases
+    * @return an array where the first element is the training data and the second is the validation data, which is
+    *         null if validation is turned off
+    */
+   public double[][][][] splitValidationData(double[][][] trainingData) throws FileNotFoundException
+   {
+      if (validationFile != null)
+      {
+         return new double[][][][] {trainingData, Main.getTrainingData(validationFile)};
+      }
+
+      int sizeOfValidation = Math.min((int) Math.round(trainingData.length * validationFraction),
+                                      trainingData.length - 1);
+      if (sizeOfValidation <= 0)
+      {
+         return new double[][][][] {trainingData, null};
+      }
+
+      int sizeOfTraining = trainingData.length - sizeOfValidation;
+      double[][][] training = new double[sizeOfTraining][][];
+      double[][][] validation = new double[sizeOfValidation][][];
+      System.arraycopy(trainingData, 0, training, 0, sizeOfTraining);
+      System.arraycopy(trainingData, sizeOfTraining, validation, 0, sizeOfValidation);
+
+      return new double[][][][] {training, validation};
+   } // public double[][][][] splitValidationData(double[][][] trainingData)
+
+   /**
+    * Creates the optimizer named in the configuration.
+    *
+    * @return a new optimizer of the configured type
+    */
+   public Optimizer createOptimizer()
+   {
+      switch (optimizer)
+      {
+         case "SGD":
+            return new SGDOptimizer();
+         case "MOMENTUM":
+            return new MomentumOptimizer(momentum);
+         case "ADAM":
+            return new AdamOptimizer();
+         case "LBFGS":
+            return new LBFGSOptimizer(lbfgsHistory);
+         default:
+            throw new IllegalArgumentException("Unknown optimizer: " + optimizer);
+      }
+   }
+
+   /**
+    * Creates the weight initializer given in the configuration, using the configured seed. Every initializer created
+    * from the same configuration gives the same weights.
+    *
+    * @return a new weight initializer
+    */
+   public WeightInitializer createInitializer()
+   {
+      return new WeightInitializer(initialization, minWeight, maxWeight, seed);
+   }
+
+   /**
+    * Gets the metrics that training should be recorded to, and starts serving them on the configured port if they
+    * are not served yet.
+    *
+    * @return the metrics for the whole JVM, or null if metrics are turned off
+    */
+   public TrainingMetrics createMetrics()
+   {
+      return metricsPort > 0 ? TrainingMetrics.serve(metricsPort) : null;
+   }
+
+} // public class TrainingConfig
@@ -0,0 +1,151 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Training Events
+ *
+ * Java Flight Recorder events for each phase of training and loading, so that the CPU samples, allocations, garbage
+ * collections and file I/O in a recording can be lined up with the phase they happened in. The events show up in the
+ * Neural Net category of a recording.
+ *
+ * Nothing is recorded unless a flight recording is running, for example with -XX:StartFlightRecording. Until then,
+ * each event is only a check of whether it should be committed, and the JIT removes the event object itself. Every
+ * event is used the same way:
+ *
+ * Epoch event = new Epoch();
+ * event.begin();
+ * ... the work being timed ...
+ * if (event.shouldCommit())
+ * {
+ *    ... fill in the fields ...
+ *    event.commit();
+ * }
+ *
+ * Stack traces are turned off, since the phase each event is for is already known.
+ *
+ * Events in this class:
+ * Epoch              - one epoch of training
+ * BackPropagateBatch - backprop over every training case of an epoch
+ * ErrorPass          - one pass of calculateError over a data set
+ * Checkpoint         - the weights being stored to a file or copied into the best snapshot
+ * BmpDecode          - one bitmap being decoded by DibDump
+ * DatasetLoad        - a training data file or a list of bitmaps being loaded
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class TrainingEvents
+{
+   private TrainingEvents()
+   {
+   }
+
+   @Name("neuralnets.Epoch")
+   @Label("Epoch")
+   @Category("Neural Net")
+   @Description("One epoch of training, including the error and validation checks")
+   @StackTrace(false)
+   public static class Epoch extends Event
+   {
+      @Label("Epoch")
+      public int epoch;
+
+      @Label("Training Cases")
+      public int cases;
+
+      @Label("Learning Rate")
+      public double learningRate;
+
+      @Label("Error")
+      public double error;
+   }
+
+   @Name("neuralnets.BackPropagateBatch")
+   @Label("Backprop Batch")
+   @Category("Neural Net")
+   @Description("Backprop over every training case of an epoch")
+   @StackTrace(false)
+   public static class BackPropagateBatch extends Event
+   {
+      @Label("Epoch")
+      public int epoch;
+
+      @Label("Training Cases")
+      public int cases;
+
+      @Label("Full Batch")
+      public boolean fullBatch;
+   }
+
+   @Name("neuralnets.ErrorPass")
+   @Label("Error Pass")
+   @Category("Neural Net")
+   @Description("One pass of calculateError over a data set")
+   @StackTrace(false)
+   public static class ErrorPass extends Event
+   {
+      @Label("Cases")
+      public int cases;
+
+      @Label("Error")
+      public double error;
+   }
+
+   @Name("neuralnets.Checkpoint")
+   @Label("Checkpoint")
+   @Category("Neural Net")
+   @Description("The weights being stored to a file or copied into the best snapshot")
+   @StackTrace(false)
+   public static class Checkpoint extends Event
+   {
+      @Label("Kind")
+      public String kind;
+
+      @Label("File")
+      public String file;
+
+      @Label("Weights")
+      public long weights;
+   }
+
+   @Name("neuralnets.BmpDecode")
+   @Label("BMP Decode")
+   @Category("Neural Net")
+   @Description("One bitmap being decoded by DibDump")
+   @StackTrace(false)
+   public static class BmpDecode extends Event
+   {
+      @Label("File")
+      public String file;
+
+      @Label("Height")
+      public int height;
+
+      @Label("Width")
+      public int width;
+   }
+
+   @Name("neuralnets.DatasetLoad")
+   @Label("Dataset Load")
+   @Category("Neural Net")
+   @Description("A training data file or a list of bitmaps being loaded")
+   @StackTrace(false)
+   public static class DatasetLoad extends Event
+   {
+      @Label("File")
+      public String file;
+
+      @Label("Cases")
+      public int cases;
+
+      @Label("Bytes")
+      @DataAmount
+      public long bytes;
+   }
+
+} // public class TrainingEvents
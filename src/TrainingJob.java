@@ -0,0 +1,135 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Training Job
+ *
+ * A single, independent training run: it reads the training data, creates a network with its own configuration,
+ * trains it, and stores the weights. Everything the job prints goes to its own output file, so many jobs can run in
+ * the same JVM at the same time without mixing their output.
+ *
+ * Like minimizeManual in Main, the job randomizes and retrains the network up to the maximum number of iterations,
+ * and keeps the weights of the iteration with the lowest error.
+ *
+ * Methods in this class:
+ * String getName()
+ * double getError()
+ * String call()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class TrainingJob implements Callable<String>
+{
+   private final String name;              // the name of the job, used when reporting its result
+   private final TrainingConfig config;    // the variables that configure training
+   private final String trainingFile;      // the file with the training data
+   private final String weightsFile;       // the file to store the trained weights in
+   private final String outputFile;        // the file everything the job prints goes to
+
+   private double error = Double.NaN;      // the error of the stored weights, once the job has finished
+
+   /**
+    * Creates a training job.
+    *
+    * @param name         the name of the job
+    * @param config       the variables that configure training
+    * @param trainingFile the file with the training data, in the training data format
+    * @param weightsFile  the file to store the trained weights in
+    * @param outputFile   the file everything the job prints goes to
+    */
+   public TrainingJob(String name, TrainingConfig config, String trainingFile, String weightsFile, String outputFile)
+   {
+      this.name = name;
+      this.config = config;
+      this.trainingFile = trainingFile;
+      this.weightsFile = weightsFile;
+      this.outputFile = outputFile;
+   }
+
+   /**
+    * Gets the name of the job.
+    *
+    * @return the name of the job
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Gets the error of the stored weights on the training data, in the same units as the final error printed during
+    * training.
+    *
+    * @return the error of the best iteration, or NaN if the job has not finished
+    */
+   public double getError()
+   {
+      return error;
+   }
+
+   /**
+    * Runs the job: reads the training data, then trains the network for every iteration, storing the weights each
+    * time the error is lower than in every iteration before.
+    *
+    * @return the diagnostic information of the best iteration
+    */
+   public String call() throws IOException
+   {
+      try (PrintStream output = new PrintStream(new FileOutputStream(outputFile)))
+      {
+         // Load the training data from the training file
+         output.println("Getting Training Data...");
+         double[][][] allData = Main.getTrainingData(trainingFile);
+         double[][][][] splitData = config.splitValidationData(allData);
+         double[][][] trainingData = splitData[0];
+         double[][][] validationData = splitData[1];
+
+         // Create a neural net with the given layer sizes
+         output.println("Creating Network... (Seed: " + config.seed + ")");
+         NeuralNet nn = new NeuralNet(config.getLayerSizes(allData), config);
+         nn.setOutput(output);
+         if (nn.getConvStack() != null)
+         {
+            output.print(nn.getSizeReport());
+         }
+         double learningRate = Main.warmStart(nn, config, output);
+
+         output.println("Training...");
+         String bestDiagnosticInformation = "";
+         double minError = Double.MAX_VALUE;
+         int e = 1;
+         while (e <= config.maxIterations && minError > config.errorThreshold * config.errorThreshold)
+         {
+            // Randomize the weights, except on the first iteration of a warm start, and train with the configuration
+            if (e > 1 || config.warmStartFile == null)
+            {
+               nn.generateWeights();
+               learningRate = config.learningRate;
+            }
+            String diagnosticInformation = nn.train(trainingData, validationData, learningRate,
+                                                    config.lambdaMult, config.epochs);
+            diagnosticInformation += Main.prune(nn, config, trainingData, validationData);
+            diagnosticInformation += Main.factorize(nn, config, trainingData, validationData);
+
+            // Store the weights if the error goes down
+            double curError = nn.calculateError(trainingData);
+            if (curError < minError)
+            {
+               minError = curError;
+               error = Math.sqrt(curError);
+               bestDiagnosticInformation = "Iteration " + e + "\n" + diagnosticInformation;
+               Main.storeNetwork(nn, config, weightsFile);
+               output.println(bestDiagnosticInformation);
+            }
+
+            e++;
+         } // while (e <= config.maxIterations && minError > config.errorThreshold * config.errorThreshold)
+
+         return bestDiagnosticInformation;
+      } // try (PrintStream output = new PrintStream(new FileOutputStream(outputFile)))
+   } // public String call()
+
+} // public class TrainingJob
@@ -0,0 +1,176 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Training Metrics
+ *
+ * The metrics recorded while training, kept in one registry for the whole JVM so that every network and data loader
+ * adds to the same counters. The registry can be served in the Prometheus text format on a local HTTP port by a
+ * background thread, so throughput can be watched during long runs.
+ *
+ * The metrics are:
+ *
+ * nn_samples_total                 - the number of training cases trained on
+ * nn_samples_per_second            - the number of training cases trained on per second in the last epoch
+ * nn_epoch_duration_seconds        - a histogram of how long each epoch takes
+ * nn_forward_seconds_total         - time spent propagating forward through each connectivity layer while training
+ * nn_backward_seconds_total        - time spent propagating backward through each connectivity layer while training
+ * nn_learning_rate                 - the learning rate at the end of the last epoch
+ * nn_error                         - the error at the end of the last epoch
+ * nn_data_bytes_read_total         - the number of bytes read by the data loaders
+ *
+ * A network adds to these once per epoch, so the cost while training is a few atomic adds per epoch, plus reading the
+ * clock around each layer.
+ *
+ * Methods in this class:
+ * TrainingMetrics get()
+ * TrainingMetrics serve(int port)
+ * void            addBytesRead(long bytes)
+ * void            recordEpoch(int samples, long nanos, double learningRate, double error, long[] forwardNanos,
+ *                             long[] backwardNanos)
+ * MetricsRegistry getRegistry()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class TrainingMetrics
+{
+   private static final double NANOS = 1e-9;    // the scale that turns nanoseconds into seconds
+   private static final TrainingMetrics GLOBAL = new TrainingMetrics();
+
+   private static HttpServer server;            // serves the metrics, or null if they are not served yet
+
+   private final MetricsRegistry registry = new MetricsRegistry();
+
+   private final MetricsRegistry.Counter samples = registry.counter("nn_samples_total", "",
+           "Number of training cases trained on", 1.0);
+   private final MetricsRegistry.Gauge samplesPerSecond = registry.gauge("nn_samples_per_second", "",
+           "Training cases trained on per second in the last epoch");
+   private final MetricsRegistry.Histogram epochDuration = registry.histogram("nn_epoch_duration_seconds", "",
+           "Time taken by each epoch", NANOS);
+   private final MetricsRegistry.Gauge learningRate = registry.gauge("nn_learning_rate", "",
+           "Learning rate at the end of the last epoch");
+   private final MetricsRegistry.Gauge error = registry.gauge("nn_error", "",
+           "Error at the end of the last epoch");
+   private final MetricsRegistry.Counter bytesRead = registry.counter("nn_data_bytes_read_total", "",
+           "Bytes read by the data loaders", 1.0);
+
+   private TrainingMetrics()
+   {
+   }
+
+   /**
+    * Gets the metrics for the whole JVM.
+    *
+    * @return the metrics every network and data loader adds to
+    */
+   public static TrainingMetrics get()
+   {
+      return GLOBAL;
+   }
+
+   /**
+    * Starts serving the metrics at /metrics on the given port of the loopback address, on a background daemon thread.
+    * If the metrics are already being served, nothing is started, so every network can call this with its config.
+    *
+    * @param port the port to serve the metrics on
+    * @return the metrics for the whole JVM
+    */
+   public static synchronized TrainingMetrics serve(int port)
+   {
+      if (server != null)
+      {
+         return GLOBAL;
+      }
+
+      try
+      {
+         server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("Could not serve metrics on port " + port, e);
+      }
+      server.createContext("/metrics", exchange ->
+      {
+         byte[] body = GLOBAL.registry.scrape().getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+         exchange.sendResponseHeaders(200, body.length);
+         try (OutputStream os = exchange.getResponseBody())
+         {
+            os.write(body);
+         }
+      });
+      ExecutorService executor = Executors.newSingleThreadExecutor(r ->
+      {
+         Thread thread = new Thread(r, "metrics-server");
+         thread.setDaemon(true);
+         return thread;
+      });
+      server.setExecutor(executor);
+
+      // The server's dispatcher thread is only a daemon if it is started from one, so it never keeps the JVM alive
+      executor.execute(server::start);
+      return GLOBAL;
+   } // public static synchronized TrainingMetrics serve(int port)
+
+   /**
+    * Adds to the number of bytes read by the data loaders.
+    *
+    * @param bytes the number of bytes read
+    */
+   public void addBytesRead(long bytes)
+   {
+      bytesRead.add(bytes);
+   }
+
+   /**
+    * Records one epoch of training. The time spent in each layer is added to the counters for that layer, and then
+    * set back to zero so the next epoch can add to it.
+    *
+    * @param samples       the number of training cases in the epoch
+    * @param nanos         how long the epoch took, in nanoseconds
+    * @param learningRate  the learning rate at the end of the epoch
+    * @param error         the error at the end of the epoch
+    * @param forwardNanos  the time spent propagating forward through each connectivity layer, in nanoseconds
+    * @param backwardNanos the time spent propagating backward through each connectivity layer, in nanoseconds
+    */
+   public void recordEpoch(int samples, long nanos, double learningRate, double error, long[] forwardNanos,
+                           long[] backwardNanos)
+   {
+      this.samples.add(samples);
+      samplesPerSecond.set(samples / (nanos * NANOS));
+      epochDuration.record(nanos);
+      this.learningRate.set(learningRate);
+      this.error.set(error);
+
+      for (int n = 0; n < forwardNanos.length; n++)
+      {
+         String layer = "layer=\"" + n + "\"";
+         registry.counter("nn_forward_seconds_total", layer,
+                 "Time spent propagating forward through each layer while training", NANOS).add(forwardNanos[n]);
+         registry.counter("nn_backward_seconds_total", layer,
+                 "Time spent propagating backward through each layer while training", NANOS).add(backwardNanos[n]);
+         forwardNanos[n] = 0;
+         backwardNanos[n] = 0;
+      }
+   } // public void recordEpoch(int samples, long nanos, double learningRate, double error, long[] forwardNanos, ...)
+
+   /**
+    * Gets the registry holding every metric, so that other metrics can be added to it.
+    *
+    * @return the registry
+    */
+   public MetricsRegistry getRegistry()
+   {
+      return registry;
+   }
+
+} // public class TrainingMetrics
@@ -0,0 +1,131 @@
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Weight Initializer
+ *
+ * This class fills the weights of a neural network with random values. Every connectivity layer is split into blocks
+ * of rows, and each block gets its own random number generator, split off from a single seeded generator in a fixed
+ * order before any weights are filled. Because of this, the blocks can be filled in parallel, and the weights are
+ * exactly the same for a given seed no matter how many threads are used or what order the blocks finish in.
+ *
+ * Each call to initialize splits a new generator off the seeded one, so initializing a network several times in a row
+ * gives different weights each time, but the whole sequence is the same for a given seed.
+ *
+ * The weights can be randomized uniformly between a minimum and maximum weight, or scaled to the size of each layer:
+ * Xavier scaling is uniform between plus and minus sqrt(6 / (fanIn + fanOut)), and He scaling is uniform between plus
+ * and minus sqrt(6 / fanIn).
+ *
+ * Methods in this class:
+ * void   initialize(double[][][] weights)
+ * double getLimit(int fanIn, int fanOut)
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public class WeightInitializer
+{
+   /**
+    * The ways the weights can be scaled.
+    */
+   public enum Scheme
+   {
+      UNIFORM, XAVIER, HE
+   }
+
+   private static final int ROWS_PER_BLOCK = 16;   // number of rows of a weights matrix filled by each generator
+
+   private final Scheme scheme;                    // how the weights are scaled
+   private final double minWeight;                 // smallest weight for uniform initialization
+   private final double maxWeight;                 // largest weight for uniform initialization
+   private final SplittableRandom random;          // the seeded generator every other generator is split from
+
+   /**
+    * Creates a weight initializer with the given scheme and seed.
+    *
+    * @param scheme    how the weights are scaled
+    * @param minWeight the smallest weight, only used for uniform initialization
+    * @param maxWeight the largest weight, only used for uniform initialization
+    * @param seed      the seed that decides every weight
+    */
+   public WeightInitializer(Scheme scheme, double minWeight, double maxWeight, long seed)
+   {
+      this.scheme = scheme;
+      this.minWeight = minWeight;
+      this.maxWeight = maxWeight;
+      random = new SplittableRandom(seed);
+   }
+
+   /**
+    * Creates a weight initializer that randomizes the weights uniformly between the minimum and maximum weight, with a
+    * seed that is different every time.
+    *
+    * @param minWeight the smallest weight
+    * @param maxWeight the largest weight
+    */
+   public WeightInitializer(double minWeight, double maxWeight)
+   {
+      this(Scheme.UNIFORM, minWeight, maxWeight, new SplittableRandom().nextLong());
+   }
+
+   /**
+    * Fills every weight with a random value. The generators for each block of rows are split off in order first, and
+    * then the blocks of every layer are filled in parallel.
+    *
+    * @param weights the weights to fill, indexed as weights[n][j][i]
+    */
+   public void initialize(double[][][] weights)
+   {
+      SplittableRandom callRandom = random.split();
+
+      for (double[][] layer : weights)
+      {
+         int numOfBlocks = (layer.length + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+         SplittableRandom[] blockRandoms = new SplittableRandom[numOfBlocks];
+         for (int b = 0; b < numOfBlocks; b++)
+         {
+            blockRandoms[b] = callRandom.split();
+         }
+
+         double limit = getLimit(layer.length, layer[0].length);
+         double low = scheme == Scheme.UNIFORM ? minWeight : -limit;
+         double high = scheme == Scheme.UNIFORM ? maxWeight : limit;
+
+         // Generates random numbers for each block of rows
+         IntStream.range(0, numOfBlocks).parallel().forEach(b ->
+         {
+            SplittableRandom blockRandom = blockRandoms[b];
+            int lastRow = Math.min(layer.length, (b + 1) * ROWS_PER_BLOCK);
+            for (int j = b * ROWS_PER_BLOCK; j < lastRow; j++)
+            {
+               for (int i = 0; i < layer[j].length; i++)
+               {
+                  layer[j][i] = low + blockRandom.nextDouble() * (high - low);
+               }
+            }
+         });
+      } // for (double[][] layer : weights)
+   } // public void initialize(double[][][] weights)
+
+   /**
+    * Finds the largest magnitude a weight can have under the scaling scheme, given the size of the layers on either
+    * side of it. For uniform initialization, this is the largest magnitude of the minimum and maximum weights.
+    *
+    * @param fanIn  the number of units in the previous activation layer
+    * @param fanOut the number of units in the next activation layer
+    * @return the largest magnitude a weight can have
+    */
+   public double getLimit(int fanIn, int fanOut)
+   {
+      switch (scheme)
+      {
+         case XAVIER:
+            return Math.sqrt(6.0 / (fanIn + fanOut));
+         case HE:
+            return Math.sqrt(6.0 / fanIn);
+         default:
+            return Math.max(Math.abs(minWeight), Math.abs(maxWeight));
+      }
+   }
+
+} // public class WeightInitializer
@@ -0,0 +1,80 @@
+/**
+ * Weight Store
+ *
+ * A weight store holds the weights of every connectivity layer of a neural network. The weights are indexed the same
+ * way as the weights array in the neural network: n is the connectivity layer, j is the unit in the previous
+ * activation layer, and i is the unit in the next activation layer. Each implementation decides where the weights
+ * live, such as on the Java heap or in native memory, and provides its own kernel for multiplying a layer of
+ * activations by the weights.
+ *
+ * Methods in this interface:
+ * int[]  getSizeOfLayers()
+ * double get(int n, int j, int i)
+ * void   set(int n, int j, int i, double value)
+ * void   multiply(int n, double[] input, double[] output)
+ * void   multiply(int n, double[] input, double[] output, ParallelKernels kernels)
+ * void   close()
+ *
+ * @author Chaitanya Ravuri
+ * @version October 19, 2026
+ */
+public interface WeightStore extends AutoCloseable
+{
+   /**
+    * Gets the number of units in each activation layer.
+    *
+    * @return the size of each activation layer
+    */
+   int[] getSizeOfLayers();
+
+   /**
+    * Gets a single weight.
+    *
+    * @param n the connectivity layer
+    * @param j the unit in the previous activation layer
+    * @param i the unit in the next activation layer
+    * @return the weight connecting unit j to unit i
+    */
+   double get(int n, int j, int i);
+
+   /**
+    * Sets a single weight.
+    *
+    * @param n     the connectivity layer
+    * @param j     the unit in the previous activation layer
+    * @param i     the unit in the next activation layer
+    * @param value the new value of the weight
+    */
+   void set(int n, int j, int i, double value);
+
+   /**
+    * Multiplies the activations of the previous layer by the weights of a connectivity layer. The output array is
+    * filled with the weighted sum for each unit of the next layer, before the output function is applied.
+    *
+    * @param n      the connectivity layer
+    * @param input  the activations of the previous layer
+    * @param output the array to put the weighted sums into
+    */
+   void multiply(int n, double[] input, double[] output);
+
+   /**
+    * Multiplies the activations of the previous layer by the weights of a connectivity layer, with the units of the
+    * next layer split into blocks that are run in parallel by the given kernels. Stores that do not have a parallel
+    * kernel run the normal one.
+    *
+    * @param n       the connectivity layer
+    * @param input   the activations of the previous layer
+    * @param output  the array to put the weighted sums into
+    * @param kernels the kernels that run the blocks
+    */
+   default void multiply(int n, double[] input, double[] output, ParallelKernels kernels)
+   {
+      multiply(n, input, output);
+   }
+
+   /**
+    * Releases the memory held by the store. The store cannot be used after it is closed.
+    */
+   void close();
+
+} // public interface WeightStore